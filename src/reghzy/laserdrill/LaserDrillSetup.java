@@ -1,5 +1,6 @@
 package reghzy.laserdrill;
 
+import reghzy.laserdrill.placement.Footprint;
 import reghzy.laserdrill.utils.AxisAlignedBB;
 import reghzy.laserdrill.utils.Vector2;
 
@@ -13,41 +14,107 @@ import reghzy.laserdrill.utils.Vector2;
 public class LaserDrillSetup{
     public AxisAlignedBB boundingBox;
     public Vector2 center;
-    public Tile laserDrill;
-    public Tile preCharger1;
-    public Tile preCharger2;
-    public Tile preCharger3;
-    public Tile preCharger4;
-    public Tile laser1;
-    public Tile laser2;
-    public Tile laser3;
-    public Tile laser4;
+    // The cells this setup uses; the diagram above is the default, see SetupShape for others
+    public Footprint footprint;
+    // Built on first use, since only rendering needs the individual tiles (see getTiles)
+    private Tile[] tiles;
+
+    public LaserDrillSetup(int x, int y) {
+        this(new Vector2(x, y));
+    }
 
     public LaserDrillSetup(Vector2 center) {
+        this(center, Footprint.LASER_DRILL);
+    }
+
+    public LaserDrillSetup(int x, int y, Footprint footprint) {
+        this(new Vector2(x, y), footprint);
+    }
+
+    public LaserDrillSetup(Vector2 center, Footprint footprint) {
         this.center = center;
+        this.footprint = footprint;
+        int radius = footprint.radius;
         this.boundingBox = new AxisAlignedBB();
-        this.boundingBox.setMin(this.center.x - 2, this.center.y - 2);
-        this.boundingBox.setMax(this.center.x + 2, this.center.y + 2);
-        this.laserDrill = new Tile(this.center, TileType.DRILL, TileDirection.NONE);
-        this.preCharger1 = new Tile(this.center.copy().subtract(2, 0), TileType.PRE_CHARGER, TileDirection.EAST);
-        this.preCharger2 = new Tile(this.center.copy().subtract(0, 2), TileType.PRE_CHARGER, TileDirection.SOUTH);
-        this.preCharger3 = new Tile(this.center.copy().add(2, 0), TileType.PRE_CHARGER, TileDirection.WEST);
-        this.preCharger4 = new Tile(this.center.copy().add(0, 2), TileType.PRE_CHARGER, TileDirection.NORTH);
-        this.laser1 = new Tile(this.center.copy().subtract(1, 0), TileType.LASER, TileDirection.EAST);
-        this.laser2 = new Tile(this.center.copy().subtract(0, 1), TileType.LASER, TileDirection.SOUTH);
-        this.laser3 = new Tile(this.center.copy().add(1, 0), TileType.LASER, TileDirection.WEST);
-        this.laser4 = new Tile(this.center.copy().add(0, 1), TileType.LASER, TileDirection.NORTH);
+        this.boundingBox.setMin(this.center.x - radius, this.center.y - radius);
+        this.boundingBox.setMax(this.center.x + radius, this.center.y + radius);
     }
 
     // We can stack them on different layers, only the path below the drill itself needs to be open to bedrock.
     public boolean canPlaceAbove(LaserDrillSetup setup) {
-        return !intersectsArea(setup) || !tileIntersectsSolidTile(setup.laserDrill);
+        return canPlaceAbove(setup.center.x, setup.center.y);
     }
 
+    /**
+     * Returns true if a drill can be placed at (drillX, drillY) above this setup, which is only the case if
+     * it is not on one of this setup's solid cells
+     */
+    public boolean canPlaceAbove(int drillX, int drillY) {
+        return !this.footprint.isSolid(drillX - this.center.x, drillY - this.center.y);
+    }
 
+    /**
+     * Same as {@link #canPlaceAbove(LaserDrillSetup)}, for a default setup centered at (x, y) and a new drill
+     * at (drillX, drillY), without needing either setup to exist as an object
+     */
+    public static boolean canPlaceAbove(int x, int y, int drillX, int drillY) {
+        return !Footprint.LASER_DRILL.isSolid(drillX - x, drillY - y);
+    }
+
+    public Tile getLaserDrill() {
+        return getTiles()[0];
+    }
 
-    private boolean intersectsArea(LaserDrillSetup setup) {
-        return this.boundingBox.intersectsAABB(setup.boundingBox);
+    /**
+     * Returns the given pre-charger, numbered 1 to 4 as in the diagram above (or from 1 in the footprint's
+     * order for other shapes)
+     */
+    public Tile getPreCharger(int number) {
+        if (number < 1 || number >= this.footprint.solidX.length) {
+            throw new IndexOutOfBoundsException("Pre-charger " + number + " does not exist (setup has " + (this.footprint.solidX.length - 1) + ")");
+        }
+        return getTiles()[number];
+    }
+
+    /**
+     * Returns the laser between the drill and the given pre-charger, numbered 1 to 4 as in the diagram above
+     * (or from 1 in the footprint's order for other shapes, which may have several lasers per pre-charger)
+     */
+    public Tile getLaser(int number) {
+        if (number < 1 || number > this.footprint.beamX.length) {
+            throw new IndexOutOfBoundsException("Laser " + number + " does not exist (setup has " + this.footprint.beamX.length + ")");
+        }
+        return getTiles()[this.footprint.solidX.length + number - 1];
+    }
+
+    /**
+     * Returns the drill, the pre-chargers and then the lasers of this setup, building them from the footprint
+     * the first time they are needed
+     */
+    public Tile[] getTiles() {
+        if (this.tiles == null) {
+            Footprint footprint = this.footprint;
+            Tile[] tiles = new Tile[footprint.solidX.length + footprint.beamX.length];
+            for (int i = 0; i < footprint.solidX.length; i++) {
+                tiles[i] = createTile(footprint.solidX[i], footprint.solidY[i], i == 0 ? TileType.DRILL : TileType.PRE_CHARGER);
+            }
+            for (int i = 0; i < footprint.beamX.length; i++) {
+                tiles[footprint.solidX.length + i] = createTile(footprint.beamX[i], footprint.beamY[i], TileType.LASER);
+            }
+            this.tiles = tiles;
+        }
+        return this.tiles;
+    }
+
+    private Tile createTile(int dx, int dy, TileType type) {
+        return new Tile(new Vector2(this.center.x + dx, this.center.y + dy), type, getDirectionTowardsDrill(dx, dy));
+    }
+
+    static TileDirection getDirectionTowardsDrill(int dx, int dy) {
+        if (Math.abs(dx) >= Math.abs(dy)) {
+            return dx < 0 ? TileDirection.EAST : dx > 0 ? TileDirection.WEST : TileDirection.NONE;
+        }
+        return dy < 0 ? TileDirection.SOUTH : TileDirection.NORTH;
     }
 
 //    public boolean intersectsAnyTile(LaserDrillSetup setup) {
@@ -75,20 +142,6 @@ public class LaserDrillSetup{
 //        return false;
 //    }
 
-    private boolean tileIntersectsSolidTile(Tile tile) {
-        if (tile.intersectsLocation(this.laserDrill))
-            return true;
-        if (tile.intersectsLocation(this.preCharger1))
-            return true;
-        if (tile.intersectsLocation(this.preCharger2))
-            return true;
-        if (tile.intersectsLocation(this.preCharger3))
-            return true;
-        if (tile.intersectsLocation(this.preCharger4))
-            return true;
-
-        return false;
-    }
 //
 //    public boolean tileIntersectsAnyTile(Tile tile) {
 //        if (tile.intersectsLocation(this.laserDrill))
@@ -1,174 +1,404 @@
 package reghzy.laserdrill;
 
+import reghzy.laserdrill.placement.CellMask;
+import reghzy.laserdrill.placement.Footprint;
+import reghzy.laserdrill.placement.PlacementListener;
+import reghzy.laserdrill.placement.SetupIndex;
+import reghzy.laserdrill.utils.AxisAlignedBB;
 import reghzy.laserdrill.utils.Vector2;
 
 import javax.swing.JFrame;
+import javax.swing.JPanel;
 import javax.swing.WindowConstants;
 import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
 import java.util.HashMap;
 
-public class TileDrawer extends JFrame {
+/**
+ * Shows a grid of setups in a zoomable, pannable window (scroll to zoom around the cursor, drag to pan)
+ * <p>
+ * Painting is split into two cached, window sized layers drawn onto a double buffered panel: the grid
+ * outline and the setups. Both only cover the cells in view, and setups outside it are never drawn. When
+ * a setup is added or removed only the cells it covers are marked dirty, and the next paint redraws just
+ * the setups touching those cells into the setup layer. Panning or zooming redraws both layers
+ * </p>
+ * <p>
+ * Once cells get smaller than {@link #MinDetailCellSize} pixels, the window switches to an occupancy image
+ * holding one pixel per cell, which is kept up to date as setups change and scaled down to the view
+ * </p>
+ * <p>
+ * Setups may be added and removed from any thread
+ * </p>
+ */
+public class TileDrawer extends JFrame implements PlacementListener {
     private final Vector2 gridSize;
     private final Vector2 tileSize;
     private final Vector2 viewportSize;
     private final HashMap<Vector2, LaserDrillSetup> laserDrillSetups;
-    private static final int WindowBorderX = 8;
-    private static final int WindowBorderY = 31;
-    private static final int WindowOffsetX = WindowBorderX + 1;
-    private static final int WindowOffsetY = WindowBorderY + 1;
+    private final SetupIndex setupIndex;
+    private final Footprint footprint;
+    private final TilePainter painter;
+    private final JPanel canvas;
+    private CellMask mask;
+    // Guards the setups, the view, the dirty region and the layers, since placement events arrive off the EDT
+    private final Object layerLock = new Object();
+    private BufferedImage gridLayer;
+    private BufferedImage setupLayer;
+    private BufferedImage occupancyImage;
+    private AxisAlignedBB dirtyCells;
+    private boolean viewChanged;
+    // Canvas pixels per layer pixel, where the layer draws each cell at tileSize
+    private double zoom;
+    // The cell coordinates at the canvas' top left corner
+    private double viewX;
+    private double viewY;
+    private static final int MaxCanvasWidth = 1600;
+    private static final int MaxCanvasHeight = 1000;
+    private static final double MaxZoom = 4.0D;
+    private static final double ZoomStep = 1.25D;
+    /**
+     * Below this many pixels per cell, cells are drawn from the occupancy image instead of as tiles
+     */
+    private static final double MinDetailCellSize = 6.0D;
+    private static final AlphaComposite ClearComposite = AlphaComposite.getInstance(AlphaComposite.CLEAR);
 
     public TileDrawer(Vector2 gridSize, Vector2 tileSize) {
+        this(gridSize, tileSize, Footprint.LASER_DRILL);
+    }
+
+    /**
+     * @param footprint The footprint of the setups created for placement events, and drawn for every setup
+     */
+    public TileDrawer(Vector2 gridSize, Vector2 tileSize, Footprint footprint) {
         this.gridSize = gridSize;
         this.tileSize = tileSize;
         this.viewportSize = new Vector2((gridSize.x * tileSize.x) + gridSize.x, (gridSize.y * tileSize.y) + gridSize.y);
-        this.getContentPane().setBackground(new Color(24, 24, 24));
-        this.setPreferredSize(new Dimension(this.viewportSize.x + WindowBorderX - 4, this.viewportSize.y + WindowBorderY - 4));
+        this.laserDrillSetups = new HashMap<Vector2, LaserDrillSetup>(8);
+        this.setupIndex = new SetupIndex();
+        this.footprint = footprint;
+        this.painter = new TilePainter(tileSize.x, tileSize.y, footprint);
+
+        int canvasWidth = Math.min(this.viewportSize.x, MaxCanvasWidth);
+        int canvasHeight = Math.min(this.viewportSize.y, MaxCanvasHeight);
+        this.zoom = Math.min(1.0D, getFitZoom(canvasWidth, canvasHeight));
+        this.viewChanged = true;
+
+        this.canvas = new JPanel(true) {
+            @Override
+            protected void paintComponent(Graphics graphics) {
+                paintLayers(graphics);
+            }
+        };
+        this.canvas.setBackground(TilePainter.BackgroundColour);
+        this.canvas.setPreferredSize(new Dimension(canvasWidth, canvasHeight));
+        MouseAdapter navigation = new MouseAdapter() {
+            private int lastX;
+            private int lastY;
+
+            @Override
+            public void mousePressed(MouseEvent event) {
+                this.lastX = event.getX();
+                this.lastY = event.getY();
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent event) {
+                pan(event.getX() - this.lastX, event.getY() - this.lastY);
+                this.lastX = event.getX();
+                this.lastY = event.getY();
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent event) {
+                zoomAt(event.getX(), event.getY(), Math.pow(ZoomStep, -event.getPreciseWheelRotation()));
+            }
+        };
+        this.canvas.addMouseListener(navigation);
+        this.canvas.addMouseMotionListener(navigation);
+        this.canvas.addMouseWheelListener(navigation);
+        this.setContentPane(this.canvas);
         this.pack();
         this.setVisible(true);
         this.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
+    }
 
-        this.laserDrillSetups = new HashMap<Vector2, LaserDrillSetup>(8);
+    /**
+     * Sets the blocked cells drawn under the setups, or null to draw none
+     */
+    public void setMask(CellMask mask) {
+        synchronized (this.layerLock) {
+            this.mask = mask;
+            this.occupancyImage = null;
+            this.viewChanged = true;
+        }
+        this.canvas.repaint();
     }
 
     public void addLaserDrillSetup(LaserDrillSetup setup) {
-        this.laserDrillSetups.put(setup.center, setup);
+        synchronized (this.layerLock) {
+            LaserDrillSetup previous = this.laserDrillSetups.put(setup.center, setup);
+            if (previous != null) {
+                this.setupIndex.remove(previous);
+            }
+            this.setupIndex.add(setup);
+            markDirty(setup.boundingBox);
+        }
     }
 
     public void removeLaserDrillSetup(LaserDrillSetup setup) {
-        this.laserDrillSetups.remove(setup.center);
+        synchronized (this.layerLock) {
+            LaserDrillSetup removed = this.laserDrillSetups.remove(setup.center);
+            if (removed != null) {
+                this.setupIndex.remove(removed);
+                markDirty(removed.boundingBox);
+            }
+        }
+    }
+
+    @Override
+    public void setupAdded(int x, int y) {
+        addLaserDrillSetup(new LaserDrillSetup(x, y, this.footprint));
     }
 
-    private void renderSetups(Graphics graphics) {
-        for(LaserDrillSetup setup : this.laserDrillSetups.values()) {
-            drawEffectBetweenTiles(setup.laserDrill, setup.preCharger1, false, graphics);
-            drawEffectBetweenTiles(setup.laserDrill, setup.preCharger2, true, graphics);
-            drawEffectBetweenTiles(setup.laserDrill, setup.preCharger3, false, graphics);
-            drawEffectBetweenTiles(setup.laserDrill, setup.preCharger4, true, graphics);
-            renderTiles(setup, graphics);
+    @Override
+    public void setupRemoved(int x, int y) {
+        synchronized (this.layerLock) {
+            LaserDrillSetup removed = this.laserDrillSetups.remove(new Vector2(x, y));
+            if (removed != null) {
+                this.setupIndex.remove(removed);
+                markDirty(removed.boundingBox);
+            }
         }
     }
 
-    private void drawEffectBetweenTiles(Tile a, Tile b, boolean isVertical, Graphics graphics) {
-        drawLineEffect(getTileCenterX(a), getTileCenterY(a), getTileCenterX(b), getTileCenterY(b), isVertical, graphics);
+    /**
+     * Moves the view by the given number of canvas pixels
+     */
+    public void pan(int dx, int dy) {
+        synchronized (this.layerLock) {
+            this.viewX -= dx / getCellWidth();
+            this.viewY -= dy / getCellHeight();
+            clampView();
+            this.viewChanged = true;
+        }
+        this.canvas.repaint();
+    }
+
+    /**
+     * Zooms by the given factor, keeping the cell under the given canvas pixel in place
+     */
+    public void zoomAt(int x, int y, double factor) {
+        synchronized (this.layerLock) {
+            double cellX = this.viewX + x / getCellWidth();
+            double cellY = this.viewY + y / getCellHeight();
+            double minZoom = Math.min(1.0D, getFitZoom(this.canvas.getWidth(), this.canvas.getHeight()));
+            this.zoom = Math.max(minZoom, Math.min(MaxZoom, this.zoom * factor));
+            this.viewX = cellX - x / getCellWidth();
+            this.viewY = cellY - y / getCellHeight();
+            clampView();
+            this.viewChanged = true;
+        }
+        this.canvas.repaint();
     }
 
-    private void drawLineEffect(int x1, int y1, int x2, int y2, boolean isVertical, Graphics graphics) {
-        int hThickness = getLaserThickness() / 2;
-        if (isVertical) {
-            graphics.setColor(Color.WHITE);
-            graphics.drawLine(x1 - hThickness, y1, x2 - hThickness, y2);
-            graphics.setColor(Color.DARK_GRAY);
-            graphics.drawLine(x1, y1, x2, y2);
-            graphics.setColor(Color.WHITE);
-            graphics.drawLine(x1 + hThickness, y1, x2 + hThickness, y2);
+    /**
+     * Grows the dirty region to cover the given cells, updates the occupancy image if there is one, and
+     * schedules a repaint of the cells if they are in view
+     */
+    private void markDirty(AxisAlignedBB cells) {
+        if (this.occupancyImage != null) {
+            renderOccupancyCells(cells);
+        }
+
+        if (this.dirtyCells == null) {
+            this.dirtyCells = new AxisAlignedBB(cells.minX, cells.minY, cells.maxX, cells.maxY);
         }
         else {
-            graphics.setColor(Color.WHITE);
-            graphics.drawLine(x1, y1 - hThickness, x2, y2 - hThickness);
-            graphics.setColor(Color.DARK_GRAY);
-            graphics.drawLine(x1, y1, x2, y2);
-            graphics.setColor(Color.WHITE);
-            graphics.drawLine(x1, y1 + hThickness, x2, y2 + hThickness);
+            this.dirtyCells.minX = Math.min(this.dirtyCells.minX, cells.minX);
+            this.dirtyCells.minY = Math.min(this.dirtyCells.minY, cells.minY);
+            this.dirtyCells.maxX = Math.max(this.dirtyCells.maxX, cells.maxX);
+            this.dirtyCells.maxY = Math.max(this.dirtyCells.maxY, cells.maxY);
         }
-    }
 
-    private void renderTiles(LaserDrillSetup setup, Graphics graphics) {
-        drawTile(setup.laserDrill, graphics);
-        drawTile(setup.preCharger1, graphics);
-        drawTile(setup.preCharger2, graphics);
-        drawTile(setup.preCharger3, graphics);
-        drawTile(setup.preCharger4, graphics);
+        Rectangle bounds = getCanvasBounds(cells);
+        if (bounds.intersects(0, 0, this.canvas.getWidth(), this.canvas.getHeight())) {
+            this.canvas.repaint(bounds);
+        }
     }
 
-    private void drawGrid(Graphics graphics) {
-        graphics.setColor(new Color(40, 40, 40));
-        for(int tileX = 0; tileX < this.gridSize.x; tileX++) {
-            for (int tileY = 0; tileY < this.gridSize.y; tileY++) {
-                drawTileOutline(tileX, tileY, graphics);
+    private void paintLayers(Graphics graphics) {
+        int width = this.canvas.getWidth();
+        int height = this.canvas.getHeight();
+        synchronized (this.layerLock) {
+            if (isLevelOfDetail()) {
+                paintOccupancy((Graphics2D) graphics, width, height);
+                return;
+            }
+
+            if (this.gridLayer == null || this.gridLayer.getWidth() != width || this.gridLayer.getHeight() != height) {
+                this.gridLayer = new BufferedImage(Math.max(1, width), Math.max(1, height), BufferedImage.TYPE_INT_RGB);
+                this.setupLayer = new BufferedImage(Math.max(1, width), Math.max(1, height), BufferedImage.TYPE_INT_ARGB);
+                this.viewChanged = true;
             }
+
+            AxisAlignedBB visible = getVisibleCells(width, height);
+            if (this.viewChanged) {
+                renderGridLayer(visible);
+                this.dirtyCells = visible;
+                this.viewChanged = false;
+            }
+
+            AxisAlignedBB dirty = this.dirtyCells;
+            if (dirty != null && dirty.intersectsAABB(visible)) {
+                dirty.minX = Math.max(dirty.minX, visible.minX);
+                dirty.minY = Math.max(dirty.minY, visible.minY);
+                dirty.maxX = Math.min(dirty.maxX, visible.maxX);
+                dirty.maxY = Math.min(dirty.maxY, visible.maxY);
+                renderDirtyCells(dirty);
+            }
+            this.dirtyCells = null;
+
+            graphics.drawImage(this.gridLayer, 0, 0, null);
+            graphics.drawImage(this.setupLayer, 0, 0, null);
         }
+    }
 
-        //for(int gridX = 0; gridX < this.gridSize.x + 2; gridX++) {
-        //    int x = getTileOffsetX(gridX);
-        //    graphics.drawLine(x, 0, x, this.getSize().height);
-        //}
-        //for (int gridY = 0; gridY < this.gridSize.y + 2; gridY++) {
-        //    int y = getTileOffsetY(gridY);
-        //    graphics.drawLine(0, y , this.getSize().width, y);
-        //}
+    private void renderGridLayer(AxisAlignedBB visible) {
+        Graphics2D graphics = this.gridLayer.createGraphics();
+        graphics.setColor(TilePainter.BackgroundColour);
+        graphics.fillRect(0, 0, this.gridLayer.getWidth(), this.gridLayer.getHeight());
+        applyView(graphics);
+        this.painter.drawGrid(visible.minX, visible.minY, visible.maxX, visible.maxY, graphics);
+        if (this.mask != null) {
+            this.painter.drawBlocked(this.mask, visible.minX, visible.minY, visible.maxX, visible.maxY, graphics);
+        }
+        graphics.dispose();
     }
 
-    private void drawArrow(Vector2 a, Vector2 b, TileDirection direction, Graphics graphics) {
-        graphics.drawLine(a.x, a.y, b.x, b.y);
-        drawArrowHead(b.x, b.y, 7, direction, graphics);
+    /**
+     * Clears the given cells of the setup layer and redraws every setup overlapping them, clipped to those cells
+     */
+    private void renderDirtyCells(AxisAlignedBB cells) {
+        Rectangle bounds = getCanvasBounds(cells);
+        final Graphics2D graphics = this.setupLayer.createGraphics();
+        graphics.setClip(bounds);
+        graphics.setComposite(ClearComposite);
+        graphics.fillRect(bounds.x, bounds.y, bounds.width, bounds.height);
+        graphics.setComposite(AlphaComposite.SrcOver);
+        applyView(graphics);
+        this.setupIndex.forEachIntersecting(cells, setup -> this.painter.drawSetup(setup.center.x, setup.center.y, graphics));
+        graphics.dispose();
     }
 
-    private void drawArrowHead(int x, int y, int size, TileDirection direction, Graphics graphics) {
-        int extraSize = (size * 3) / 2;
-        switch (direction) {
-            case NORTH:
-                y -= 2;
-                graphics.drawLine(x - size, y, x, y - extraSize);
-                graphics.drawLine(x, y - extraSize, x + size, y);
-                return;
-            case EAST:
-                x -= 2;
-                graphics.drawLine(x, y - size, x + extraSize, y);
-                graphics.drawLine(x + extraSize, y, x, y + size);
-                return;
-            case SOUTH:
-                y += 2;
-                graphics.drawLine(x - size, y, x, y + extraSize);
-                graphics.drawLine(x, y + extraSize, x + size, y);
-                return;
-            case WEST:
-                x += 2;
-                graphics.drawLine(x, y - size, x - extraSize, y);
-                graphics.drawLine(x - extraSize, y, x, y + size);
-                return;
-            case NONE:
-                break;
+    /**
+     * Draws the occupancy image scaled to the view. Drawing it whole lets Java2D clip it to the canvas, so
+     * only the cells in view are sampled
+     */
+    private void paintOccupancy(Graphics2D graphics, int width, int height) {
+        if (this.occupancyImage == null) {
+            this.occupancyImage = new BufferedImage(this.gridSize.x, this.gridSize.y, BufferedImage.TYPE_INT_RGB);
+            renderOccupancyCells(new AxisAlignedBB(0, 0, this.gridSize.x - 1, this.gridSize.y - 1));
         }
+        this.dirtyCells = null;
+        this.viewChanged = true;
+
+        graphics.setColor(TilePainter.BackgroundColour);
+        graphics.fillRect(0, 0, width, height);
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        int x1 = (int) Math.round(-this.viewX * getCellWidth());
+        int y1 = (int) Math.round(-this.viewY * getCellHeight());
+        int x2 = (int) Math.round((this.gridSize.x - this.viewX) * getCellWidth());
+        int y2 = (int) Math.round((this.gridSize.y - this.viewY) * getCellHeight());
+        graphics.drawImage(this.occupancyImage, x1, y1, x2, y2, 0, 0, this.gridSize.x, this.gridSize.y, null);
     }
 
-    private void drawTile(Tile tile, Graphics graphics) {
-        graphics.setColor(tile.type.getColour());
-        graphics.fill3DRect(getTileOffsetX(tile), getTileOffsetY(tile), getTileSizeX(), getTileSizeY(), true);
-        graphics.setColor(Color.RED);
-        drawArrowHead(getTileCenterX(tile), getTileCenterY(tile), 7, tile.direction, graphics);
-        drawArrowHead(getTileCenterX(tile), getTileCenterY(tile), 6, tile.direction, graphics);
+    /**
+     * Redraws the given cells of the occupancy image from the setups overlapping them. Solid tiles win over
+     * lasers, since beams of different setups may cross but never cover a solid tile
+     */
+    private void renderOccupancyCells(final AxisAlignedBB cells) {
+        final int minX = Math.max(0, cells.minX);
+        final int minY = Math.max(0, cells.minY);
+        final int maxX = Math.min(this.gridSize.x - 1, cells.maxX);
+        final int maxY = Math.min(this.gridSize.y - 1, cells.maxY);
+        final int background = TilePainter.BackgroundColour.getRGB();
+        int blocked = TilePainter.BlockedColour.getRGB();
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                this.occupancyImage.setRGB(x, y, this.mask != null && this.mask.isBlocked(x, y) ? blocked : background);
+            }
+        }
+
+        this.setupIndex.forEachIntersecting(cells, setup -> {
+            for (Tile tile : setup.getTiles()) {
+                int x = tile.location.x;
+                int y = tile.location.y;
+                if (x < minX || y < minY || x > maxX || y > maxY) {
+                    continue;
+                }
+                if (tile.type != TileType.LASER || this.occupancyImage.getRGB(x, y) == background) {
+                    this.occupancyImage.setRGB(x, y, TilePainter.getColour(tile.type).getRGB());
+                }
+            }
+        });
     }
 
-    private void drawTile(int x, int y, Graphics graphics) {
-        graphics.fill3DRect(getTileOffsetX(x), getTileOffsetY(y), getTileSizeX(), getTileSizeY(), true);
+    private boolean isLevelOfDetail() {
+        return Math.min(getCellWidth(), getCellHeight()) < MinDetailCellSize;
     }
 
-    private void drawTileOutline(int x, int y, Graphics graphics) {
-        graphics.drawRect(getTileOffsetX(x), getTileOffsetY(y), getTileSizeX(), getTileSizeY());
+    private void applyView(Graphics2D graphics) {
+        graphics.scale(this.zoom, this.zoom);
+        graphics.translate(-this.viewX * getTileSizeX(), -this.viewY * getTileSizeY());
     }
 
-    private int getTileCenterX(Tile tile) {
-        return getTileOffsetX(tile) + (getTileSizeX() / 2);
+    private double getCellWidth() {
+        return getTileSizeX() * this.zoom;
     }
 
-    private int getTileCenterY(Tile tile) {
-        return getTileOffsetY(tile) + (getTileSizeY() / 2);
+    private double getCellHeight() {
+        return getTileSizeY() * this.zoom;
     }
 
-    private int getTileOffsetX(Tile tile) {
-        return getTileOffsetX(tile.location.x);
+    /**
+     * Returns the zoom at which the whole grid fits in a canvas of the given size
+     */
+    private double getFitZoom(int width, int height) {
+        double zoomX = (double) width / (this.gridSize.x * getTileSizeX() + 1);
+        double zoomY = (double) height / (this.gridSize.y * getTileSizeY() + 1);
+        return Math.min(zoomX, zoomY);
     }
 
-    private int getTileOffsetY(Tile tile) {
-        return getTileOffsetY(tile.location.y);
+    /**
+     * Keeps at least one cell of the grid in view
+     */
+    private void clampView() {
+        double cellsX = this.canvas.getWidth() / getCellWidth();
+        double cellsY = this.canvas.getHeight() / getCellHeight();
+        this.viewX = Math.max(1.0D - cellsX, Math.min(this.gridSize.x - 1.0D, this.viewX));
+        this.viewY = Math.max(1.0D - cellsY, Math.min(this.gridSize.y - 1.0D, this.viewY));
     }
 
-    private int getTileOffsetX(int x) {
-        return (tileSize.x * x) + WindowOffsetX;
+    private AxisAlignedBB getVisibleCells(int width, int height) {
+        return new AxisAlignedBB(
+                Math.max(0, (int) Math.floor(this.viewX)),
+                Math.max(0, (int) Math.floor(this.viewY)),
+                Math.min(this.gridSize.x - 1, (int) Math.ceil(this.viewX + width / getCellWidth())),
+                Math.min(this.gridSize.y - 1, (int) Math.ceil(this.viewY + height / getCellHeight())));
     }
 
-    private int getTileOffsetY(int y) {
-        return (tileSize.y * y) + WindowOffsetY;
+    /**
+     * Returns the canvas pixels covered by the given cells (including the outline on their far edges)
+     */
+    private Rectangle getCanvasBounds(AxisAlignedBB cells) {
+        int x1 = (int) Math.floor((cells.minX - this.viewX) * getCellWidth());
+        int y1 = (int) Math.floor((cells.minY - this.viewY) * getCellHeight());
+        int x2 = (int) Math.ceil((cells.maxX + 1 - this.viewX) * getCellWidth()) + 1;
+        int y2 = (int) Math.ceil((cells.maxY + 1 - this.viewY) * getCellHeight()) + 1;
+        return new Rectangle(x1, y1, x2 - x1, y2 - y1);
     }
 
     private int getTileSizeX() {
@@ -179,21 +409,10 @@ public class TileDrawer extends JFrame {
         return this.tileSize.y;
     }
 
-    private int getLaserThickness() {
-        return ((getTileSizeX() + getTileSizeY()) / 2) / 8;
-    }
-
     private Vector2 getGridSize() {
         return gridSize;
     }
 
-    @Override
-    public void paint(Graphics g) {
-        super.paint(g);
-        drawGrid(g);
-        renderSetups(g);
-    }
-
     @Override
     public void setSize(int width, int height) {
         super.setSize(width, height);
@@ -0,0 +1,187 @@
+package reghzy.laserdrill;
+
+import reghzy.laserdrill.placement.CellMask;
+import reghzy.laserdrill.placement.Footprint;
+
+import java.awt.*;
+
+/**
+ * Draws grid outlines and setups in the style shared by {@link TileDrawer} and the PNG exporter
+ * <p>
+ * Cell (x, y) covers the pixels from (x * tileWidth, y * tileHeight) to just before the next cell, so
+ * callers translate or scale the graphics to pick which part of the grid ends up where. Setups are drawn
+ * straight from their center and the footprint, without building any Tile objects. A painter holds no
+ * mutable state, so one can be shared between threads
+ * </p>
+ */
+public class TilePainter {
+    public static final Color BackgroundColour = new Color(24, 24, 24);
+    public static final Color GridColour = new Color(40, 40, 40);
+    public static final Color PreChargerColour = new Color(20, 240, 60);
+    public static final Color BlockedColour = new Color(64, 56, 48);
+
+    private final int tileWidth;
+    private final int tileHeight;
+    private final Footprint footprint;
+    private final TileDirection[] solidDirections;
+
+    public TilePainter(int tileWidth, int tileHeight) {
+        this(tileWidth, tileHeight, Footprint.LASER_DRILL);
+    }
+
+    public TilePainter(int tileWidth, int tileHeight, Footprint footprint) {
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.footprint = footprint;
+        this.solidDirections = new TileDirection[footprint.solidX.length];
+        for (int i = 0; i < footprint.solidX.length; i++) {
+            this.solidDirections[i] = LaserDrillSetup.getDirectionTowardsDrill(footprint.solidX[i], footprint.solidY[i]);
+        }
+    }
+
+    public int getTileWidth() {
+        return this.tileWidth;
+    }
+
+    public int getTileHeight() {
+        return this.tileHeight;
+    }
+
+    /**
+     * Draws the outlines of the cells from (minX, minY) to (maxX, maxY), inclusive
+     */
+    public void drawGrid(int minX, int minY, int maxX, int maxY, Graphics graphics) {
+        graphics.setColor(GridColour);
+        for(int tileX = minX; tileX <= maxX; tileX++) {
+            for (int tileY = minY; tileY <= maxY; tileY++) {
+                drawTileOutline(tileX, tileY, graphics);
+            }
+        }
+    }
+
+    /**
+     * Fills the cells from (minX, minY) to (maxX, maxY), inclusive, that the mask blocks
+     */
+    public void drawBlocked(CellMask mask, int minX, int minY, int maxX, int maxY, Graphics graphics) {
+        graphics.setColor(BlockedColour);
+        for (int tileY = Math.max(0, minY), toY = Math.min(mask.height - 1, maxY); tileY <= toY; tileY++) {
+            for (int tileX = Math.max(0, minX), toX = Math.min(mask.width - 1, maxX); tileX <= toX; tileX++) {
+                if (mask.isBlocked(tileX, tileY)) {
+                    graphics.fillRect(getTileOffsetX(tileX) + 1, getTileOffsetY(tileY) + 1, this.tileWidth - 1, this.tileHeight - 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Draws the beams and solid tiles of the setup whose drill is at (x, y)
+     */
+    public void drawSetup(int x, int y, Graphics graphics) {
+        Footprint footprint = this.footprint;
+        int drillX = getTileCenterX(x);
+        int drillY = getTileCenterY(y);
+        for (int i = 1; i < footprint.solidX.length; i++) {
+            int dx = footprint.solidX[i];
+            int dy = footprint.solidY[i];
+            drawLineEffect(drillX, drillY, getTileCenterX(x + dx), getTileCenterY(y + dy), dx == 0, graphics);
+        }
+
+        for (int i = 0; i < footprint.solidX.length; i++) {
+            drawTile(x + footprint.solidX[i], y + footprint.solidY[i], i == 0 ? TileType.DRILL : TileType.PRE_CHARGER, this.solidDirections[i], graphics);
+        }
+    }
+
+    // Colours live here rather than on TileType, so that solving without a display never loads AWT
+    public static Color getColour(TileType type) {
+        switch (type) {
+            case PRE_CHARGER:
+                return PreChargerColour;
+            case DRILL:
+                return Color.RED;
+            case LASER:
+                return Color.WHITE;
+            default:
+                return Color.DARK_GRAY;
+        }
+    }
+
+    private void drawLineEffect(int x1, int y1, int x2, int y2, boolean isVertical, Graphics graphics) {
+        int hThickness = getLaserThickness() / 2;
+        if (isVertical) {
+            graphics.setColor(Color.WHITE);
+            graphics.drawLine(x1 - hThickness, y1, x2 - hThickness, y2);
+            graphics.setColor(Color.DARK_GRAY);
+            graphics.drawLine(x1, y1, x2, y2);
+            graphics.setColor(Color.WHITE);
+            graphics.drawLine(x1 + hThickness, y1, x2 + hThickness, y2);
+        }
+        else {
+            graphics.setColor(Color.WHITE);
+            graphics.drawLine(x1, y1 - hThickness, x2, y2 - hThickness);
+            graphics.setColor(Color.DARK_GRAY);
+            graphics.drawLine(x1, y1, x2, y2);
+            graphics.setColor(Color.WHITE);
+            graphics.drawLine(x1, y1 + hThickness, x2, y2 + hThickness);
+        }
+    }
+
+    private void drawArrowHead(int x, int y, int size, TileDirection direction, Graphics graphics) {
+        int extraSize = (size * 3) / 2;
+        switch (direction) {
+            case NORTH:
+                y -= 2;
+                graphics.drawLine(x - size, y, x, y - extraSize);
+                graphics.drawLine(x, y - extraSize, x + size, y);
+                return;
+            case EAST:
+                x -= 2;
+                graphics.drawLine(x, y - size, x + extraSize, y);
+                graphics.drawLine(x + extraSize, y, x, y + size);
+                return;
+            case SOUTH:
+                y += 2;
+                graphics.drawLine(x - size, y, x, y + extraSize);
+                graphics.drawLine(x, y + extraSize, x + size, y);
+                return;
+            case WEST:
+                x += 2;
+                graphics.drawLine(x, y - size, x - extraSize, y);
+                graphics.drawLine(x - extraSize, y, x, y + size);
+                return;
+            case NONE:
+                break;
+        }
+    }
+
+    private void drawTile(int x, int y, TileType type, TileDirection direction, Graphics graphics) {
+        graphics.setColor(getColour(type));
+        graphics.fill3DRect(getTileOffsetX(x), getTileOffsetY(y), this.tileWidth, this.tileHeight, true);
+        graphics.setColor(Color.RED);
+        drawArrowHead(getTileCenterX(x), getTileCenterY(y), 7, direction, graphics);
+        drawArrowHead(getTileCenterX(x), getTileCenterY(y), 6, direction, graphics);
+    }
+
+    private void drawTileOutline(int x, int y, Graphics graphics) {
+        graphics.drawRect(getTileOffsetX(x), getTileOffsetY(y), this.tileWidth, this.tileHeight);
+    }
+
+    private int getTileCenterX(int x) {
+        return getTileOffsetX(x) + (this.tileWidth / 2);
+    }
+
+    private int getTileCenterY(int y) {
+        return getTileOffsetY(y) + (this.tileHeight / 2);
+    }
+
+    private int getTileOffsetX(int x) {
+        return this.tileWidth * x;
+    }
+
+    private int getTileOffsetY(int y) {
+        return this.tileHeight * y;
+    }
+
+    private int getLaserThickness() {
+        return ((this.tileWidth + this.tileHeight) / 2) / 8;
+    }
+}
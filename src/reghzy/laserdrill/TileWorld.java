@@ -1,40 +1,283 @@
 package reghzy.laserdrill;
 
+import reghzy.laserdrill.cache.SolutionCache;
+import reghzy.laserdrill.metrics.SolverMetrics;
+import reghzy.laserdrill.placement.CellMask;
+import reghzy.laserdrill.placement.Footprint;
+import reghzy.laserdrill.placement.LayoutFileReader;
+import reghzy.laserdrill.placement.MaskLoader;
+import reghzy.laserdrill.placement.PlacementEngine;
+import reghzy.laserdrill.placement.SetupShape;
+import reghzy.laserdrill.scoring.LayoutScorer;
+import reghzy.laserdrill.solver.Layout;
+import reghzy.laserdrill.solver.PlacementProblem;
+import reghzy.laserdrill.solver.SolveControl;
+import reghzy.laserdrill.solver.SolveHandle;
+import reghzy.laserdrill.solver.Solver;
+import reghzy.laserdrill.solver.SolverType;
 import reghzy.laserdrill.utils.Vector2;
 
-import java.net.URL;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 
+/**
+ * Solves a grid and shows the result in a {@link TileDrawer}. See SolverCli for solving without a display
+ */
 public class TileWorld {
-    private final ArrayList<LaserDrillSetup> setups = new ArrayList<LaserDrillSetup>(16);
+    private final Vector2 gridSize;
+    private final Vector2 tileSize;
+    private final Footprint footprint;
+    private final CellMask mask;
+    private final PlacementEngine engine;
+    private SolutionCache cache;
+    private SolverMetrics metrics = SolverMetrics.DISABLED;
 
-    public static void main(String[] args) {
-        new TileWorld().run();
+    public static void main(String[] args) throws IOException {
+        SolverType type = SolverType.GREEDY;
+        String cachePath = null;
+        CellMask mask = null;
+        Footprint footprint = Footprint.LASER_DRILL;
+        boolean metrics = false;
+        boolean progress = false;
+        long deadlineMillis = 0;
+        String loadPath = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--exact")) {
+                type = SolverType.EXACT;
+            }
+            else if (args[i].equals("--local")) {
+                type = SolverType.LOCAL;
+            }
+            else if (args[i].equals("--portfolio")) {
+                type = SolverType.PORTFOLIO;
+            }
+            else if (args[i].equals("--cache") && i + 1 < args.length) {
+                cachePath = args[++i];
+            }
+            else if (args[i].equals("--mask") && i + 1 < args.length) {
+                mask = MaskLoader.load(Paths.get(args[++i]));
+            }
+            else if (args[i].equals("--shape") && i + 1 < args.length) {
+                footprint = SetupShape.parse(args[++i]).compile();
+            }
+            else if (args[i].equals("--metrics")) {
+                metrics = true;
+            }
+            else if (args[i].equals("--load") && i + 1 < args.length) {
+                loadPath = args[++i];
+            }
+            else if (args[i].equals("--progress")) {
+                progress = true;
+            }
+            else if (args[i].equals("--deadline") && i + 1 < args.length) {
+                deadlineMillis = (long) (Double.parseDouble(args[++i]) * 1000.0D);
+            }
+        }
+
+        if (loadPath != null) {
+            try (LayoutFileReader reader = LayoutFileReader.open(Paths.get(loadPath))) {
+                TileWorld world = new TileWorld(new Vector2(reader.getWidth(), reader.getHeight()), new Vector2(32, 32), reader.getFootprint(), null);
+                world.load(reader);
+            }
+            return;
+        }
+
+        // Closed once the layout is shown, so the store is forced and trimmed
+        try (SolutionCache cache = cachePath != null ? SolutionCache.open(Paths.get(cachePath), 16) : null) {
+            Vector2 gridSize = mask != null ? new Vector2(mask.width, mask.height) : new Vector2(16, 16);
+            TileWorld world = new TileWorld(gridSize, new Vector2(32, 32), footprint, mask);
+            world.setCache(cache);
+            if (metrics) {
+                world.setMetrics(new SolverMetrics(type.getName()));
+            }
+            if (progress || deadlineMillis > 0) {
+                SolveControl control = new SolveControl(world.getMetrics());
+                if (deadlineMillis > 0) {
+                    control.setTimeLimit(deadlineMillis);
+                }
+                if (progress) {
+                    control.addProgressListener(value -> System.err.println("progress " + (int) (value * 100.0D) + "%"));
+                    control.addImprovementListener(layout -> System.err.println("drills " + layout.size()));
+                }
+                try {
+                    world.start(type, control).get();
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+            }
+            else {
+                world.run(type);
+            }
+            if (metrics) {
+                System.err.println(world.getMetrics());
+            }
+        }
+    }
+
+    public TileWorld(Vector2 gridSize, Vector2 tileSize) {
+        this(gridSize, tileSize, Footprint.LASER_DRILL, null);
+    }
+
+    /**
+     * @param footprint The footprint of every setup, see SetupShape
+     * @param mask      The cells no setup may cover, or null if every cell is free
+     */
+    public TileWorld(Vector2 gridSize, Vector2 tileSize, Footprint footprint, CellMask mask) {
+        this.gridSize = gridSize;
+        this.tileSize = tileSize;
+        this.footprint = footprint;
+        this.mask = mask;
+        this.engine = new PlacementEngine(gridSize.x, gridSize.y, footprint, mask);
+    }
+
+    /**
+     * Returns the engine holding this world's layout. Edits made through it (including undo and redo)
+     * show up in the drawer once {@link #run(Solver)} has opened it
+     */
+    public PlacementEngine getEngine() {
+        return this.engine;
+    }
+
+    /**
+     * Sets the cache used by {@link #run(SolverType)} and {@link #start(SolverType, SolveControl)}, or null to
+     * always solve
+     */
+    public void setCache(SolutionCache cache) {
+        this.cache = cache;
     }
 
-    public void run() {
+    public SolverMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Sets the metrics solves and the engine count into, or {@link SolverMetrics#DISABLED} to stop counting
+     */
+    public void setMetrics(SolverMetrics metrics) {
+        this.metrics = metrics;
+        this.engine.setMetrics(metrics);
+    }
+
+    /**
+     * Solves with the given solver type, going through the cache if one is set
+     */
+    public void run(SolverType type) throws IOException {
+        if (this.cache == null) {
+            run(type.create());
+            return;
+        }
+
+        Solver solver = type.create();
+        show(this.cache.solve(createProblem(), type.getName(), problem -> solver.solve(problem, this.metrics)));
+    }
+
+    public void run(Solver solver) {
+        show(solver.solve(createProblem(), this.metrics));
+    }
+
+    /**
+     * Starts solving on another thread and returns at once, showing the result once the solve finishes or is
+     * stopped through the handle. Listeners for progress and improvements go on the control, before this is
+     * called
+     */
+    public SolveHandle start(Solver solver, SolveControl control) {
+        SolveHandle handle = SolveHandle.start(solver, createProblem(), control);
+        handle.whenDone(this::show);
+        return handle;
+    }
+
+    /**
+     * Like {@link #start(Solver, SolveControl)}, but goes through the cache if one is set. A solve the control
+     * stops early is shown but not cached
+     */
+    public SolveHandle start(SolverType type, SolveControl control) {
+        final Solver solver = type.create();
+        final SolutionCache cache = this.cache;
+        if (cache == null) {
+            return start(solver, control);
+        }
 
-        Vector2 gridSize = new Vector2(16, 16);
-        Vector2 tileSize = new Vector2(32, 32);
+        final String solverName = type.getName();
+        return start(new Solver() {
+            @Override
+            public Layout solve(PlacementProblem problem) {
+                return solve(problem, new SolveControl());
+            }
 
-        for (int x = 2; x < (gridSize.x - 2); x++) {
-            for (int y = 2; y < (gridSize.y - 2); y++) {
-                LaserDrillSetup setup = new LaserDrillSetup(new Vector2(x, y));
-                if (canPlace(setup)) {
-                    this.setups.add(setup);
+            @Override
+            public Layout solve(PlacementProblem problem, SolveControl control) {
+                try {
+                    return cache.solve(problem, solverName, solver, control);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
             }
-        }
+        }, control);
+    }
+
+    /**
+     * Adds the drills of a saved layout (see LayoutFileReader) and shows them. The layout must have been
+     * saved with this world's grid size and footprint
+     */
+    public void load(LayoutFileReader reader) throws IOException {
+        reader.readInto(this.engine);
+        render();
+    }
+
+    private PlacementProblem createProblem() {
+        return new PlacementProblem(this.gridSize.x, this.gridSize.y, this.footprint, this.mask);
+    }
 
-        TileDrawer drawer = new TileDrawer(gridSize, tileSize);
-        for (LaserDrillSetup setup : setups) {
-            drawer.addLaserDrillSetup(setup);
+    private void show(Layout layout) {
+        for (int i = 0; i < layout.size(); i++) {
+            this.engine.add(layout.getX(i), layout.getY(i));
         }
+        this.engine.clearHistory();
+
+        render();
+    }
+
+    /**
+     * Creates a scorer with the default terms (see LayoutScorer#createDefault) for this world's layout, which
+     * keeps its score up to date as setups are added, removed, undone and redone
+     */
+    public LayoutScorer createScorer() {
+        LayoutScorer scorer = LayoutScorer.createDefault(this.gridSize.x, this.gridSize.y, this.footprint);
+        scorer.attach(this.engine);
+        return scorer;
+    }
+
+    /**
+     * Adds the given setup if it can be placed, returning false otherwise
+     */
+    public boolean addSetup(LaserDrillSetup setup) {
+        return addSetup(setup.center.x, setup.center.y);
+    }
+
+    /**
+     * Adds a setup centered at the given cell if it can be placed, returning false otherwise
+     */
+    public boolean addSetup(int x, int y) {
+        return this.engine.add(x, y);
+    }
+
+    private void render() {
+        final TileDrawer drawer = new TileDrawer(this.gridSize, this.tileSize, this.footprint);
+        drawer.setMask(this.mask);
+        this.engine.forEach((x, y) -> drawer.addLaserDrillSetup(new LaserDrillSetup(x, y, this.footprint)));
+        this.engine.addListener(drawer);
 
         //drawer.addLaserDrillSetup(new LaserDrillSetup(new Vector2(6, 8)));
     }
 
     public boolean canPlace(final LaserDrillSetup laserSetup) {
-        return setups.parallelStream().allMatch(setup -> setup.canPlaceAbove(laserSetup));
+        return canPlace(laserSetup.center.x, laserSetup.center.y);
+    }
+
+    public boolean canPlace(int x, int y) {
+        return this.engine.canPlace(x, y);
     }
 }
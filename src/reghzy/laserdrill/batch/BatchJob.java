@@ -0,0 +1,73 @@
+package reghzy.laserdrill.batch;
+
+import reghzy.laserdrill.placement.CellMask;
+import reghzy.laserdrill.placement.Footprint;
+import reghzy.laserdrill.solver.PlacementProblem;
+import reghzy.laserdrill.solver.SolverType;
+
+/**
+ * One grid to solve in a batch run, see {@link JobReader} for how they are written
+ */
+public class BatchJob {
+    /**
+     * The position of this job in the run, from 1, which identifies it in the results since they are written
+     * in the order jobs finish
+     */
+    public final int index;
+    public final int width;
+    public final int height;
+    /**
+     * The width of the blocked border around the grid, in cells
+     */
+    public final int margin;
+    public final SolverType solverType;
+    /**
+     * The setup's shape as written in the jobs file (see SetupShape#parse), or null for the default drill
+     */
+    public final String shape;
+    public final Footprint footprint;
+    /**
+     * The most time the solve may take, or -1 for no limit
+     */
+    public final long deadlineMillis;
+
+    public BatchJob(int index, int width, int height, int margin, SolverType solverType, String shape, Footprint footprint, long deadlineMillis) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Grid size must be positive (" + width + "x" + height + ")");
+        }
+        if (margin < 0) {
+            throw new IllegalArgumentException("Margin cannot be negative (was " + margin + ")");
+        }
+
+        this.index = index;
+        this.width = width;
+        this.height = height;
+        this.margin = margin;
+        this.solverType = solverType;
+        this.shape = shape;
+        this.footprint = footprint;
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    /**
+     * Creates the problem to solve, blocking the margin. The mask is only created here, so queued jobs take
+     * next to no memory
+     */
+    public PlacementProblem createProblem() {
+        if (this.margin == 0) {
+            return new PlacementProblem(this.width, this.height, this.footprint);
+        }
+
+        CellMask mask = new CellMask(this.width, this.height);
+        mask.setBlocked(0, 0, this.margin - 1, this.height - 1);
+        mask.setBlocked(this.width - this.margin, 0, this.width - 1, this.height - 1);
+        mask.setBlocked(0, 0, this.width - 1, this.margin - 1);
+        mask.setBlocked(0, this.height - this.margin, this.width - 1, this.height - 1);
+        return new PlacementProblem(this.width, this.height, this.footprint, mask);
+    }
+
+    @Override
+    public String toString() {
+        return "job " + this.index + " (" + this.width + "x" + this.height + ", margin " + this.margin + ", " + this.solverType.getName() + ")";
+    }
+}
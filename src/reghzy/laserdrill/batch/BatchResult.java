@@ -0,0 +1,120 @@
+package reghzy.laserdrill.batch;
+
+import reghzy.laserdrill.solver.Layout;
+
+import java.io.IOException;
+
+/**
+ * The outcome of a batch job, and how it is written as a CSV row or a JSON line
+ */
+public class BatchResult {
+    public final BatchJob job;
+    /**
+     * The layout found, or null if the job failed
+     */
+    public final Layout layout;
+    public final long elapsedNanos;
+    /**
+     * True if the job's deadline stopped the solve, so the layout may be worse than a full solve's
+     */
+    public final boolean stopped;
+    /**
+     * Why the job failed, or null if it did not
+     */
+    public final String error;
+
+    public BatchResult(BatchJob job, Layout layout, long elapsedNanos, boolean stopped, String error) {
+        this.job = job;
+        this.layout = layout;
+        this.elapsedNanos = elapsedNanos;
+        this.stopped = stopped;
+        this.error = error;
+    }
+
+    public static void writeCsvHeader(Appendable out) throws IOException {
+        out.append("job,width,height,margin,solver,shape,drills,millis,stopped,error\n");
+    }
+
+    /**
+     * Writes one CSV row, with the columns of {@link #writeCsvHeader(Appendable)}. A failed job has no drills
+     */
+    public void writeCsv(Appendable out) throws IOException {
+        out.append(Integer.toString(this.job.index)).append(',');
+        out.append(Integer.toString(this.job.width)).append(',');
+        out.append(Integer.toString(this.job.height)).append(',');
+        out.append(Integer.toString(this.job.margin)).append(',');
+        out.append(this.job.solverType.getName()).append(',');
+        appendCsv(this.job.shape, out).append(',');
+        if (this.layout != null) {
+            out.append(Integer.toString(this.layout.size()));
+        }
+        out.append(',').append(Long.toString(this.elapsedNanos / 1000000L));
+        out.append(',').append(Boolean.toString(this.stopped)).append(',');
+        appendCsv(this.error, out).append('\n');
+    }
+
+    /**
+     * Writes a single JSON object on one line. The drills are written as an array of [x, y] pairs only if
+     * asked for, as they make up nearly all of the output
+     */
+    public void writeJson(Appendable out, boolean drills) throws IOException {
+        out.append("{\"job\":").append(Integer.toString(this.job.index));
+        out.append(",\"width\":").append(Integer.toString(this.job.width));
+        out.append(",\"height\":").append(Integer.toString(this.job.height));
+        out.append(",\"margin\":").append(Integer.toString(this.job.margin));
+        out.append(",\"solver\":\"").append(this.job.solverType.getName()).append('"');
+        if (this.job.shape != null) {
+            appendJson(this.job.shape, out.append(",\"shape\":"));
+        }
+        if (this.layout != null) {
+            out.append(",\"count\":").append(Integer.toString(this.layout.size()));
+        }
+        out.append(",\"millis\":").append(Long.toString(this.elapsedNanos / 1000000L));
+        out.append(",\"stopped\":").append(Boolean.toString(this.stopped));
+        if (this.error != null) {
+            appendJson(this.error, out.append(",\"error\":"));
+        }
+
+        if (drills && this.layout != null) {
+            out.append(",\"drills\":[");
+            for (int i = 0; i < this.layout.size(); i++) {
+                if (i != 0) {
+                    out.append(',');
+                }
+                out.append('[').append(Integer.toString(this.layout.getX(i))).append(',').append(Integer.toString(this.layout.getY(i))).append(']');
+            }
+            out.append(']');
+        }
+        out.append("}\n");
+    }
+
+    /**
+     * Appends a CSV field, quoted if it holds a comma, quote or line break. Null is written as an empty field
+     */
+    private static Appendable appendCsv(String value, Appendable out) throws IOException {
+        if (value == null) {
+            return out;
+        }
+        if (value.indexOf(',') == -1 && value.indexOf('"') == -1 && value.indexOf('\n') == -1 && value.indexOf('\r') == -1) {
+            return out.append(value);
+        }
+        return out.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+
+    private static void appendJson(String value, Appendable out) throws IOException {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            }
+            else if (c < 0x20) {
+                out.append(String.format("\\u%04x", (int) c));
+            }
+            else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,177 @@
+package reghzy.laserdrill.batch;
+
+import reghzy.laserdrill.cache.SolutionCache;
+import reghzy.laserdrill.solver.Layout;
+import reghzy.laserdrill.solver.PlacementProblem;
+import reghzy.laserdrill.solver.SolveControl;
+import reghzy.laserdrill.solver.Solver;
+import reghzy.laserdrill.solver.SolverType;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs batch jobs on a fixed pool of worker threads, passing each result to a listener as soon as its job
+ * finishes
+ * <p>
+ * Jobs are taken from the iterator only when a worker is close to free: at most {@link #QueuedPerThread}
+ * jobs per thread are waiting or running at once, and a result is dropped once the listener has it, so memory
+ * use does not depend on how many jobs there are (see {@link JobReader}, which reads them lazily too)
+ * </p>
+ * <p>
+ * Every job of a solver type uses the same solver, created on first use, so per solver state is warmed up
+ * once per run instead of once per job: the exact solver's fork join pool and the portfolio's table of
+ * winning orders, for example. Footprints are shared the same way by the reader, and a solution cache, if
+ * set, is shared by every worker
+ * </p>
+ */
+public class BatchRunner {
+    /**
+     * How many jobs each thread may have waiting or running, enough to keep the workers busy while the next
+     * jobs are read
+     */
+    private static final int QueuedPerThread = 2;
+
+    private final int threads;
+    private final EnumMap<SolverType, Solver> solvers = new EnumMap<SolverType, Solver>(SolverType.class);
+    private SolutionCache cache;
+
+    /**
+     * Creates a runner with a thread per core
+     */
+    public BatchRunner() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchRunner(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one thread (was " + threads + ")");
+        }
+
+        this.threads = threads;
+    }
+
+    /**
+     * Sets the cache every job is solved through, or null to always solve
+     */
+    public void setCache(SolutionCache cache) {
+        this.cache = cache;
+    }
+
+    public interface Listener {
+        /**
+         * Called on a worker thread as each job finishes, one call at a time. Throwing stops the run once the
+         * jobs already started have finished
+         */
+        void jobFinished(BatchResult result) throws IOException;
+    }
+
+    /**
+     * Runs every job and waits for them to finish. A job that fails does not stop the run, its result has the
+     * error instead
+     *
+     * @return The number of jobs run
+     * @throws IOException              If the listener failed
+     * @throws IllegalArgumentException If the iterator did (see JobReader#hasNext), once started jobs finish
+     */
+    public int run(Iterator<BatchJob> jobs, final Listener listener) throws IOException, InterruptedException {
+        final AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(this.threads, runnable -> {
+            Thread thread = new Thread(runnable, "Batch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        final Semaphore slots = new Semaphore(this.threads * QueuedPerThread);
+        final AtomicReference<IOException> failure = new AtomicReference<IOException>();
+        int count = 0;
+        try {
+            while (failure.get() == null && jobs.hasNext()) {
+                final BatchJob job = jobs.next();
+                slots.acquire();
+                count++;
+                executor.execute(() -> {
+                    try {
+                        if (failure.get() != null) {
+                            return;
+                        }
+
+                        BatchResult result = run(job);
+                        synchronized (listener) {
+                            if (failure.get() == null) {
+                                listener.jobFinished(result);
+                            }
+                        }
+                    }
+                    catch (IOException e) {
+                        failure.compareAndSet(null, e);
+                    }
+                    finally {
+                        slots.release();
+                    }
+                });
+            }
+        }
+        finally {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            }
+            catch (InterruptedException e) {
+                executor.shutdownNow();
+                throw e;
+            }
+        }
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return count;
+    }
+
+    /**
+     * Solves a single job on the calling thread
+     */
+    public BatchResult run(BatchJob job) {
+        long start = System.nanoTime();
+        SolveControl control = new SolveControl();
+        if (job.deadlineMillis >= 0) {
+            control.setTimeLimit(job.deadlineMillis);
+        }
+
+        try {
+            PlacementProblem problem = job.createProblem();
+            Solver solver = getSolver(job.solverType);
+            Layout layout;
+            if (this.cache != null) {
+                layout = this.cache.solve(problem, job.solverType.getName(), solver, control);
+            }
+            else {
+                layout = solver.solve(problem, control);
+            }
+            return new BatchResult(job, layout, System.nanoTime() - start, control.wasStopped(), null);
+        }
+        catch (IOException | RuntimeException e) {
+            String error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            return new BatchResult(job, null, System.nanoTime() - start, control.wasStopped(), error);
+        }
+    }
+
+    private Solver getSolver(SolverType type) {
+        synchronized (this.solvers) {
+            Solver solver = this.solvers.get(type);
+            if (solver == null) {
+                solver = type.create();
+                this.solvers.put(type, solver);
+            }
+            return solver;
+        }
+    }
+}
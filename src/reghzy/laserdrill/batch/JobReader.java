@@ -0,0 +1,270 @@
+package reghzy.laserdrill.batch;
+
+import reghzy.laserdrill.placement.Footprint;
+import reghzy.laserdrill.placement.SetupShape;
+import reghzy.laserdrill.solver.SolverType;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads batch jobs from a text file, one line at a time, so a file describing any number of jobs is never
+ * held in memory
+ * <p>
+ * Each line is a grid size followed by options, for example:
+ * </p>
+ * <pre>
+ * # Every square grid from 8x8 to 256x256, with no margin and a margin of 2
+ * 8-256 margin=0-2:2
+ * 64x16-32 solver=exact deadline=5 shape=range=2,chargers=WE
+ * </pre>
+ * <p>
+ * The size is "WxH", or a single value for square grids. Sizes and the margin may be ranges written "A-B" or
+ * "A-B:STEP", and a line stands for every combination of them (widths outermost, margins innermost). The
+ * options are solver (default given to the reader), margin (the width of the blocked border, default 0),
+ * deadline (seconds, default given to the reader) and shape (see SetupShape#parse, with no spaces). Blank
+ * lines and lines starting with # are skipped
+ * </p>
+ * <p>
+ * Footprints are compiled once per distinct shape and shared by every job using it
+ * </p>
+ */
+public class JobReader implements Iterator<BatchJob> {
+    private final BufferedReader reader;
+    private final SolverType defaultSolver;
+    private final long defaultDeadlineMillis;
+    private final HashMap<String, Footprint> footprints = new HashMap<String, Footprint>();
+    private int lineNumber;
+    private int jobCount;
+    private Line line;
+    private BatchJob next;
+
+    /**
+     * @param defaultSolver         The solver of jobs that do not name one
+     * @param defaultDeadlineMillis The deadline of jobs that do not give one, or -1 for none
+     */
+    public JobReader(BufferedReader reader, SolverType defaultSolver, long defaultDeadlineMillis) {
+        this.reader = reader;
+        this.defaultSolver = defaultSolver;
+        this.defaultDeadlineMillis = defaultDeadlineMillis;
+    }
+
+    /**
+     * @throws UncheckedIOException     If the file cannot be read
+     * @throws IllegalArgumentException If the next line is invalid, with its line number
+     */
+    @Override
+    public boolean hasNext() {
+        while (this.next == null) {
+            if (this.line == null || !this.line.advance()) {
+                // Forget the finished line, or skipping a blank line would advance it again
+                this.line = null;
+                String text;
+                try {
+                    text = this.reader.readLine();
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (text == null) {
+                    return false;
+                }
+
+                this.lineNumber++;
+                text = text.trim();
+                if (text.isEmpty() || text.startsWith("#")) {
+                    continue;
+                }
+
+                try {
+                    this.line = parseLine(text);
+                }
+                catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Line " + this.lineNumber + ": " + e.getMessage(), e);
+                }
+            }
+
+            Line line = this.line;
+            this.next = new BatchJob(++this.jobCount, line.width.value, line.height != null ? line.height.value : line.width.value,
+                                     line.margin.value, line.solverType, line.shape, line.footprint, line.deadlineMillis);
+        }
+        return true;
+    }
+
+    @Override
+    public BatchJob next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        BatchJob job = this.next;
+        this.next = null;
+        return job;
+    }
+
+    /**
+     * Returns the number of the line last read, from 1
+     */
+    public int getLineNumber() {
+        return this.lineNumber;
+    }
+
+    private Line parseLine(String text) {
+        String[] parts = text.split("\\s+");
+        Range width;
+        Range height = null;
+        int separator = parts[0].indexOf('x');
+        if (separator == -1) {
+            width = Range.parse(parts[0], 1);
+        }
+        else {
+            width = Range.parse(parts[0].substring(0, separator), 1);
+            height = Range.parse(parts[0].substring(separator + 1), 1);
+        }
+
+        Range margin = new Range(0, 0, 1);
+        SolverType solverType = this.defaultSolver;
+        String shape = null;
+        long deadlineMillis = this.defaultDeadlineMillis;
+        for (int i = 1; i < parts.length; i++) {
+            int equals = parts[i].indexOf('=');
+            String key = equals == -1 ? parts[i] : parts[i].substring(0, equals);
+            String value = equals == -1 ? "" : parts[i].substring(equals + 1);
+            if (key.equals("solver")) {
+                solverType = SolverType.fromName(value);
+            }
+            else if (key.equals("margin")) {
+                margin = Range.parse(value, 0);
+            }
+            else if (key.equals("shape")) {
+                shape = value;
+            }
+            else if (key.equals("deadline")) {
+                deadlineMillis = parseSeconds(value);
+            }
+            else {
+                throw new IllegalArgumentException("Unknown option '" + key + "'");
+            }
+        }
+
+        Footprint footprint = Footprint.LASER_DRILL;
+        if (shape != null) {
+            footprint = this.footprints.get(shape);
+            if (footprint == null) {
+                footprint = SetupShape.parse(shape).compile();
+                this.footprints.put(shape, footprint);
+            }
+        }
+        return new Line(width, height, margin, solverType, shape, footprint, deadlineMillis);
+    }
+
+    private static long parseSeconds(String value) {
+        try {
+            double seconds = Double.parseDouble(value);
+            if (seconds < 0 || Double.isNaN(seconds)) {
+                throw new NumberFormatException();
+            }
+            return (long) (seconds * 1000.0D);
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid deadline '" + value + "', expected seconds");
+        }
+    }
+
+    /**
+     * An inclusive range of values, with the value the reader is currently at
+     */
+    private static class Range {
+        private final int first;
+        private final int last;
+        private final int step;
+        private int value;
+
+        private Range(int first, int last, int step) {
+            this.first = first;
+            this.last = last;
+            this.step = step;
+            this.value = first;
+        }
+
+        /**
+         * Parses "A", "A-B" or "A-B:STEP", where every value must be at least the given minimum
+         *
+         * @throws IllegalArgumentException If the range is invalid or reversed, so a typo cannot drop jobs unnoticed
+         */
+        private static Range parse(String text, int minimum) {
+            Range range;
+            try {
+                int step = 1;
+                int colon = text.indexOf(':');
+                if (colon != -1) {
+                    step = Integer.parseInt(text.substring(colon + 1));
+                    text = text.substring(0, colon);
+                }
+
+                int dash = text.indexOf('-');
+                int first = Integer.parseInt(dash == -1 ? text : text.substring(0, dash));
+                int last = dash == -1 ? first : Integer.parseInt(text.substring(dash + 1));
+                if (first < minimum || step < 1) {
+                    throw new NumberFormatException();
+                }
+                range = new Range(first, last, step);
+            }
+            catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value or range '" + text + "', expected A, A-B or A-B:STEP, from " + minimum);
+            }
+
+            if (range.first > range.last) {
+                throw new IllegalArgumentException("Range '" + text + "' is reversed, expected the smaller value first");
+            }
+            return range;
+        }
+
+        /**
+         * Moves to the next value, or back to the first and returns false if there is none
+         */
+        private boolean advance() {
+            if (this.last - this.value >= this.step) {
+                this.value += this.step;
+                return true;
+            }
+
+            this.value = this.first;
+            return false;
+        }
+    }
+
+    /**
+     * A parsed line, which stands for every combination of its ranges
+     */
+    private static class Line {
+        private final Range width;
+        private final Range height; // null for square grids
+        private final Range margin;
+        private final SolverType solverType;
+        private final String shape;
+        private final Footprint footprint;
+        private final long deadlineMillis;
+
+        private Line(Range width, Range height, Range margin, SolverType solverType, String shape, Footprint footprint, long deadlineMillis) {
+            this.width = width;
+            this.height = height;
+            this.margin = margin;
+            this.solverType = solverType;
+            this.shape = shape;
+            this.footprint = footprint;
+            this.deadlineMillis = deadlineMillis;
+        }
+
+        /**
+         * Moves to the next combination, returning false once every one has been read
+         */
+        private boolean advance() {
+            return this.margin.advance() || (this.height != null && this.height.advance()) || this.width.advance();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package reghzy.laserdrill.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A small benchmark harness: warms an operation up, then times it in batches to report throughput,
+ * percentiles of the per-batch average time of an operation and the allocation rate of the benchmark thread
+ * <p>
+ * Each batch is sized so that it runs for roughly {@link #TargetBatchNanos}, which keeps timer overhead out
+ * of nanosecond operations while still timing slow ones (e.g. whole solves) one at a time. The percentiles
+ * are therefore over batch averages, not single operations: they show how steady the batches were, and only
+ * equal single operation latencies when the batch size is 1
+ * </p>
+ */
+public class BenchmarkRunner {
+    private static final long TargetBatchNanos = 20_000L;
+    private static final int MaxSamples = 1 << 16;
+
+    private final long warmupNanos;
+    private final long measureNanos;
+    private volatile long sink;
+
+    public interface Operation {
+        /**
+         * Runs the operation once, returning any value derived from its result so it cannot be optimised away
+         */
+        long run(int iteration);
+    }
+
+    public static class Result {
+        public final String name;
+        public final long operations;
+        public final double opsPerSecond;
+        /**
+         * The operations timed together in each batch
+         */
+        public final int batchSize;
+        /**
+         * The median of the batches' average time per operation
+         */
+        public final double p50Nanos;
+        /**
+         * The 99th percentile of the batches' average time per operation
+         */
+        public final double p99Nanos;
+        public final double bytesPerOp;
+        public final double allocationMBPerSecond;
+
+        private Result(String name, long operations, double opsPerSecond, int batchSize, double p50Nanos, double p99Nanos,
+                       double bytesPerOp, double allocationMBPerSecond) {
+            this.name = name;
+            this.operations = operations;
+            this.opsPerSecond = opsPerSecond;
+            this.batchSize = batchSize;
+            this.p50Nanos = p50Nanos;
+            this.p99Nanos = p99Nanos;
+            this.bytesPerOp = bytesPerOp;
+            this.allocationMBPerSecond = allocationMBPerSecond;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-48s %14.1f ops/s  batch %8d  p50 %12.1f ns/op  p99 %12.1f ns/op  %10.1f B/op  %8.1f MB/s",
+                                 this.name, this.opsPerSecond, this.batchSize, this.p50Nanos, this.p99Nanos, this.bytesPerOp, this.allocationMBPerSecond);
+        }
+    }
+
+    public BenchmarkRunner(long warmupMillis, long measureMillis) {
+        this.warmupNanos = warmupMillis * 1_000_000L;
+        this.measureNanos = measureMillis * 1_000_000L;
+    }
+
+    public Result run(String name, Operation operation) {
+        int batchSize = 1;
+        int iteration = 0;
+        long warmupEnd = System.nanoTime() + this.warmupNanos;
+        while (System.nanoTime() < warmupEnd) {
+            long start = System.nanoTime();
+            for (int i = 0; i < batchSize; i++) {
+                this.sink += operation.run(iteration++);
+            }
+            long elapsed = System.nanoTime() - start;
+            if (elapsed < TargetBatchNanos && batchSize < (1 << 24)) {
+                batchSize <<= 1;
+            }
+        }
+
+        double[] samples = new double[MaxSamples];
+        int sampleCount = 0;
+        long operations = 0;
+        long totalNanos = 0;
+        long allocatedBefore = getAllocatedBytes();
+        while (totalNanos < this.measureNanos) {
+            long start = System.nanoTime();
+            for (int i = 0; i < batchSize; i++) {
+                this.sink += operation.run(iteration++);
+            }
+            long elapsed = System.nanoTime() - start;
+            totalNanos += elapsed;
+            operations += batchSize;
+            if (sampleCount < MaxSamples) {
+                samples[sampleCount++] = (double) elapsed / batchSize;
+            }
+        }
+        long allocated = getAllocatedBytes() - allocatedBefore;
+
+        Arrays.sort(samples, 0, sampleCount);
+        double seconds = totalNanos / 1e9;
+        return new Result(name, operations, operations / seconds, batchSize,
+                          getPercentile(samples, sampleCount, 0.50), getPercentile(samples, sampleCount, 0.99),
+                          allocated < 0 ? Double.NaN : (double) allocated / operations,
+                          allocated < 0 ? Double.NaN : allocated / seconds / (1024 * 1024));
+    }
+
+    private static double getPercentile(double[] sorted, int count, double percentile) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        return sorted[Math.min(count - 1, (int) (percentile * count))];
+    }
+
+    /**
+     * Returns the bytes allocated by the current thread so far, or -1 if the JVM cannot tell
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,136 @@
+package reghzy.laserdrill.bench;
+
+import reghzy.laserdrill.LaserDrillSetup;
+import reghzy.laserdrill.placement.PlacementEngine;
+import reghzy.laserdrill.placement.SetupIndex;
+import reghzy.laserdrill.solver.Layout;
+import reghzy.laserdrill.solver.PlacementProblem;
+import reghzy.laserdrill.solver.Solver;
+import reghzy.laserdrill.solver.SolverType;
+import reghzy.laserdrill.utils.AxisAlignedBB;
+import reghzy.laserdrill.utils.Vector2;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Benchmarks the geometry and placement hot paths, and whole solves at a few grid sizes
+ * <p>
+ * Usage: PlacementBenchmarks [filter] [--warmup ms] [--time ms], where only benchmarks whose name
+ * contains the filter are run
+ * </p>
+ */
+public class PlacementBenchmarks {
+    private static final int CandidateCount = 1024;
+
+    private final BenchmarkRunner runner;
+    private final String filter;
+
+    public PlacementBenchmarks(BenchmarkRunner runner, String filter) {
+        this.runner = runner;
+        this.filter = filter;
+    }
+
+    public static void main(String[] args) {
+        String filter = "";
+        long warmupMillis = 500;
+        long measureMillis = 1000;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--warmup") && i + 1 < args.length) {
+                warmupMillis = Long.parseLong(args[++i]);
+            }
+            else if (args[i].equals("--time") && i + 1 < args.length) {
+                measureMillis = Long.parseLong(args[++i]);
+            }
+            else {
+                filter = args[i];
+            }
+        }
+
+        PlacementBenchmarks benchmarks = new PlacementBenchmarks(new BenchmarkRunner(warmupMillis, measureMillis), filter);
+        benchmarks.runGeometry();
+        for (int size : new int[] {16, 64, 256}) {
+            benchmarks.runCanPlace(size);
+        }
+        for (int size : new int[] {16, 32, 64}) {
+            benchmarks.runSolve(size, size, SolverType.GREEDY, SolverType.EXACT, SolverType.PERIODIC);
+        }
+        benchmarks.runSolve(1024, 1024, SolverType.GREEDY, SolverType.PERIODIC);
+        benchmarks.runSolve(4096, 10, SolverType.GREEDY, SolverType.STRIP);
+    }
+
+    public void runGeometry() {
+        Random random = new Random(1);
+        final AxisAlignedBB[] boxes = new AxisAlignedBB[CandidateCount];
+        final LaserDrillSetup[] setups = new LaserDrillSetup[CandidateCount];
+        for (int i = 0; i < CandidateCount; i++) {
+            setups[i] = new LaserDrillSetup(random.nextInt(32), random.nextInt(32));
+            boxes[i] = setups[i].boundingBox;
+        }
+
+        int mask = CandidateCount - 1;
+        run("AxisAlignedBB.intersectsAABB", i -> boxes[i & mask].intersectsAABB(boxes[(i * 7 + 3) & mask]) ? 1 : 0);
+        run("LaserDrillSetup.canPlaceAbove", i -> setups[i & mask].canPlaceAbove(setups[(i * 7 + 3) & mask]) ? 1 : 0);
+        run("LaserDrillSetup.canPlaceAbove (coordinates)", i -> {
+            Vector2 a = setups[i & mask].center;
+            Vector2 b = setups[(i * 7 + 3) & mask].center;
+            return LaserDrillSetup.canPlaceAbove(a.x, a.y, b.x, b.y) ? 1 : 0;
+        });
+        run("LaserDrillSetup.<init>", i -> new LaserDrillSetup(i & 31, (i >>> 5) & 31).center.x);
+        run("LaserDrillSetup.getTiles", i -> new LaserDrillSetup(i & 31, (i >>> 5) & 31).getTiles().length);
+    }
+
+    /**
+     * Times a placement check against a greedily filled grid of the given size, once for each way of storing the setups
+     */
+    public void runCanPlace(int size) {
+        Layout layout = SolverType.GREEDY.create().solve(new PlacementProblem(size, size));
+        final ArrayList<LaserDrillSetup> setups = layout.toSetups();
+        final SetupIndex index = new SetupIndex();
+        final PlacementEngine engine = new PlacementEngine(size, size);
+        for (LaserDrillSetup setup : setups) {
+            index.add(setup);
+            engine.add(setup.center.x, setup.center.y);
+        }
+
+        Random random = new Random(2);
+        final LaserDrillSetup[] candidates = new LaserDrillSetup[CandidateCount];
+        for (int i = 0; i < CandidateCount; i++) {
+            candidates[i] = new LaserDrillSetup(2 + random.nextInt(size - 4), 2 + random.nextInt(size - 4));
+        }
+
+        int mask = CandidateCount - 1;
+        String suffix = " " + size + "x" + size + " (" + setups.size() + " setups)";
+        run("canPlace stream" + suffix, i -> {
+            LaserDrillSetup candidate = candidates[i & mask];
+            return setups.stream().allMatch(setup -> setup.canPlaceAbove(candidate)) ? 1 : 0;
+        });
+        run("canPlace parallelStream" + suffix, i -> {
+            LaserDrillSetup candidate = candidates[i & mask];
+            return setups.parallelStream().allMatch(setup -> setup.canPlaceAbove(candidate)) ? 1 : 0;
+        });
+        run("canPlace SetupIndex" + suffix, i -> index.canPlace(candidates[i & mask]) ? 1 : 0);
+        run("canPlace SetupIndex (coordinates)" + suffix, i -> {
+            LaserDrillSetup candidate = candidates[i & mask];
+            return index.canPlace(candidate.center.x, candidate.center.y) ? 1 : 0;
+        });
+        run("canPlace PlacementEngine" + suffix, i -> {
+            LaserDrillSetup candidate = candidates[i & mask];
+            return engine.canPlace(candidate.center.x, candidate.center.y) ? 1 : 0;
+        });
+    }
+
+    public void runSolve(int width, int height, SolverType... types) {
+        final PlacementProblem problem = new PlacementProblem(width, height);
+        for (SolverType type : types) {
+            final Solver solver = type.create();
+            run("solve " + type.getName() + " " + width + "x" + height, i -> solver.solve(problem).size());
+        }
+    }
+
+    private void run(String name, BenchmarkRunner.Operation operation) {
+        if (name.contains(this.filter)) {
+            System.out.println(this.runner.run(name, operation));
+        }
+    }
+}
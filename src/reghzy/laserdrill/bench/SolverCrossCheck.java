@@ -0,0 +1,199 @@
+package reghzy.laserdrill.bench;
+
+import reghzy.laserdrill.placement.CellMask;
+import reghzy.laserdrill.placement.Footprint;
+import reghzy.laserdrill.placement.SetupShape;
+import reghzy.laserdrill.solver.BranchAndBoundSolver;
+import reghzy.laserdrill.solver.Layout;
+import reghzy.laserdrill.solver.LayoutEnumerator;
+import reghzy.laserdrill.solver.PlacementProblem;
+import reghzy.laserdrill.solver.StripSolver;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * Checks the exact solvers against a brute force search on small grids: the branch and bound and strip
+ * solvers must find a valid layout with the most drills, and the enumerator must list valid optimal layouts
+ * whose classes add up to every optimal layout the brute force finds
+ * <p>
+ * Grids cover squares and rectangles, random masks and a footprint without every symmetry. Strips too wide
+ * for the strip solver are skipped. Prints each grid's result and exits with 1 if any check failed
+ * </p>
+ * <p>
+ * Usage: SolverCrossCheck [--seed N]
+ * </p>
+ */
+public class SolverCrossCheck {
+    private static final int EnumerationLimit = 1 << 16;
+    private static final int MaskedGrids = 12;
+
+    private int failures;
+
+    public static void main(String[] args) {
+        long seed = 1;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--seed") && i + 1 < args.length) {
+                seed = Long.parseLong(args[++i]);
+            }
+        }
+
+        SolverCrossCheck check = new SolverCrossCheck();
+        for (int size = 5; size <= 10; size++) {
+            check.check(new PlacementProblem(size, size), "empty");
+        }
+        for (int[] size : new int[][] {{5, 12}, {6, 13}, {7, 14}, {12, 8}, {9, 11}}) {
+            check.check(new PlacementProblem(size[0], size[1]), "empty");
+        }
+
+        Random random = new Random(seed);
+        for (int i = 0; i < MaskedGrids; i++) {
+            int width = 6 + random.nextInt(5);
+            int height = 6 + random.nextInt(5);
+            CellMask mask = new CellMask(width, height);
+            for (int blocked = 1 + random.nextInt(4); blocked > 0; blocked--) {
+                mask.setBlocked(random.nextInt(width), random.nextInt(height));
+            }
+            check.check(new PlacementProblem(width, height, Footprint.LASER_DRILL, mask), "masked");
+        }
+
+        Footprint shape = SetupShape.parse("range=2,chargers=WE").compile();
+        for (int[] size : new int[][] {{9, 9}, {12, 8}, {10, 10}}) {
+            check.check(new PlacementProblem(size[0], size[1], shape), "range=2,chargers=WE");
+        }
+
+        System.out.println(check.failures == 0 ? "all checks passed" : check.failures + " checks failed");
+        if (check.failures != 0) {
+            System.exit(1);
+        }
+    }
+
+    public void check(PlacementProblem problem, String description) {
+        BruteForce brute = new BruteForce(problem);
+        brute.search(0, 0);
+        String name = problem.width + "x" + problem.height + " " + description;
+
+        Layout exact = new BranchAndBoundSolver().solve(problem);
+        expect(name, "exact", isValid(problem, exact) && exact.size() == brute.best,
+               exact.size() + " drills" + (isValid(problem, exact) ? "" : " (invalid)"));
+
+        String strip;
+        try {
+            Layout layout = new StripSolver().solve(problem);
+            expect(name, "strip", isValid(problem, layout) && layout.size() == brute.best,
+                   layout.size() + " drills" + (isValid(problem, layout) ? "" : " (invalid)"));
+            strip = "strip " + layout.size();
+        }
+        catch (IllegalArgumentException e) {
+            strip = "strip skipped";
+        }
+
+        LayoutEnumerator.Result result = new LayoutEnumerator(EnumerationLimit).enumerate(problem);
+        boolean listed = result.isComplete() && result.optimum == brute.best;
+        HashSet<BitSet> seen = new HashSet<BitSet>();
+        for (Layout layout : result.getLayouts()) {
+            BitSet cells = toCells(problem, layout);
+            listed &= isValid(problem, layout) && layout.size() == brute.best && brute.optimal.contains(cells) && seen.add(cells);
+        }
+        listed &= result.getTotalLayouts() == brute.optimal.size();
+        expect(name, "enumerator", listed, result.getLayouts().size() + " classes of " + result.getTotalLayouts()
+                                           + " layouts, complete " + result.isComplete());
+
+        System.out.println(name + ": optimum " + brute.best + " (" + brute.optimal.size() + " layouts), exact " + exact.size()
+                           + ", " + strip + ", " + result.getLayouts().size() + " classes");
+    }
+
+    private void expect(String name, String solver, boolean passed, String found) {
+        if (!passed) {
+            this.failures++;
+            System.out.println("FAILED " + name + ": " + solver + " found " + found);
+        }
+    }
+
+    private static boolean isValid(PlacementProblem problem, Layout layout) {
+        for (int i = 0; i < layout.size(); i++) {
+            if (!problem.isCandidate(layout.getX(i), layout.getY(i))) {
+                return false;
+            }
+            for (int j = i + 1; j < layout.size(); j++) {
+                if (problem.conflicts(layout.getX(j) - layout.getX(i), layout.getY(j) - layout.getY(i))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static BitSet toCells(PlacementProblem problem, Layout layout) {
+        BitSet cells = new BitSet(problem.width * problem.height);
+        for (int i = 0; i < layout.size(); i++) {
+            cells.set(layout.getY(i) * problem.width + layout.getX(i));
+        }
+        return cells;
+    }
+
+    /**
+     * Tries every subset of the candidate cells that has no conflicts, only skipping those that can no longer
+     * reach the best count, and keeps every layout with the best count
+     */
+    private static class BruteForce {
+        private final PlacementProblem problem;
+        private final int[] xs;
+        private final int[] ys;
+        private final int[] chosen;
+        private final HashSet<BitSet> optimal = new HashSet<BitSet>();
+        private int best;
+
+        private BruteForce(PlacementProblem problem) {
+            this.problem = problem;
+            ArrayList<int[]> candidates = new ArrayList<int[]>();
+            for (int y = 0; y < problem.height; y++) {
+                for (int x = 0; x < problem.width; x++) {
+                    if (problem.isCandidate(x, y)) {
+                        candidates.add(new int[] {x, y});
+                    }
+                }
+            }
+
+            this.xs = new int[candidates.size()];
+            this.ys = new int[candidates.size()];
+            for (int i = 0; i < candidates.size(); i++) {
+                this.xs[i] = candidates.get(i)[0];
+                this.ys[i] = candidates.get(i)[1];
+            }
+            this.chosen = new int[candidates.size()];
+        }
+
+        private void search(int index, int count) {
+            if (count + (this.xs.length - index) < this.best) {
+                return;
+            }
+            if (index == this.xs.length) {
+                if (count > this.best) {
+                    this.best = count;
+                    this.optimal.clear();
+                }
+
+                BitSet cells = new BitSet(this.problem.width * this.problem.height);
+                for (int i = 0; i < count; i++) {
+                    cells.set(this.ys[this.chosen[i]] * this.problem.width + this.xs[this.chosen[i]]);
+                }
+                this.optimal.add(cells);
+                return;
+            }
+
+            boolean free = true;
+            for (int i = 0; i < count && free; i++) {
+                int other = this.chosen[i];
+                free = !this.problem.conflicts(this.xs[index] - this.xs[other], this.ys[index] - this.ys[other]);
+            }
+            if (free) {
+                this.chosen[count] = index;
+                search(index + 1, count + 1);
+            }
+            search(index + 1, count);
+        }
+    }
+}
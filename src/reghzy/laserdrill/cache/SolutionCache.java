@@ -0,0 +1,196 @@
+package reghzy.laserdrill.cache;
+
+import reghzy.laserdrill.solver.Layout;
+import reghzy.laserdrill.solver.PlacementProblem;
+import reghzy.laserdrill.solver.SolveControl;
+import reghzy.laserdrill.solver.Solver;
+import reghzy.laserdrill.solver.SolverType;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers solved layouts by the SHA-256 digest of the problem's signature and the solver's name, so
+ * solving the same grid with the same rules again costs a lookup
+ * <p>
+ * Recently used layouts are kept in memory, up to a fixed number. If a {@link SolutionStore} is given, every
+ * solved layout is also written to it, and memory misses fall back to it before solving
+ * </p>
+ */
+public class SolutionCache implements Closeable {
+    private final int memoryCapacity;
+    private final LinkedHashMap<ByteBuffer, Layout> memory;
+    private final SolutionStore store;
+    private long memoryHits;
+    private long diskHits;
+    private long misses;
+
+    public SolutionCache(int memoryCapacity) {
+        this(memoryCapacity, null);
+    }
+
+    public SolutionCache(int memoryCapacity, SolutionStore store) {
+        this.memoryCapacity = memoryCapacity;
+        this.store = store;
+        this.memory = new LinkedHashMap<ByteBuffer, Layout>(16, 0.75F, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Layout> eldest) {
+                return size() > SolutionCache.this.memoryCapacity;
+            }
+        };
+    }
+
+    /**
+     * Creates a cache backed by the store at the given path, creating the file if needed
+     */
+    public static SolutionCache open(Path path, int memoryCapacity) throws IOException {
+        return new SolutionCache(memoryCapacity, SolutionStore.open(path));
+    }
+
+    public Layout solve(PlacementProblem problem, SolverType type) throws IOException {
+        return solve(problem, type.getName(), null, type, null);
+    }
+
+    /**
+     * Returns the cached layout for the given problem and solver name, or solves it with the given solver
+     * and caches the result. Different solvers must be given different names
+     */
+    public Layout solve(PlacementProblem problem, String solverName, Solver solver) throws IOException {
+        return solve(problem, solverName, solver, null, null);
+    }
+
+    /**
+     * Like {@link #solve(PlacementProblem, String, Solver)}, but solves under the given control. A solve the
+     * control stopped early is returned but not cached, as it may be worse than a full one
+     */
+    public Layout solve(PlacementProblem problem, String solverName, Solver solver, SolveControl control) throws IOException {
+        return solve(problem, solverName, solver, null, control);
+    }
+
+    /**
+     * Returns the cached layout, or null if neither tier has one
+     */
+    public synchronized Layout get(PlacementProblem problem, String solverName) throws IOException {
+        return get(getDigest(problem, solverName));
+    }
+
+    public synchronized void put(PlacementProblem problem, String solverName, Layout layout) throws IOException {
+        put(getDigest(problem, solverName), layout);
+    }
+
+    public synchronized long getMemoryHits() {
+        return this.memoryHits;
+    }
+
+    public synchronized long getDiskHits() {
+        return this.diskHits;
+    }
+
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    public synchronized int getMemorySize() {
+        return this.memory.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.store != null) {
+            this.store.close();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "hits " + (this.memoryHits + this.diskHits) + " (memory " + this.memoryHits + ", disk " + this.diskHits + "), misses " + this.misses;
+    }
+
+    // The solver is created from the type only on a miss
+    private Layout solve(PlacementProblem problem, String solverName, Solver solver, SolverType type, SolveControl control) throws IOException {
+        byte[] digest = getDigest(problem, solverName);
+        synchronized (this) {
+            Layout layout = get(digest);
+            if (layout != null) {
+                return layout;
+            }
+        }
+
+        // Solve outside the lock, so other problems can be looked up meanwhile
+        if (solver == null) {
+            solver = type.create();
+        }
+        Layout layout = control != null ? solver.solve(problem, control) : solver.solve(problem);
+        if (control != null && control.wasStopped()) {
+            return layout;
+        }
+        synchronized (this) {
+            put(digest, layout);
+        }
+        return layout;
+    }
+
+    private Layout get(byte[] digest) {
+        ByteBuffer key = ByteBuffer.wrap(digest);
+        Layout layout = this.memory.get(key);
+        if (layout != null) {
+            this.memoryHits++;
+            return layout;
+        }
+
+        if (this.store != null) {
+            layout = this.store.get(digest);
+            if (layout != null) {
+                this.diskHits++;
+                this.memory.put(key, layout);
+                return layout;
+            }
+        }
+
+        this.misses++;
+        return null;
+    }
+
+    private void put(byte[] digest, Layout layout) throws IOException {
+        this.memory.put(ByteBuffer.wrap(digest), layout);
+        if (this.store != null) {
+            this.store.put(digest, layout);
+        }
+    }
+
+    private static byte[] getDigest(PlacementProblem problem, String solverName) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DigestOutputStream(NullOutputStream.Instance, digest)));
+        out.writeUTF(solverName);
+        problem.writeSignature(out);
+        out.flush();
+        return digest.digest();
+    }
+
+    private static class NullOutputStream extends OutputStream {
+        private static final NullOutputStream Instance = new NullOutputStream();
+
+        @Override
+        public void write(int b) { }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) { }
+    }
+}
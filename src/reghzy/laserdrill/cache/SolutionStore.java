@@ -0,0 +1,223 @@
+package reghzy.laserdrill.cache;
+
+import reghzy.laserdrill.solver.Layout;
+import reghzy.laserdrill.utils.LongIntHashMap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An append only file of solved layouts, memory mapped and indexed by the digest of what was solved
+ * <p>
+ * The file starts with a header (magic, version, and the offset where the records end) followed by records
+ * of the form: record length, digest, width, height, drill count, encoding and the drills. Drills are stored
+ * either as a bitset over the grid or as coordinate pairs, whichever is smaller. A record is written in full
+ * before the header's end offset moves past it, so a crash mid write only loses that record
+ * </p>
+ * <p>
+ * Opening the file scans the records once to rebuild the index, which maps the first 8 bytes of each digest
+ * to the record's offset; the full digest is compared on lookup. A later record with the same digest
+ * replaces an earlier one. The file is limited to 2 GB, the most a single mapping can cover, and puts that
+ * would go past that are dropped
+ * </p>
+ */
+public class SolutionStore implements Closeable {
+    private static final int Magic = 0x4C445343; // "LDSC"
+    private static final int Version = 1;
+    private static final int HeaderSize = 16;
+    private static final int EndOffset = 8;
+    private static final int MinCapacity = 1 << 16;
+    private static final byte EncodingPairs = 0;
+    private static final byte EncodingBits = 1;
+
+    private final FileChannel channel;
+    private final LongIntHashMap index;
+    private MappedByteBuffer buffer;
+    private int end;
+
+    private SolutionStore(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.index = new LongIntHashMap(64);
+        long fileSize = channel.size();
+        map((int) Math.min(Integer.MAX_VALUE, Math.max(MinCapacity, fileSize)));
+
+        if (fileSize < HeaderSize || this.buffer.getInt(0) != Magic || this.buffer.getInt(4) != Version) {
+            // Missing, foreign or older files are started over rather than read
+            this.buffer.putInt(0, Magic);
+            this.buffer.putInt(4, Version);
+            this.end = HeaderSize;
+            this.buffer.putLong(EndOffset, this.end);
+        }
+        else {
+            int end = (int) Math.min(this.buffer.getLong(EndOffset), fileSize);
+            int offset = HeaderSize;
+            while (offset < end) {
+                int length = this.buffer.getInt(offset);
+                if (length <= 0 || offset + length > end) {
+                    break;
+                }
+
+                this.index.put(this.buffer.getLong(offset + 4), offset);
+                offset += length;
+            }
+            this.end = offset;
+        }
+    }
+
+    public static SolutionStore open(Path path) throws IOException {
+        return new SolutionStore(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+    }
+
+    /**
+     * Returns the layout stored for the given digest, or null if there is none
+     */
+    public synchronized Layout get(byte[] digest) {
+        int offset = this.index.get(getKey(digest), -1);
+        if (offset == -1 || !matches(offset + 4, digest)) {
+            return null;
+        }
+
+        int position = offset + 4 + digest.length;
+        int width = this.buffer.getInt(position);
+        int height = this.buffer.getInt(position + 4);
+        int count = this.buffer.getInt(position + 8);
+        byte encoding = this.buffer.get(position + 12);
+        position += 13;
+
+        int[] xs = new int[count];
+        int[] ys = new int[count];
+        if (encoding == EncodingPairs) {
+            for (int i = 0; i < count; i++, position += 8) {
+                xs[i] = this.buffer.getInt(position);
+                ys[i] = this.buffer.getInt(position + 4);
+            }
+        }
+        else {
+            int found = 0;
+            long cells = (long) width * height;
+            for (long word = 0; found < count && word * 64 < cells; word++) {
+                for (long bits = this.buffer.getLong(position + (int) word * 8); bits != 0; bits &= bits - 1) {
+                    long cell = word * 64 + Long.numberOfTrailingZeros(bits);
+                    xs[found] = (int) (cell % width);
+                    ys[found] = (int) (cell / width);
+                    found++;
+                }
+            }
+        }
+        return new Layout(width, height, xs, ys);
+    }
+
+    /**
+     * Appends the layout under the given digest, returning false if the file has no room left for it
+     */
+    public synchronized boolean put(byte[] digest, Layout layout) throws IOException {
+        long cells = (long) layout.width * layout.height;
+        long bitsetBytes = ((cells + 63) / 64) * 8;
+        long pairBytes = (long) layout.size() * 8;
+        boolean useBits = bitsetBytes < pairBytes;
+        long length = 4 + digest.length + 13 + (useBits ? bitsetBytes : pairBytes);
+        if (this.end + length > Integer.MAX_VALUE) {
+            return false;
+        }
+
+        int offset = this.end;
+        ensureCapacity((int) (offset + length));
+        int position = offset;
+        this.buffer.putInt(position, (int) length);
+        for (int i = 0; i < digest.length; i++) {
+            this.buffer.put(position + 4 + i, digest[i]);
+        }
+        position += 4 + digest.length;
+        this.buffer.putInt(position, layout.width);
+        this.buffer.putInt(position + 4, layout.height);
+        this.buffer.putInt(position + 8, layout.size());
+        this.buffer.put(position + 12, useBits ? EncodingBits : EncodingPairs);
+        position += 13;
+
+        if (useBits) {
+            for (int i = 0; i < bitsetBytes; i += 8) {
+                this.buffer.putLong(position + i, 0L);
+            }
+            for (int i = 0; i < layout.size(); i++) {
+                long cell = (long) layout.getY(i) * layout.width + layout.getX(i);
+                int word = position + (int) (cell >>> 6) * 8;
+                this.buffer.putLong(word, this.buffer.getLong(word) | (1L << (cell & 63)));
+            }
+        }
+        else {
+            for (int i = 0; i < layout.size(); i++, position += 8) {
+                this.buffer.putInt(position, layout.getX(i));
+                this.buffer.putInt(position + 4, layout.getY(i));
+            }
+        }
+
+        this.end = (int) (offset + length);
+        this.buffer.putLong(EndOffset, this.end);
+        this.index.put(getKey(digest), offset);
+        return true;
+    }
+
+    /**
+     * Returns the number of digests with a stored layout
+     */
+    public synchronized int size() {
+        return this.index.size();
+    }
+
+    /**
+     * Returns the number of bytes used by records, including any that were replaced
+     */
+    public synchronized long getUsedBytes() {
+        return this.end;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        this.buffer.force();
+        try {
+            // Mapping grows the file in large steps, so trim the slack off the end
+            this.channel.truncate(this.end);
+        }
+        catch (IOException e) {
+            // Some platforms refuse to truncate a mapped file, the slack is harmless
+        }
+        this.channel.close();
+    }
+
+    private void ensureCapacity(int capacity) throws IOException {
+        if (capacity > this.buffer.capacity()) {
+            map((int) Math.min(Integer.MAX_VALUE, Math.max(capacity, (long) this.buffer.capacity() * 2)));
+        }
+    }
+
+    /**
+     * Maps the first capacity bytes of the file, which grows the file if it is shorter
+     */
+    private void map(int capacity) throws IOException {
+        if (this.buffer != null) {
+            this.buffer.force();
+        }
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private boolean matches(int position, byte[] digest) {
+        for (int i = 0; i < digest.length; i++) {
+            if (this.buffer.get(position + i) != digest[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long getKey(byte[] digest) {
+        long key = 0;
+        for (int i = 0; i < 8; i++) {
+            key = (key << 8) | (digest[i] & 0xFF);
+        }
+        return key;
+    }
+}
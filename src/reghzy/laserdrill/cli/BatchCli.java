@@ -0,0 +1,172 @@
+package reghzy.laserdrill.cli;
+
+import reghzy.laserdrill.batch.BatchResult;
+import reghzy.laserdrill.batch.BatchRunner;
+import reghzy.laserdrill.batch.JobReader;
+import reghzy.laserdrill.cache.SolutionCache;
+import reghzy.laserdrill.solver.SolverType;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Solves every job of a jobs file (see JobReader for the format, or - to read standard input) and writes a
+ * CSV row or JSON line per job as each finishes, in the order they finish
+ * <p>
+ * --threads sets the number of workers (default one per core), --solver and --deadline the defaults for jobs
+ * that do not give their own, and --drills adds each layout to the JSON lines. Failed jobs are written with
+ * their error and counted in the summary on stderr
+ * </p>
+ */
+public class BatchCli {
+    private static final int CacheMemoryCapacity = 64;
+    private static final String Usage =
+            "Usage: BatchCli JOBS_FILE|- [--format csv|jsonl] [--out FILE] [--threads N] [--solver NAME] [--deadline SECONDS] [--drills] [--cache FILE]";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String jobsPath = null;
+        String outPath = null;
+        String cachePath = null;
+        boolean json = false;
+        boolean drills = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        SolverType solverType = SolverType.GREEDY;
+        long deadlineMillis = -1;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("--format")) {
+                    String format = getValue(args, ++i, arg);
+                    if (format.equals("jsonl")) {
+                        json = true;
+                    }
+                    else if (!format.equals("csv")) {
+                        throw new IllegalArgumentException("Unknown format '" + format + "'");
+                    }
+                }
+                else if (arg.equals("--out")) {
+                    outPath = getValue(args, ++i, arg);
+                }
+                else if (arg.equals("--threads")) {
+                    threads = parseCount(getValue(args, ++i, arg));
+                }
+                else if (arg.equals("--solver")) {
+                    solverType = SolverType.fromName(getValue(args, ++i, arg));
+                }
+                else if (arg.equals("--deadline")) {
+                    deadlineMillis = parseSeconds(getValue(args, ++i, arg));
+                }
+                else if (arg.equals("--drills")) {
+                    drills = true;
+                }
+                else if (arg.equals("--cache")) {
+                    cachePath = getValue(args, ++i, arg);
+                }
+                else if (jobsPath == null && (arg.equals("-") || !arg.startsWith("-"))) {
+                    jobsPath = arg;
+                }
+                else {
+                    throw new IllegalArgumentException("Unknown argument '" + arg + "'");
+                }
+            }
+            if (jobsPath == null) {
+                throw new IllegalArgumentException("Missing jobs file");
+            }
+        }
+        catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(Usage);
+            System.exit(1);
+            return;
+        }
+
+        BatchRunner runner = new BatchRunner(threads);
+        SolutionCache cache = cachePath != null ? SolutionCache.open(Paths.get(cachePath), CacheMemoryCapacity) : null;
+        runner.setCache(cache);
+
+        final AtomicInteger failed = new AtomicInteger();
+        long start = System.nanoTime();
+        int count;
+        try (BufferedReader in = jobsPath.equals("-") ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                                                      : Files.newBufferedReader(Paths.get(jobsPath), StandardCharsets.UTF_8);
+             Writer out = new BufferedWriter(outPath != null ? Files.newBufferedWriter(Paths.get(outPath), StandardCharsets.UTF_8)
+                                                             : new OutputStreamWriter(System.out, StandardCharsets.UTF_8))) {
+            if (!json) {
+                BatchResult.writeCsvHeader(out);
+            }
+
+            final boolean writeJson = json;
+            final boolean writeDrills = drills;
+            count = runner.run(new JobReader(in, solverType, deadlineMillis), result -> {
+                if (result.error != null) {
+                    failed.incrementAndGet();
+                }
+                if (writeJson) {
+                    result.writeJson(out, writeDrills);
+                }
+                else {
+                    result.writeCsv(out);
+                }
+                out.flush();
+            });
+        }
+        catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        finally {
+            if (cache != null) {
+                cache.close();
+            }
+        }
+
+        System.err.println(count + " jobs, " + failed.get() + " failed, in " + ((System.nanoTime() - start) / 1000000L) + " ms"
+                           + (cache != null ? ", cache: " + cache : ""));
+    }
+
+    private static String getValue(String[] args, int index, String name) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + name);
+        }
+        return args[index];
+    }
+
+    private static int parseCount(String value) {
+        try {
+            int count = Integer.parseInt(value);
+            if (count < 1) {
+                throw new NumberFormatException();
+            }
+            return count;
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid count '" + value + "', expected a positive number");
+        }
+    }
+
+    private static long parseSeconds(String value) {
+        try {
+            double seconds = Double.parseDouble(value);
+            if (seconds < 0 || Double.isNaN(seconds)) {
+                throw new NumberFormatException();
+            }
+            return (long) (seconds * 1000.0D);
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid time '" + value + "', expected seconds");
+        }
+    }
+}
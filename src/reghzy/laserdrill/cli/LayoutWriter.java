@@ -0,0 +1,64 @@
+package reghzy.laserdrill.cli;
+
+import reghzy.laserdrill.layers.LayeredLayout;
+import reghzy.laserdrill.solver.Layout;
+
+import java.io.IOException;
+
+/**
+ * Writes layouts as plain text or JSON
+ */
+public class LayoutWriter {
+    public static void writeText(Layout layout, Appendable out) throws IOException {
+        writeText(layout, null, out);
+    }
+
+    /**
+     * Writes the grid size and drill count, then one "x y" line per drill. If layers are given (one
+     * per drill), the layer count is written too and each line becomes "x y layer"
+     */
+    public static void writeText(Layout layout, LayeredLayout layers, Appendable out) throws IOException {
+        out.append("grid ").append(Integer.toString(layout.width)).append('x').append(Integer.toString(layout.height)).append('\n');
+        out.append("drills ").append(Integer.toString(layout.size())).append('\n');
+        if (layers != null) {
+            out.append("layers ").append(Integer.toString(layers.getLayerCount())).append('\n');
+        }
+
+        for (int i = 0; i < layout.size(); i++) {
+            out.append(Integer.toString(layout.getX(i))).append(' ').append(Integer.toString(layout.getY(i)));
+            if (layers != null) {
+                out.append(' ').append(Integer.toString(layers.getLayer(i)));
+            }
+            out.append('\n');
+        }
+    }
+
+    public static void writeJson(Layout layout, Appendable out) throws IOException {
+        writeJson(layout, null, out);
+    }
+
+    /**
+     * Writes a single JSON object, with the drills as an array of [x, y] pairs, or [x, y, layer] if layers are given
+     */
+    public static void writeJson(Layout layout, LayeredLayout layers, Appendable out) throws IOException {
+        out.append("{\"width\":").append(Integer.toString(layout.width));
+        out.append(",\"height\":").append(Integer.toString(layout.height));
+        out.append(",\"count\":").append(Integer.toString(layout.size()));
+        if (layers != null) {
+            out.append(",\"layers\":").append(Integer.toString(layers.getLayerCount()));
+        }
+
+        out.append(",\"drills\":[");
+        for (int i = 0; i < layout.size(); i++) {
+            if (i != 0) {
+                out.append(',');
+            }
+            out.append('[').append(Integer.toString(layout.getX(i))).append(',').append(Integer.toString(layout.getY(i)));
+            if (layers != null) {
+                out.append(',').append(Integer.toString(layers.getLayer(i)));
+            }
+            out.append(']');
+        }
+        out.append("]}\n");
+    }
+}
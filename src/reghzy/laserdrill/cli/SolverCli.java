@@ -0,0 +1,369 @@
+package reghzy.laserdrill.cli;
+
+import reghzy.laserdrill.LaserDrillSetup;
+import reghzy.laserdrill.TileDrawer;
+import reghzy.laserdrill.TilePainter;
+import reghzy.laserdrill.cache.SolutionCache;
+import reghzy.laserdrill.export.PngExporter;
+import reghzy.laserdrill.layers.LayerAssigner;
+import reghzy.laserdrill.layers.LayeredLayout;
+import reghzy.laserdrill.metrics.SolverMetrics;
+import reghzy.laserdrill.placement.CellMask;
+import reghzy.laserdrill.placement.Footprint;
+import reghzy.laserdrill.placement.LayoutFileWriter;
+import reghzy.laserdrill.placement.MaskLoader;
+import reghzy.laserdrill.placement.SetupShape;
+import reghzy.laserdrill.scoring.LayoutScorer;
+import reghzy.laserdrill.solver.Layout;
+import reghzy.laserdrill.solver.LayoutEnumerator;
+import reghzy.laserdrill.solver.LocalSearchSolver;
+import reghzy.laserdrill.solver.PlacementOrder;
+import reghzy.laserdrill.solver.PlacementProblem;
+import reghzy.laserdrill.solver.PortfolioSolver;
+import reghzy.laserdrill.solver.SolveControl;
+import reghzy.laserdrill.solver.SolveHandle;
+import reghzy.laserdrill.solver.Solver;
+import reghzy.laserdrill.solver.SolverType;
+import reghzy.laserdrill.solver.StripSolver;
+import reghzy.laserdrill.utils.Vector2;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Solves a grid without a display and prints the placements
+ * <p>
+ * Nothing from AWT or Swing is loaded unless --render or --png is given, and --png alone runs headless
+ * </p>
+ * <p>
+ * --mask loads blocked cells (see MaskLoader for the formats). The grid defaults to the mask's size, and a
+ * smaller grid uses the mask's top left corner
+ * </p>
+ * <p>
+ * --time sets the budget of the local search solver, which reports each improvement on stderr. Its layouts
+ * are cached per budget, so a longer search is not answered with a shorter one's result. The portfolio
+ * solver reports which placement order won
+ * </p>
+ * <p>
+ * --metrics prints the solver's counters and phase times (see SolverMetrics) on stderr once it is done, and
+ * --score the layout's score with the default terms (see LayoutScorer)
+ * </p>
+ * <p>
+ * --deadline stops any solver after the given time and writes the best layout it found by then (a stopped
+ * solve is not cached). --progress reports the solve's progress and each better layout on stderr
+ * </p>
+ * <p>
+ * --enumerate lists up to LIMIT optimal layouts, one per symmetry class (see LayoutEnumerator), instead of
+ * solving. Each is written in turn, and --png and --render show the first
+ * </p>
+ * <p>
+ * --save also writes the layout in the compact binary format (see LayoutFileWriter), with its occupancy
+ * bitmap
+ * </p>
+ * <p>
+ * --shape gives the setup's parameters (see SetupShape#parse), and --shape-file reads a diagram of it
+ * (see SetupShape#parseDiagram)
+ * </p>
+ */
+public class SolverCli {
+    private static final int CacheMemoryCapacity = 16;
+    private static final String Usage =
+            "Usage: SolverCli [--grid WxH] [--solver greedy|exact|periodic|strip|local|portfolio] [--time SECONDS] [--deadline SECONDS] [--progress] [--enumerate LIMIT] [--metrics] [--score] [--format text|json] [--layers] [--render] [--png FILE] [--save FILE] [--tile WxH] [--cache FILE] [--mask FILE] [--shape SPEC | --shape-file FILE]";
+
+    public static void main(String[] args) throws IOException {
+        Vector2 gridSize = null;
+        Vector2 tileSize = new Vector2(32, 32);
+        SolverType solverType = SolverType.GREEDY;
+        boolean json = false;
+        boolean layers = false;
+        boolean render = false;
+        String pngPath = null;
+        String savePath = null;
+        String cachePath = null;
+        String maskPath = null;
+        long timeBudgetMillis = LocalSearchSolver.DefaultTimeBudgetMillis;
+        int enumerateLimit = 0;
+        boolean printMetrics = false;
+        boolean printProgress = false;
+        boolean printScore = false;
+        long deadlineMillis = -1;
+        CellMask mask = null;
+        Footprint footprint = Footprint.LASER_DRILL;
+        PlacementProblem problem;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("--grid")) {
+                    gridSize = parseSize(getValue(args, ++i, arg));
+                }
+                else if (arg.equals("--tile")) {
+                    tileSize = parseSize(getValue(args, ++i, arg));
+                }
+                else if (arg.equals("--solver")) {
+                    solverType = SolverType.fromName(getValue(args, ++i, arg));
+                }
+                else if (arg.equals("--format")) {
+                    String format = getValue(args, ++i, arg);
+                    if (format.equals("json")) {
+                        json = true;
+                    }
+                    else if (!format.equals("text")) {
+                        throw new IllegalArgumentException("Unknown format '" + format + "'");
+                    }
+                }
+                else if (arg.equals("--layers")) {
+                    layers = true;
+                }
+                else if (arg.equals("--render")) {
+                    render = true;
+                }
+                else if (arg.equals("--png")) {
+                    pngPath = getValue(args, ++i, arg);
+                }
+                else if (arg.equals("--save")) {
+                    savePath = getValue(args, ++i, arg);
+                }
+                else if (arg.equals("--cache")) {
+                    cachePath = getValue(args, ++i, arg);
+                }
+                else if (arg.equals("--enumerate")) {
+                    enumerateLimit = parseCount(getValue(args, ++i, arg));
+                }
+                else if (arg.equals("--metrics")) {
+                    printMetrics = true;
+                }
+                else if (arg.equals("--score")) {
+                    printScore = true;
+                }
+                else if (arg.equals("--progress")) {
+                    printProgress = true;
+                }
+                else if (arg.equals("--deadline")) {
+                    deadlineMillis = parseSeconds(getValue(args, ++i, arg));
+                }
+                else if (arg.equals("--time")) {
+                    timeBudgetMillis = parseSeconds(getValue(args, ++i, arg));
+                }
+                else if (arg.equals("--mask")) {
+                    maskPath = getValue(args, ++i, arg);
+                }
+                else if (arg.equals("--shape")) {
+                    footprint = SetupShape.parse(getValue(args, ++i, arg)).compile();
+                }
+                else if (arg.equals("--shape-file")) {
+                    byte[] diagram = Files.readAllBytes(Paths.get(getValue(args, ++i, arg)));
+                    footprint = SetupShape.parseDiagram(new String(diagram, StandardCharsets.US_ASCII)).compile();
+                }
+                else {
+                    throw new IllegalArgumentException("Unknown argument '" + arg + "'");
+                }
+            }
+
+            if (maskPath != null) {
+                mask = MaskLoader.load(Paths.get(maskPath));
+                if (gridSize == null) {
+                    gridSize = new Vector2(mask.width, mask.height);
+                }
+            }
+            else if (gridSize == null) {
+                gridSize = new Vector2(16, 16);
+            }
+            problem = new PlacementProblem(gridSize.x, gridSize.y, footprint, mask);
+            if (solverType == SolverType.STRIP && enumerateLimit <= 0) {
+                StripSolver.checkSupported(problem);
+            }
+        }
+        catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(Usage);
+            System.exit(1);
+            return;
+        }
+
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+        if (enumerateLimit > 0) {
+            LayoutEnumerator.Result result = new LayoutEnumerator(enumerateLimit).enumerate(problem);
+            System.err.println("optimum " + result.optimum + ", " + result.getLayouts().size() + " classes covering "
+                               + result.getTotalLayouts() + " layouts under " + result.getSymmetryCount() + " symmetries"
+                               + (result.isComplete() ? "" : " (limit reached)"));
+            for (int i = 0; i < result.getLayouts().size(); i++) {
+                if (i > 0 && !json) {
+                    out.write('\n');
+                }
+                writeLayout(result.getLayouts().get(i), layers ? footprint : null, json, out);
+            }
+            out.flush();
+            show(result.getLayouts().get(0), footprint, mask, gridSize, tileSize, pngPath, render);
+            return;
+        }
+
+        Solver solver = solverType == SolverType.LOCAL ? new LocalSearchSolver(timeBudgetMillis) : solverType.create();
+        SolverMetrics metrics = printMetrics ? new SolverMetrics(solverType.getName()) : SolverMetrics.DISABLED;
+        SolveControl control = new SolveControl(metrics);
+        if (deadlineMillis >= 0) {
+            control.setTimeLimit(deadlineMillis);
+        }
+        if (solverType == SolverType.LOCAL || printProgress) {
+            control.addImprovementListener(improved -> System.err.println("drills " + improved.size()));
+        }
+        if (printProgress) {
+            control.addProgressListener(progress -> System.err.println("progress " + (int) (progress * 100.0D) + "%"));
+        }
+
+        // Solvers reject problems they cannot handle (e.g. a strip with too many states) with an
+        // IllegalArgumentException, which is reported like a usage error
+        Layout layout;
+        try {
+            if (cachePath != null) {
+                try (SolutionCache cache = SolutionCache.open(Paths.get(cachePath), CacheMemoryCapacity)) {
+                    // The local search is seeded from the clock, so only its budget tells its results apart
+                    String solverName = solverType == SolverType.LOCAL ? solverType.getName() + "-" + timeBudgetMillis + "ms" : solverType.getName();
+                    layout = cache.solve(problem, solverName, solver, control);
+                    System.err.println("cache: " + cache);
+                }
+            }
+            else {
+                try {
+                    layout = SolveHandle.start(solver, problem, control).get();
+                }
+                catch (InterruptedException e) {
+                    throw new IOException("Interrupted while solving", e);
+                }
+                catch (IllegalStateException e) {
+                    if (e.getCause() instanceof IllegalArgumentException) {
+                        throw (IllegalArgumentException) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+        }
+        catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        if (control.wasStopped()) {
+            System.err.println("stopped early, writing the best layout found");
+        }
+        if (printMetrics) {
+            System.err.println(metrics);
+        }
+        if (printScore) {
+            LayoutScorer scorer = LayoutScorer.createDefault(layout.width, layout.height, footprint);
+            for (int i = 0; i < layout.size(); i++) {
+                scorer.setupAdded(layout.getX(i), layout.getY(i));
+            }
+            System.err.println(scorer);
+        }
+        if (solver instanceof PortfolioSolver) {
+            PlacementOrder winner = ((PortfolioSolver) solver).getWinner(problem.width, problem.height);
+            if (winner != null) {
+                System.err.println("winner " + winner.getName());
+            }
+        }
+        writeLayout(layout, layers ? footprint : null, json, out);
+        out.flush();
+        if (savePath != null) {
+            save(layout, footprint, savePath);
+        }
+        show(layout, footprint, mask, gridSize, tileSize, pngPath, render);
+    }
+
+    /**
+     * Writes the layout, assigning layers first if a footprint is given
+     */
+    private static void writeLayout(Layout layout, Footprint layerFootprint, boolean json, Writer out) throws IOException {
+        LayeredLayout layered = layerFootprint != null ? new LayerAssigner(layerFootprint).assign(layout.toSetups(layerFootprint)) : null;
+        if (json) {
+            LayoutWriter.writeJson(layout, layered, out);
+        }
+        else {
+            LayoutWriter.writeText(layout, layered, out);
+        }
+    }
+
+    private static void save(Layout layout, Footprint footprint, String path) throws IOException {
+        int[] xs = new int[layout.size()];
+        int[] ys = new int[layout.size()];
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = layout.getX(i);
+            ys[i] = layout.getY(i);
+        }
+        LayoutFileWriter.write(Paths.get(path), layout.width, layout.height, xs, ys, footprint, true);
+    }
+
+    private static void show(Layout layout, Footprint footprint, CellMask mask, Vector2 gridSize, Vector2 tileSize, String pngPath, boolean render) throws IOException {
+        if (pngPath != null) {
+            if (!render) {
+                System.setProperty("java.awt.headless", "true");
+            }
+            PngExporter exporter = new PngExporter(new TilePainter(tileSize.x, tileSize.y, footprint), footprint);
+            exporter.setMask(mask);
+            exporter.export(layout, Paths.get(pngPath));
+        }
+
+        if (render) {
+            render(layout, footprint, mask, gridSize, tileSize);
+        }
+    }
+
+    private static void render(Layout layout, Footprint footprint, CellMask mask, Vector2 gridSize, Vector2 tileSize) {
+        TileDrawer drawer = new TileDrawer(gridSize, tileSize, footprint);
+        drawer.setMask(mask);
+        for (LaserDrillSetup setup : layout.toSetups(footprint)) {
+            drawer.addLaserDrillSetup(setup);
+        }
+        drawer.repaint();
+    }
+
+    private static String getValue(String[] args, int index, String name) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + name);
+        }
+        return args[index];
+    }
+
+    private static int parseCount(String value) {
+        try {
+            int count = Integer.parseInt(value);
+            if (count < 1) {
+                throw new NumberFormatException();
+            }
+            return count;
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid count '" + value + "', expected a positive number");
+        }
+    }
+
+    private static long parseSeconds(String value) {
+        try {
+            double seconds = Double.parseDouble(value);
+            if (seconds < 0 || Double.isNaN(seconds)) {
+                throw new NumberFormatException();
+            }
+            return (long) (seconds * 1000.0D);
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid time '" + value + "', expected seconds");
+        }
+    }
+
+    private static Vector2 parseSize(String value) {
+        int separator = value.indexOf('x');
+        try {
+            if (separator == -1) {
+                return new Vector2(Integer.parseInt(value));
+            }
+            return new Vector2(Integer.parseInt(value.substring(0, separator)), Integer.parseInt(value.substring(separator + 1)));
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid size '" + value + "', expected WxH");
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package reghzy.laserdrill.export;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes an 8 bit RGB PNG one row at a time, so the image never has to exist in memory as a whole
+ * <p>
+ * Pixels are given as packed 0xRRGGBB ints, left to right and top to bottom, in as many calls as
+ * convenient. Every row is stored with the Up filter, which turns rows that repeat the one above into
+ * zeros that deflate to almost nothing. The compressed stream is cut into IDAT chunks as it is produced
+ * </p>
+ */
+public class PngEncoder {
+    private static final byte[] Signature = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int ChunkSize = 1 << 16;
+    private static final byte FilterUp = 2;
+
+    private final OutputStream out;
+    private final int width;
+    private final int height;
+    private final Deflater deflater;
+    private final DeflaterOutputStream data;
+    private final byte[] row;
+    private final byte[] previousRow;
+    private int rowOffset;
+    private int rowsWritten;
+
+    public PngEncoder(OutputStream out, int width, int height, int compressionLevel) throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Image size must be positive (was " + width + "x" + height + ")");
+        }
+        if ((long) width * 3 + 1 > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Image is too wide (" + width + " pixels)");
+        }
+
+        this.out = out;
+        this.width = width;
+        this.height = height;
+        this.row = new byte[width * 3 + 1];
+        this.previousRow = new byte[width * 3 + 1];
+        this.row[0] = FilterUp;
+
+        out.write(Signature);
+        byte[] header = new byte[13];
+        writeInt(header, 0, width);
+        writeInt(header, 4, height);
+        header[8] = 8; // bit depth
+        header[9] = 2; // colour type: RGB
+        writeChunk(out, "IHDR", header, header.length);
+
+        this.deflater = new Deflater(compressionLevel);
+        this.data = new DeflaterOutputStream(new ChunkOutputStream(out), this.deflater, ChunkSize);
+    }
+
+    /**
+     * Appends the given pixels, continuing the current row and starting the next one whenever it fills up
+     */
+    public void writePixels(int[] pixels, int offset, int count) throws IOException {
+        for (int i = offset, end = offset + count; i < end; i++) {
+            if (this.rowsWritten == this.height) {
+                throw new IllegalStateException("More pixels were written than fit in the image");
+            }
+
+            int pixel = pixels[i];
+            int index = this.rowOffset * 3 + 1;
+            this.row[index] = (byte) (pixel >>> 16);
+            this.row[index + 1] = (byte) (pixel >>> 8);
+            this.row[index + 2] = (byte) pixel;
+            if (++this.rowOffset == this.width) {
+                flushRow();
+            }
+        }
+    }
+
+    /**
+     * Ends the image data and writes the closing chunk. The underlying stream is flushed but not closed
+     */
+    public void finish() throws IOException {
+        if (this.rowsWritten != this.height || this.rowOffset != 0) {
+            throw new IllegalStateException("Only " + this.rowsWritten + " of " + this.height + " rows were written");
+        }
+
+        this.data.finish();
+        this.data.flush();
+        this.deflater.end();
+        writeChunk(this.out, "IEND", new byte[0], 0);
+        this.out.flush();
+    }
+
+    private void flushRow() throws IOException {
+        // Up filter: each byte is stored as the difference from the byte above it, computed into the previous row's buffer
+        byte[] filtered = this.previousRow;
+        filtered[0] = FilterUp;
+        for (int i = 1; i < filtered.length; i++) {
+            filtered[i] = (byte) (this.row[i] - filtered[i]);
+        }
+        this.data.write(filtered, 0, filtered.length);
+
+        // The filtered buffer is now scratch, so restore it to hold this row for the next one to diff against
+        System.arraycopy(this.row, 0, filtered, 0, filtered.length);
+        this.rowOffset = 0;
+        this.rowsWritten++;
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    private static void writeChunk(OutputStream out, String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+
+        DataOutputStream stream = new DataOutputStream(out);
+        stream.writeInt(length);
+        stream.write(typeBytes);
+        stream.write(data, 0, length);
+        stream.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Collects compressed bytes and writes them out as IDAT chunks of up to {@link #ChunkSize} bytes
+     */
+    private static class ChunkOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final byte[] buffer = new byte[ChunkSize];
+        private int size;
+
+        private ChunkOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (this.size == this.buffer.length) {
+                flush();
+            }
+            this.buffer[this.size++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (this.size == this.buffer.length) {
+                    flush();
+                }
+
+                int count = Math.min(length, this.buffer.length - this.size);
+                System.arraycopy(bytes, offset, this.buffer, this.size, count);
+                this.size += count;
+                offset += count;
+                length -= count;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (this.size > 0) {
+                writeChunk(this.out, "IDAT", this.buffer, this.size);
+                this.size = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package reghzy.laserdrill.export;
+
+import reghzy.laserdrill.TilePainter;
+import reghzy.laserdrill.placement.CellMask;
+import reghzy.laserdrill.placement.Footprint;
+import reghzy.laserdrill.solver.Layout;
+import reghzy.laserdrill.utils.PackedVector2;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+/**
+ * Rasterises a {@link Layout} into a PNG without a display, in the same style as the TileDrawer window
+ * <p>
+ * The image is cut into horizontal bands, and each band into tiles of at most {@link #MaxTileSize} pixels a
+ * side. Tiles are rendered in parallel, a few bands ahead of the one being written, and each band is
+ * streamed to the {@link PngEncoder} as soon as all of its tiles are done. Only those few bands are ever
+ * held in memory, so the size of the image is limited by the disk rather than the heap
+ * </p>
+ * <p>
+ * Setups are stamped from an image of one setup drawn by the {@link TilePainter}, rather than drawn line by
+ * line, since a large layout has millions of them
+ * </p>
+ */
+public class PngExporter {
+    /**
+     * The largest width and height of a tile, in pixels (rounded down to whole cells)
+     */
+    private static final int MaxTileSize = 512;
+
+    private final TilePainter painter;
+    private final int radius;
+    private final BufferedImage setupSprite;
+    private int threads;
+    private int compressionLevel;
+    private CellMask mask;
+
+    public PngExporter(int tileWidth, int tileHeight) {
+        this(new TilePainter(tileWidth, tileHeight), Footprint.LASER_DRILL);
+    }
+
+    public PngExporter(TilePainter painter, Footprint footprint) {
+        this.painter = painter;
+        this.radius = footprint.radius;
+        this.setupSprite = createSetupSprite(painter, footprint.radius);
+        this.threads = Runtime.getRuntime().availableProcessors();
+        this.compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Sets the deflate level from 0 (store) to 9 (smallest), or -1 for the default. The encoder runs on the
+     * writing thread, so a lower level helps most when many threads are rendering
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Sets the blocked cells drawn under the setups, or null to draw none
+     */
+    public void setMask(CellMask mask) {
+        this.mask = mask;
+    }
+
+    public void export(Layout layout, Path path) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path), 1 << 16)) {
+            export(layout, out);
+        }
+    }
+
+    /**
+     * Writes the layout as a PNG to the given stream, which is flushed but not closed
+     */
+    public void export(Layout layout, OutputStream out) throws IOException {
+        int tileWidth = this.painter.getTileWidth();
+        int tileHeight = this.painter.getTileHeight();
+        final long imageWidth = (long) layout.width * tileWidth + 1;
+        final long imageHeight = (long) layout.height * tileHeight + 1;
+        if (imageWidth > Integer.MAX_VALUE || imageHeight > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Image would be too large (" + imageWidth + "x" + imageHeight + " pixels)");
+        }
+
+        final long[] drills = sortDrills(layout);
+        int cellsPerTileX = Math.max(1, MaxTileSize / tileWidth);
+        int cellsPerTileY = Math.max(1, MaxTileSize / tileHeight);
+        int tileCountX = (layout.width + cellsPerTileX - 1) / cellsPerTileX;
+        int bandCount = (layout.height + cellsPerTileY - 1) / cellsPerTileY;
+
+        PngEncoder encoder = new PngEncoder(out, (int) imageWidth, (int) imageHeight, this.compressionLevel);
+        ExecutorService executor = Executors.newFixedThreadPool(this.threads, runnable -> {
+            Thread thread = new Thread(runnable, "PngExporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            // Keep enough bands queued to feed every thread, while only those bands are held in memory
+            int bandsAhead = Math.max(2, (this.threads + tileCountX - 1) / tileCountX + 1);
+            ArrayDeque<Future<?>[]> pending = new ArrayDeque<Future<?>[]>(bandsAhead);
+            int nextBand = 0;
+            for (int band = 0; band < bandCount; band++) {
+                while (nextBand < bandCount && nextBand < band + bandsAhead) {
+                    pending.add(submitBand(executor, layout, drills, nextBand++, cellsPerTileX, cellsPerTileY, tileCountX));
+                }
+
+                Future<?>[] tiles = pending.poll();
+                BufferedImage[] images = new BufferedImage[tiles.length];
+                for (int i = 0; i < tiles.length; i++) {
+                    images[i] = getResult(tiles[i]);
+                }
+                writeBand(encoder, images);
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        encoder.finish();
+    }
+
+    /**
+     * Submits every tile of the band, each future giving a BufferedImage (arrays of a generic type cannot be
+     * created, hence the wildcard)
+     */
+    private Future<?>[] submitBand(ExecutorService executor, final Layout layout, final long[] drills, int band, int cellsPerTileX, int cellsPerTileY, int tileCountX) {
+        Future<?>[] tiles = new Future<?>[tileCountX];
+        final int minY = band * cellsPerTileY;
+        final int maxY = Math.min(layout.height, minY + cellsPerTileY) - 1;
+        for (int tile = 0; tile < tileCountX; tile++) {
+            final int minX = tile * cellsPerTileX;
+            final int maxX = Math.min(layout.width, minX + cellsPerTileX) - 1;
+            tiles[tile] = executor.submit(new Callable<BufferedImage>() {
+                @Override
+                public BufferedImage call() {
+                    return renderTile(layout, drills, minX, minY, maxX, maxY);
+                }
+            });
+        }
+        return tiles;
+    }
+
+    /**
+     * Renders the given cells. The tiles on the last row and column also take the outline along the far
+     * edges of the grid, which is one pixel past the last cell
+     */
+    private BufferedImage renderTile(Layout layout, long[] drills, int minX, int minY, int maxX, int maxY) {
+        int tileWidth = this.painter.getTileWidth();
+        int tileHeight = this.painter.getTileHeight();
+        int width = (maxX - minX + 1) * tileWidth + (maxX == layout.width - 1 ? 1 : 0);
+        int height = (maxY - minY + 1) * tileHeight + (maxY == layout.height - 1 ? 1 : 0);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(TilePainter.BackgroundColour);
+        graphics.fillRect(0, 0, width, height);
+        graphics.translate(-minX * tileWidth, -minY * tileHeight);
+        this.painter.drawGrid(minX, minY, maxX, maxY, graphics);
+        if (this.mask != null) {
+            this.painter.drawBlocked(this.mask, minX, minY, maxX, maxY, graphics);
+        }
+
+        // Setups centered up to the footprint's radius outside the tile can still reach into it
+        int fromX = minX - this.radius;
+        int toX = maxX + this.radius;
+        for (int y = Math.max(0, minY - this.radius), toY = maxY + this.radius; y <= toY; y++) {
+            int index = Arrays.binarySearch(drills, PackedVector2.pack(Math.max(0, fromX), y));
+            if (index < 0) {
+                index = -index - 1;
+            }
+
+            for (; index < drills.length && PackedVector2.getY(drills[index]) == y; index++) {
+                int x = PackedVector2.getX(drills[index]);
+                if (x > toX) {
+                    break;
+                }
+                graphics.drawImage(this.setupSprite, (x - this.radius) * tileWidth, (y - this.radius) * tileHeight, null);
+            }
+        }
+
+        graphics.dispose();
+        return image;
+    }
+
+    /**
+     * Draws a single setup onto a transparent image. Nothing is antialiased, so stamping this image gives
+     * exactly the same pixels as drawing the setup, for a fraction of the cost
+     */
+    private static BufferedImage createSetupSprite(TilePainter painter, int radius) {
+        int cells = radius * 2 + 1;
+        BufferedImage sprite = new BufferedImage(cells * painter.getTileWidth() + 1, cells * painter.getTileHeight() + 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = sprite.createGraphics();
+        painter.drawSetup(radius, radius, graphics);
+        graphics.dispose();
+        return sprite;
+    }
+
+    private static void writeBand(PngEncoder encoder, BufferedImage[] tiles) throws IOException {
+        int height = tiles[0].getHeight();
+        int[][] pixels = new int[tiles.length][];
+        for (int i = 0; i < tiles.length; i++) {
+            pixels[i] = ((DataBufferInt) tiles[i].getRaster().getDataBuffer()).getData();
+        }
+
+        for (int y = 0; y < height; y++) {
+            for (int i = 0; i < tiles.length; i++) {
+                int width = tiles[i].getWidth();
+                encoder.writePixels(pixels[i], y * width, width);
+            }
+        }
+    }
+
+    /**
+     * Returns the layout's drills packed with {@link PackedVector2} and sorted, which orders them by row and
+     * then by column so each tile can binary search for the drills near it
+     */
+    private static long[] sortDrills(Layout layout) {
+        long[] drills = new long[layout.size()];
+        for (int i = 0; i < drills.length; i++) {
+            drills[i] = PackedVector2.pack(layout.getX(i), layout.getY(i));
+        }
+        Arrays.sort(drills);
+        return drills;
+    }
+
+    private static BufferedImage getResult(Future<?> future) throws IOException {
+        try {
+            return (BufferedImage) future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while rendering", e);
+        }
+        catch (ExecutionException e) {
+            throw new IOException("Failed to render a tile", e.getCause());
+        }
+    }
+}
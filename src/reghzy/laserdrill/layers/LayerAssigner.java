@@ -0,0 +1,268 @@
+package reghzy.laserdrill.layers;
+
+import reghzy.laserdrill.LaserDrillSetup;
+import reghzy.laserdrill.placement.Footprint;
+import reghzy.laserdrill.utils.AABBStore;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Assigns setups to layers so that no two setups on the same layer collide, using as few layers as possible
+ * <p>
+ * Two setups collide on a layer when a solid cell of one lands on any cell of the other. Beams may cross,
+ * and no ordering between layers is needed, since canPlaceAbove already keeps every drill's column clear of
+ * solid blocks on every layer. That leaves a graph colouring problem over the collision graph, which is
+ * coloured with DSatur and then tidied by trying to empty the highest layer
+ * </p>
+ * <p>
+ * Colliding setups always have overlapping bounding boxes, so the graph's edges are found by a sweep and
+ * prune over the boxes (see {@link AABBStore}) and then checked against the footprint
+ * </p>
+ */
+public class LayerAssigner {
+    private final int conflictRadius;
+    private final boolean[] conflicts;
+
+    public LayerAssigner() {
+        this(Footprint.LASER_DRILL);
+    }
+
+    public LayerAssigner(Footprint footprint) {
+        this.conflictRadius = footprint.radius * 2;
+        int size = this.conflictRadius * 2 + 1;
+        this.conflicts = new boolean[size * size];
+
+        // B - A = s - c for a solid cell s of A and any cell c of B, and the same the other way around
+        for (int i = 0; i < footprint.solidX.length; i++) {
+            for (int j = 0; j < footprint.solidX.length; j++) {
+                addConflict(footprint.solidX[i] - footprint.solidX[j], footprint.solidY[i] - footprint.solidY[j]);
+            }
+            for (int j = 0; j < footprint.beamX.length; j++) {
+                addConflict(footprint.solidX[i] - footprint.beamX[j], footprint.solidY[i] - footprint.beamY[j]);
+                addConflict(footprint.beamX[j] - footprint.solidX[i], footprint.beamY[j] - footprint.solidY[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns true if two setups the given distance apart cannot share a layer
+     */
+    public boolean conflicts(int dx, int dy) {
+        if (Math.abs(dx) > this.conflictRadius || Math.abs(dy) > this.conflictRadius) {
+            return false;
+        }
+        return this.conflicts[getConflictIndex(dx, dy)];
+    }
+
+    public LayeredLayout assign(List<LaserDrillSetup> setups) {
+        int count = setups.size();
+        int[][] neighbours = buildNeighbours(setups);
+        int[] layers = colour(neighbours);
+        int layerCount = 0;
+        for (int layer : layers) {
+            layerCount = Math.max(layerCount, layer + 1);
+        }
+
+        while (layerCount > 1 && tryEmptyLayer(neighbours, layers, layerCount - 1)) {
+            layerCount--;
+        }
+
+        return new LayeredLayout(setups, layers, layerCount, count == 0 ? 0 : findCliqueSize(neighbours));
+    }
+
+    /**
+     * Returns the number of pairs of setups on the same layer that collide, which is 0 for a valid layout
+     * (any this assigner made, for example)
+     */
+    public int countCollisions(final LayeredLayout layout) {
+        final int[] collisions = new int[1];
+        buildBoxes(layout.getSetups()).forEachOverlappingPair((a, b) -> {
+            if (layout.getLayer(a) == layout.getLayer(b) && conflicts(layout.getSetup(a), layout.getSetup(b))) {
+                collisions[0]++;
+            }
+        });
+        return collisions[0];
+    }
+
+    private int[][] buildNeighbours(final List<LaserDrillSetup> setups) {
+        final int count = setups.size();
+        final int[] degrees = new int[count];
+        final long[][] edges = {new long[Math.max(16, count * 4)]};
+        final int[] edgeCount = new int[1];
+        buildBoxes(setups).forEachOverlappingPair((a, b) -> {
+            if (conflicts(setups.get(a), setups.get(b))) {
+                if (edgeCount[0] == edges[0].length) {
+                    edges[0] = Arrays.copyOf(edges[0], edgeCount[0] * 2);
+                }
+                edges[0][edgeCount[0]++] = ((long) a << 32) | b;
+                degrees[a]++;
+                degrees[b]++;
+            }
+        });
+
+        int[][] neighbours = new int[count][];
+        for (int i = 0; i < count; i++) {
+            neighbours[i] = new int[degrees[i]];
+            degrees[i] = 0;
+        }
+        for (int i = 0; i < edgeCount[0]; i++) {
+            int a = (int) (edges[0][i] >>> 32);
+            int b = (int) edges[0][i];
+            neighbours[a][degrees[a]++] = b;
+            neighbours[b][degrees[b]++] = a;
+        }
+        for (int[] list : neighbours) {
+            Arrays.sort(list);
+        }
+        return neighbours;
+    }
+
+    private boolean conflicts(LaserDrillSetup a, LaserDrillSetup b) {
+        return conflicts(b.center.x - a.center.x, b.center.y - a.center.y);
+    }
+
+    private static AABBStore buildBoxes(List<LaserDrillSetup> setups) {
+        AABBStore boxes = new AABBStore(setups.size());
+        for (int i = 0; i < setups.size(); i++) {
+            boxes.add(setups.get(i).boundingBox);
+        }
+        return boxes;
+    }
+
+    /**
+     * DSatur: repeatedly colour the uncoloured vertex with the most distinct neighbour colours (ties broken
+     * by degree) with the lowest colour none of its neighbours use
+     */
+    private static int[] colour(int[][] neighbours) {
+        int count = neighbours.length;
+        int[] colours = new int[count];
+        Arrays.fill(colours, -1);
+        int[] saturation = new int[count];
+        long[][] neighbourColours = new long[count][1];
+
+        // Entries are (saturation, degree, vertex) packed into a long, stale ones are skipped when polled
+        PriorityQueue<Long> queue = new PriorityQueue<Long>(Math.max(1, count), Collections.<Long>reverseOrder());
+        for (int v = 0; v < count; v++) {
+            queue.add(getQueueKey(0, neighbours[v].length, v));
+        }
+
+        while (!queue.isEmpty()) {
+            long key = queue.poll();
+            int v = (int) (key & 0xFFFFFFFFL);
+            if (colours[v] != -1 || (int) (key >>> 48) != saturation[v]) {
+                continue;
+            }
+
+            int colour = 0;
+            while (hasBit(neighbourColours[v], colour)) {
+                colour++;
+            }
+            colours[v] = colour;
+
+            for (int u : neighbours[v]) {
+                if (colours[u] == -1 && !hasBit(neighbourColours[u], colour)) {
+                    neighbourColours[u] = setBit(neighbourColours[u], colour);
+                    saturation[u]++;
+                    queue.add(getQueueKey(saturation[u], neighbours[u].length, u));
+                }
+            }
+        }
+        return colours;
+    }
+
+    /**
+     * Tries to move every setup on the given layer to a lower layer none of its neighbours use
+     */
+    private static boolean tryEmptyLayer(int[][] neighbours, int[] layers, int layer) {
+        int[] moved = layers.clone();
+        boolean[] used = new boolean[layer];
+        for (int v = 0; v < layers.length; v++) {
+            if (moved[v] != layer) {
+                continue;
+            }
+
+            Arrays.fill(used, false);
+            for (int u : neighbours[v]) {
+                if (moved[u] < layer) {
+                    used[moved[u]] = true;
+                }
+            }
+
+            int target = 0;
+            while (target < layer && used[target]) {
+                target++;
+            }
+            if (target == layer) {
+                return false;
+            }
+            moved[v] = target;
+        }
+
+        System.arraycopy(moved, 0, layers, 0, layers.length);
+        return true;
+    }
+
+    /**
+     * Greedily grows a clique from every vertex, returning the largest one found
+     */
+    private static int findCliqueSize(int[][] neighbours) {
+        int best = 1;
+        int[] clique = new int[neighbours.length];
+        for (int v = 0; v < neighbours.length; v++) {
+            if (neighbours[v].length < best) {
+                continue;
+            }
+
+            int size = 0;
+            clique[size++] = v;
+            for (int u : neighbours[v]) {
+                boolean adjacentToAll = true;
+                for (int i = 1; i < size && adjacentToAll; i++) {
+                    adjacentToAll = contains(neighbours[u], clique[i]);
+                }
+                if (adjacentToAll) {
+                    clique[size++] = u;
+                }
+            }
+            best = Math.max(best, size);
+        }
+        return best;
+    }
+
+    private void addConflict(int dx, int dy) {
+        this.conflicts[getConflictIndex(dx, dy)] = true;
+    }
+
+    private int getConflictIndex(int dx, int dy) {
+        int size = this.conflictRadius * 2 + 1;
+        return (dy + this.conflictRadius) * size + (dx + this.conflictRadius);
+    }
+
+    private static long getQueueKey(int saturation, int degree, int vertex) {
+        return ((long) saturation << 48) | ((long) Math.min(degree, 0xFFFF) << 32) | (vertex & 0xFFFFFFFFL);
+    }
+
+    private static boolean contains(int[] array, int value) {
+        for (int element : array) {
+            if (element == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasBit(long[] bits, int index) {
+        return (index >>> 6) < bits.length && ((bits[index >>> 6] >>> (index & 63)) & 1L) != 0;
+    }
+
+    private static long[] setBit(long[] bits, int index) {
+        if ((index >>> 6) >= bits.length) {
+            bits = Arrays.copyOf(bits, (index >>> 6) + 1);
+        }
+        bits[index >>> 6] |= 1L << (index & 63);
+        return bits;
+    }
+}
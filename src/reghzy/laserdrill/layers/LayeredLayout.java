@@ -0,0 +1,61 @@
+package reghzy.laserdrill.layers;
+
+import reghzy.laserdrill.LaserDrillSetup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A set of setups, each assigned to a layer above bedrock (layer 0 being the lowest)
+ */
+public class LayeredLayout {
+    private final List<LaserDrillSetup> setups;
+    private final int[] layers;
+    private final int layerCount;
+    private final int lowerBound;
+
+    public LayeredLayout(List<LaserDrillSetup> setups, int[] layers, int layerCount, int lowerBound) {
+        this.setups = setups;
+        this.layers = layers;
+        this.layerCount = layerCount;
+        this.lowerBound = lowerBound;
+    }
+
+    public int size() {
+        return this.setups.size();
+    }
+
+    public List<LaserDrillSetup> getSetups() {
+        return this.setups;
+    }
+
+    public LaserDrillSetup getSetup(int index) {
+        return this.setups.get(index);
+    }
+
+    public int getLayer(int index) {
+        return this.layers[index];
+    }
+
+    public int getLayerCount() {
+        return this.layerCount;
+    }
+
+    /**
+     * Returns the size of the largest group of mutually conflicting setups that was found. No assignment
+     * can use fewer layers than this, so it shows how close {@link #getLayerCount()} is to the optimum
+     */
+    public int getLowerBound() {
+        return this.lowerBound;
+    }
+
+    public ArrayList<LaserDrillSetup> getSetupsOnLayer(int layer) {
+        ArrayList<LaserDrillSetup> list = new ArrayList<LaserDrillSetup>();
+        for (int i = 0; i < this.layers.length; i++) {
+            if (this.layers[i] == layer) {
+                list.add(this.setups.get(i));
+            }
+        }
+        return list;
+    }
+}
@@ -0,0 +1,198 @@
+package reghzy.laserdrill.metrics;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The Java Flight Recorder events committed by {@link SolverMetrics}
+ * <p>
+ * The code targets Java 8, which has no jdk.jfr API to compile against, so the event types are defined at
+ * runtime through jdk.jfr.EventFactory, looked up reflectively. On a JVM without it every method does
+ * nothing, as it does until a recording has been started. Two events are defined, both under the "Laser
+ * Drill" category:
+ * </p>
+ * <ul>
+ *     <li>reghzy.laserdrill.SolverPhase: one per phase, lasting as long as it did, with the counter totals
+ *     when it ended</li>
+ *     <li>reghzy.laserdrill.SolverImprovement: an instant event every time the best layout grows</li>
+ * </ul>
+ * <p>
+ * To record, run with e.g. -XX:StartFlightRecording=filename=solve.jfr and open the file in JDK Mission
+ * Control
+ * </p>
+ */
+final class FlightRecorderEvents {
+    /**
+     * jdk.jfr.FlightRecorder#isInitialized, or null if there is no flight recorder
+     */
+    private static final Method IsInitialized = findIsInitialized();
+
+    // Set once, the phase type last, so a non null phase type means both are ready
+    private static volatile EventType phaseType;
+    private static volatile EventType improvementType;
+    private static boolean failed;
+
+    private FlightRecorderEvents() {
+    }
+
+    /**
+     * Creates and begins a phase event, returning null if no recording has been started
+     */
+    static Object beginPhase() {
+        if (!isActive()) {
+            return null;
+        }
+
+        try {
+            Object event = phaseType.newEvent.invoke(phaseType.factory);
+            phaseType.begin.invoke(event);
+            return event;
+        }
+        catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    static void commitPhase(Object event, String source, String phase, long candidates, long checks, long prunes, long nodes) {
+        if (event != null) {
+            phaseType.commit(event, source, phase, candidates, checks, prunes, nodes);
+        }
+    }
+
+    static void commitImprovement(String source, int drills, long elapsedNanos) {
+        if (!isActive()) {
+            return;
+        }
+
+        try {
+            Object event = improvementType.newEvent.invoke(improvementType.factory);
+            improvementType.commit(event, source, drills, elapsedNanos);
+        }
+        catch (ReflectiveOperationException e) {
+            // Events are best effort
+        }
+    }
+
+    /**
+     * Returns true once a recording has been started and the event types are defined. Defining them starts
+     * up the whole recorder, which takes a good part of a second, so nothing is done until then
+     */
+    private static boolean isActive() {
+        if (IsInitialized == null) {
+            return false;
+        }
+
+        try {
+            if (!(Boolean) IsInitialized.invoke(null)) {
+                return false;
+            }
+        }
+        catch (ReflectiveOperationException e) {
+            return false;
+        }
+        return phaseType != null || defineTypes();
+    }
+
+    private static synchronized boolean defineTypes() {
+        if (phaseType == null && !failed) {
+            try {
+                improvementType = new EventType("reghzy.laserdrill.SolverImprovement", "Solver Improvement", new String[][] {
+                        {"source", "Source"}, {"drills", "Drills"}, {"elapsed", "Elapsed"}
+                }, new Class<?>[] {String.class, int.class, long.class}, 2);
+                phaseType = new EventType("reghzy.laserdrill.SolverPhase", "Solver Phase", new String[][] {
+                        {"source", "Source"}, {"phase", "Phase"}, {"candidates", "Candidates"}, {"checks", "Checks"},
+                        {"prunes", "Prunes"}, {"nodes", "Nodes"}
+                }, new Class<?>[] {String.class, String.class, long.class, long.class, long.class, long.class}, -1);
+            }
+            catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+                failed = true;
+            }
+        }
+        return phaseType != null;
+    }
+
+    private static Method findIsInitialized() {
+        try {
+            return Class.forName("jdk.jfr.FlightRecorder").getMethod("isInitialized");
+        }
+        catch (ReflectiveOperationException | LinkageError e) {
+            // No flight recorder on this JVM
+            return null;
+        }
+    }
+
+    /**
+     * An event type created through EventFactory, with the reflective handles needed to fill in its events
+     */
+    private static class EventType {
+        private final Object factory;
+        private final Method newEvent;
+        private final Method begin;
+        private final Method end;
+        private final Method set;
+        private final Method shouldCommit;
+        private final Method commit;
+
+        /**
+         * @param fields   The name and label of each field
+         * @param types    The type of each field
+         * @param timespan The index of the field holding a duration in nanoseconds, or -1 if none does
+         */
+        private EventType(String name, String label, String[][] fields, Class<?>[] types, int timespan) throws ReflectiveOperationException {
+            Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+            Class<?> valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor");
+            Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory");
+            Class<?> event = Class.forName("jdk.jfr.Event");
+            Constructor<?> newAnnotation = annotationElement.getConstructor(Class.class, Object.class);
+            Constructor<?> newField = valueDescriptor.getConstructor(Class.class, String.class, List.class);
+
+            List<Object> annotations = new ArrayList<Object>(3);
+            annotations.add(newAnnotation.newInstance(getAnnotation("jdk.jfr.Name"), name));
+            annotations.add(newAnnotation.newInstance(getAnnotation("jdk.jfr.Label"), label));
+            annotations.add(newAnnotation.newInstance(getAnnotation("jdk.jfr.Category"), new String[] {"Laser Drill"}));
+
+            List<Object> descriptors = new ArrayList<Object>(fields.length);
+            for (int i = 0; i < fields.length; i++) {
+                List<Object> fieldAnnotations = new ArrayList<Object>(2);
+                fieldAnnotations.add(newAnnotation.newInstance(getAnnotation("jdk.jfr.Label"), fields[i][1]));
+                if (i == timespan) {
+                    fieldAnnotations.add(newAnnotation.newInstance(getAnnotation("jdk.jfr.Timespan"), "NANOSECONDS"));
+                }
+                descriptors.add(newField.newInstance(types[i], fields[i][0], fieldAnnotations));
+            }
+
+            this.factory = eventFactory.getMethod("create", List.class, List.class).invoke(null, Collections.unmodifiableList(annotations), Collections.unmodifiableList(descriptors));
+            this.newEvent = eventFactory.getMethod("newEvent");
+            this.set = event.getMethod("set", int.class, Object.class);
+            this.begin = event.getMethod("begin");
+            this.end = event.getMethod("end");
+            this.shouldCommit = event.getMethod("shouldCommit");
+            this.commit = event.getMethod("commit");
+        }
+
+        private void commit(Object event, Object... values) {
+            try {
+                this.end.invoke(event);
+                if (!(Boolean) this.shouldCommit.invoke(event)) {
+                    return;
+                }
+                for (int i = 0; i < values.length; i++) {
+                    this.set.invoke(event, i, values[i]);
+                }
+                this.commit.invoke(event);
+            }
+            catch (ReflectiveOperationException e) {
+                // Events are best effort
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Class<? extends Annotation> getAnnotation(String name) throws ClassNotFoundException {
+            return (Class<? extends Annotation>) Class.forName(name);
+        }
+    }
+}
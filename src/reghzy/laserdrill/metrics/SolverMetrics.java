@@ -0,0 +1,307 @@
+package reghzy.laserdrill.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and timings collected while solving, to see where the time of a solve goes
+ * <p>
+ * Solvers count candidates (cells or states considered), checks (collision or conflict tests), prunes
+ * (branches or moves thrown away) and nodes (search nodes or moves expanded), time their phases, and record
+ * the drill count every time their best layout grows. Solvers that hold large tables also record their peak
+ * sizes (e.g. states and bytes). What each counter means exactly is up to the solver, see the "Metrics"
+ * paragraph of each solver's class doc. A solver gets its metrics from the control given to
+ * Solver#solve(PlacementProblem, SolveControl). Counters are safe to update from several threads; hot loops
+ * count into locals and add them once per phase or batch rather than per operation
+ * </p>
+ * <p>
+ * Every phase and improvement is also committed as a Java Flight Recorder event when a recording is running
+ * (see {@link FlightRecorderEvents}), so a long solve can be profiled from outside the process.
+ * {@link #DISABLED} ignores everything, and is what the plain solve(problem) methods use
+ * </p>
+ */
+public class SolverMetrics {
+    /**
+     * Metrics that record nothing, for when nobody is looking
+     */
+    public static final SolverMetrics DISABLED = new SolverMetrics("disabled", false);
+
+    private final String source;
+    private final boolean enabled;
+    private final long startNanos;
+    private final LongAdder candidates = new LongAdder();
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder prunes = new LongAdder();
+    private final LongAdder nodes = new LongAdder();
+    // Phase name to {total nanos, times run}, in the order phases first ran
+    private final LinkedHashMap<String, long[]> phases = new LinkedHashMap<String, long[]>();
+    private final LinkedHashMap<String, Long> peaks = new LinkedHashMap<String, Long>(); // guarded by phases
+    private long[] bestNanos = new long[16];
+    private int[] bestDrills = new int[16];
+    private int bestSize;
+
+    /**
+     * @param source What is being measured, e.g. the solver's name. Shown in reports and events
+     */
+    public SolverMetrics(String source) {
+        this(source, true);
+    }
+
+    private SolverMetrics(String source, boolean enabled) {
+        this.source = source;
+        this.enabled = enabled;
+        this.startNanos = System.nanoTime();
+    }
+
+    public String getSource() {
+        return this.source;
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    public void addCandidates(long count) {
+        if (this.enabled) {
+            this.candidates.add(count);
+        }
+    }
+
+    public void addChecks(long count) {
+        if (this.enabled) {
+            this.checks.add(count);
+        }
+    }
+
+    public void addPrunes(long count) {
+        if (this.enabled) {
+            this.prunes.add(count);
+        }
+    }
+
+    public void addNodes(long count) {
+        if (this.enabled) {
+            this.nodes.add(count);
+        }
+    }
+
+    /**
+     * Records the drill count of a new best layout, ignored unless it is more than the last one recorded
+     */
+    public void recordBest(int drills) {
+        if (!this.enabled) {
+            return;
+        }
+
+        long elapsed = System.nanoTime() - this.startNanos;
+        synchronized (this.phases) {
+            if (this.bestSize > 0 && drills <= this.bestDrills[this.bestSize - 1]) {
+                return;
+            }
+            if (this.bestSize == this.bestDrills.length) {
+                this.bestNanos = Arrays.copyOf(this.bestNanos, this.bestSize * 2);
+                this.bestDrills = Arrays.copyOf(this.bestDrills, this.bestSize * 2);
+            }
+            this.bestNanos[this.bestSize] = elapsed;
+            this.bestDrills[this.bestSize] = drills;
+            this.bestSize++;
+        }
+        FlightRecorderEvents.commitImprovement(this.source, drills, elapsed);
+    }
+
+    /**
+     * Records a value, such as a table size, keeping the largest recorded under each name
+     */
+    public void recordPeak(String name, long value) {
+        if (!this.enabled) {
+            return;
+        }
+
+        synchronized (this.phases) {
+            Long peak = this.peaks.get(name);
+            if (peak == null || value > peak) {
+                this.peaks.put(name, value);
+            }
+        }
+    }
+
+    /**
+     * Returns the largest value recorded under the given name, or 0 if none was
+     */
+    public long getPeak(String name) {
+        synchronized (this.phases) {
+            Long peak = this.peaks.get(name);
+            return peak != null ? peak : 0L;
+        }
+    }
+
+    /**
+     * Returns the names of the peaks recorded so far, in the order they were first recorded
+     */
+    public List<String> getPeakNames() {
+        synchronized (this.phases) {
+            return new ArrayList<String>(this.peaks.keySet());
+        }
+    }
+
+    /**
+     * Starts timing a phase, which ends when the returned phase is closed. A phase that runs more than once,
+     * or on several threads at once, adds up its time
+     */
+    public Phase beginPhase(String name) {
+        return this.enabled ? new Phase(this, name) : Phase.Disabled;
+    }
+
+    public long getCandidates() {
+        return this.candidates.sum();
+    }
+
+    public long getChecks() {
+        return this.checks.sum();
+    }
+
+    public long getPrunes() {
+        return this.prunes.sum();
+    }
+
+    public long getNodes() {
+        return this.nodes.sum();
+    }
+
+    /**
+     * Returns the time since these metrics were created
+     */
+    public long getElapsedNanos() {
+        return System.nanoTime() - this.startNanos;
+    }
+
+    /**
+     * Returns the names of the phases run so far, in the order they first ran
+     */
+    public List<String> getPhaseNames() {
+        synchronized (this.phases) {
+            return new ArrayList<String>(this.phases.keySet());
+        }
+    }
+
+    /**
+     * Returns the total time spent in the given phase, or 0 if it never ran
+     */
+    public long getPhaseNanos(String name) {
+        synchronized (this.phases) {
+            long[] totals = this.phases.get(name);
+            return totals != null ? totals[0] : 0L;
+        }
+    }
+
+    public int getPhaseCount(String name) {
+        synchronized (this.phases) {
+            long[] totals = this.phases.get(name);
+            return totals != null ? (int) totals[1] : 0;
+        }
+    }
+
+    /**
+     * Returns the number of best layouts recorded, each larger than the last
+     */
+    public int getBestCount() {
+        synchronized (this.phases) {
+            return this.bestSize;
+        }
+    }
+
+    public int getBestDrills(int index) {
+        synchronized (this.phases) {
+            checkBestIndex(index);
+            return this.bestDrills[index];
+        }
+    }
+
+    /**
+     * Returns when the given best layout was recorded, as the time since these metrics were created
+     */
+    public long getBestNanos(int index) {
+        synchronized (this.phases) {
+            checkBestIndex(index);
+            return this.bestNanos[index];
+        }
+    }
+
+    private void checkBestIndex(int index) {
+        if (index < 0 || index >= this.bestSize) {
+            throw new IndexOutOfBoundsException("Best index " + index + " out of range (" + this.bestSize + " recorded)");
+        }
+    }
+
+    private void endPhase(String name, long startNanos, Object event) {
+        long elapsed = System.nanoTime() - startNanos;
+        synchronized (this.phases) {
+            long[] totals = this.phases.get(name);
+            if (totals == null) {
+                this.phases.put(name, totals = new long[2]);
+            }
+            totals[0] += elapsed;
+            totals[1]++;
+        }
+        FlightRecorderEvents.commitPhase(event, this.source, name, getCandidates(), getChecks(), getPrunes(), getNodes());
+    }
+
+    /**
+     * Returns a report of every counter, phase, peak and the last best layout, one item per line
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(256);
+        builder.append(String.format(Locale.ROOT, "%s: %.3f ms, %d candidates, %d checks, %d prunes, %d nodes",
+                                     this.source, getElapsedNanos() / 1e6, getCandidates(), getChecks(), getPrunes(), getNodes()));
+        synchronized (this.phases) {
+            for (Map.Entry<String, long[]> entry : this.phases.entrySet()) {
+                builder.append(String.format(Locale.ROOT, "%n  phase %-12s %12.3f ms  (%dx)", entry.getKey(), entry.getValue()[0] / 1e6, entry.getValue()[1]));
+            }
+            for (Map.Entry<String, Long> entry : this.peaks.entrySet()) {
+                builder.append(String.format(Locale.ROOT, "%n  peak  %-12s %12d", entry.getKey(), entry.getValue()));
+            }
+            if (this.bestSize > 0) {
+                builder.append(String.format(Locale.ROOT, "%n  best %d drills after %.3f ms (%d improvements)",
+                                             this.bestDrills[this.bestSize - 1], this.bestNanos[this.bestSize - 1] / 1e6, this.bestSize));
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * A running phase. Solvers close it in a finally block, so a phase that throws is still timed
+     */
+    public static class Phase implements AutoCloseable {
+        private static final Phase Disabled = new Phase(null, null);
+
+        private final SolverMetrics metrics;
+        private final String name;
+        private final long startNanos;
+        private final Object event;
+        private boolean closed;
+
+        private Phase(SolverMetrics metrics, String name) {
+            this.metrics = metrics;
+            this.name = name;
+            this.startNanos = System.nanoTime();
+            this.event = metrics != null ? FlightRecorderEvents.beginPhase() : null;
+        }
+
+        /**
+         * Ends the phase. Only the first call counts
+         */
+        @Override
+        public void close() {
+            if (this.metrics != null && !this.closed) {
+                this.closed = true;
+                this.metrics.endPhase(this.name, this.startNanos, this.event);
+            }
+        }
+    }
+}
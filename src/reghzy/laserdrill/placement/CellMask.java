@@ -0,0 +1,168 @@
+package reghzy.laserdrill.placement;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A bitmap of blocked cells: walls, machines already built, or ground claimed by someone else
+ * <p>
+ * No cell of a setup's footprint, solid or beam, may be on a blocked cell. Rows are packed into longs the
+ * same way as in the {@link OccupancyGrid}, so checking a whole footprint against the mask is a handful of
+ * word operations and allocates nothing. Cells outside the mask read as not blocked
+ * </p>
+ */
+public class CellMask {
+    public final int width;
+    public final int height;
+    private final int wordsPerRow;
+    private final long[] bits;
+
+    public CellMask(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Mask size must be positive (" + width + "x" + height + ")");
+        }
+        if ((long) ((width + 63) >> 6) * height > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Mask is too large (" + width + "x" + height + ")");
+        }
+
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (width + 63) >> 6;
+        this.bits = new long[this.wordsPerRow * height];
+    }
+
+    /**
+     * Returns the number of longs used by each row
+     */
+    public int getWordsPerRow() {
+        return this.wordsPerRow;
+    }
+
+    /**
+     * Returns the backing words, row by row with the lowest bit of each word being its leftmost cell.
+     * Used for bulk loading and saving, the bits past the width of each row must stay 0
+     */
+    long[] getWords() {
+        return this.bits;
+    }
+
+    public boolean isBlocked(int x, int y) {
+        if (x < 0 || y < 0 || x >= this.width || y >= this.height) {
+            return false;
+        }
+        return (this.bits[y * this.wordsPerRow + (x >> 6)] & (1L << (x & 63))) != 0;
+    }
+
+    public void setBlocked(int x, int y) {
+        checkBounds(x, y);
+        this.bits[y * this.wordsPerRow + (x >> 6)] |= 1L << (x & 63);
+    }
+
+    public void clearBlocked(int x, int y) {
+        checkBounds(x, y);
+        this.bits[y * this.wordsPerRow + (x >> 6)] &= ~(1L << (x & 63));
+    }
+
+    /**
+     * Blocks every cell of the given rectangle (inclusive), clipped to the mask
+     */
+    public void setBlocked(int minX, int minY, int maxX, int maxY) {
+        minX = Math.max(0, minX);
+        minY = Math.max(0, minY);
+        maxX = Math.min(this.width - 1, maxX);
+        maxY = Math.min(this.height - 1, maxY);
+        for (int y = minY; y <= maxY; y++) {
+            int base = y * this.wordsPerRow;
+            for (int word = minX >> 6, lastWord = maxX >> 6; word <= lastWord; word++) {
+                long mask = -1L;
+                if (word == minX >> 6) {
+                    mask &= -1L << (minX & 63);
+                }
+                if (word == lastWord) {
+                    mask &= -1L >>> (63 - (maxX & 63));
+                }
+                this.bits[base + word] |= mask;
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(this.bits, 0L);
+    }
+
+    public long getBlockedCount() {
+        long count = 0;
+        for (long word : this.bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Calls the visitor with every blocked cell, row by row
+     */
+    public void forEachBlocked(CellVisitor visitor) {
+        for (int y = 0; y < this.height; y++) {
+            int base = y * this.wordsPerRow;
+            for (int word = 0; word < this.wordsPerRow; word++) {
+                for (long bits = this.bits[base + word]; bits != 0; bits &= bits - 1) {
+                    visitor.visit((word << 6) + Long.numberOfTrailingZeros(bits), y);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if any cell of the given footprint rows, centered on x and y, is blocked
+     */
+    public boolean intersects(long[] rowMasks, int radius, int x, int y) {
+        for (int row = 0; row < rowMasks.length; row++) {
+            long mask = rowMasks[row];
+            if (mask != 0 && (OccupancyGrid.getRowBits(this.bits, this.wordsPerRow, this.height, y - radius + row, x - radius) & mask) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if any cell of the given rectangle (inclusive) is blocked
+     */
+    public boolean intersects(int minX, int minY, int maxX, int maxY) {
+        for (int y = Math.max(0, minY), toY = Math.min(this.height - 1, maxY); y <= toY; y++) {
+            for (int x = Math.max(0, minX), toX = Math.min(this.width - 1, maxX); x <= toX; x += 64) {
+                long bits = OccupancyGrid.getRowBits(this.bits, this.wordsPerRow, this.height, y, x);
+                int count = toX - x + 1;
+                if (count < 64) {
+                    bits &= (1L << count) - 1;
+                }
+                if (bits != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the size and every bit of this mask, for PlacementProblem#writeSignature
+     */
+    public void writeSignature(DataOutput out) throws IOException {
+        out.writeInt(this.width);
+        out.writeInt(this.height);
+        for (long word : this.bits) {
+            out.writeLong(word);
+        }
+    }
+
+    private void checkBounds(int x, int y) {
+        if (x < 0 || y < 0 || x >= this.width || y >= this.height) {
+            throw new IndexOutOfBoundsException("Cell " + x + "," + y + " is outside the mask (" + this.width + "x" + this.height + ")");
+        }
+    }
+
+    public interface CellVisitor {
+        void visit(int x, int y);
+    }
+}
@@ -0,0 +1,8 @@
+package reghzy.laserdrill.placement;
+
+/**
+ * Receives drill locations one at a time, for layouts too large to hold as arrays
+ */
+public interface DrillVisitor {
+    void visit(int x, int y);
+}
@@ -0,0 +1,109 @@
+package reghzy.laserdrill.placement;
+
+import java.util.Arrays;
+
+/**
+ * The cells a setup occupies relative to its drill, split into solid cells (the drill and pre-chargers)
+ * and beam cells (the lasers between them)
+ * <p>
+ * Each role is also precomputed into row masks, one long per row from -radius to +radius, where bit
+ * (dx + radius) is set if the cell at (dx, dy) has that role. These are tested against an
+ * {@link OccupancyGrid} with a single AND per row
+ * </p>
+ * <p>
+ * Footprints for other setups are usually compiled from a {@link SetupShape} rather than built directly
+ * </p>
+ */
+public class Footprint {
+    /**
+     * The default setup: four pre-chargers at distance 2 and lasers at distance 1 (see LaserDrillSetup)
+     */
+    public static final Footprint LASER_DRILL = new Footprint(
+            new int[] {0, -2, 0, 2, 0},
+            new int[] {0, 0, -2, 0, 2},
+            new int[] {-1, 0, 1, 0},
+            new int[] {0, -1, 0, 1});
+
+    public final int radius;
+    public final int[] solidX;
+    public final int[] solidY;
+    public final int[] beamX;
+    public final int[] beamY;
+    public final long[] solidRows;
+    public final long[] beamRows;
+    /**
+     * Every cell of the footprint, solid or beam
+     */
+    public final long[] cellRows;
+
+    public Footprint(int[] solidX, int[] solidY, int[] beamX, int[] beamY) {
+        this.solidX = solidX;
+        this.solidY = solidY;
+        this.beamX = beamX;
+        this.beamY = beamY;
+        this.radius = Math.max(getRadius(solidX, solidY), getRadius(beamX, beamY));
+        if (this.radius > 31) {
+            throw new IllegalArgumentException("Footprint radius cannot exceed 31 (was " + this.radius + ")");
+        }
+
+        this.solidRows = buildRows(solidX, solidY, this.radius);
+        this.beamRows = buildRows(beamX, beamY, this.radius);
+        this.cellRows = new long[this.solidRows.length];
+        for (int row = 0; row < this.cellRows.length; row++) {
+            this.cellRows[row] = this.solidRows[row] | this.beamRows[row];
+        }
+    }
+
+    /**
+     * Returns the width (and height) of this footprint's square bounds
+     */
+    public int getSize() {
+        return this.radius * 2 + 1;
+    }
+
+    /**
+     * Returns true if the cell at the given offset from the drill is solid
+     */
+    public boolean isSolid(int dx, int dy) {
+        return hasCell(this.solidRows, dx, dy);
+    }
+
+    /**
+     * Returns true if the cell at the given offset from the drill is a beam
+     */
+    public boolean isBeam(int dx, int dy) {
+        return hasCell(this.beamRows, dx, dy);
+    }
+
+    /**
+     * Returns true if the other footprint has the same solid and beam cells in the same order
+     */
+    public boolean hasSameCells(Footprint other) {
+        return Arrays.equals(this.solidX, other.solidX) && Arrays.equals(this.solidY, other.solidY)
+               && Arrays.equals(this.beamX, other.beamX) && Arrays.equals(this.beamY, other.beamY);
+    }
+
+    private boolean hasCell(long[] rows, int dx, int dy) {
+        if (dx < -this.radius || dx > this.radius || dy < -this.radius || dy > this.radius) {
+            return false;
+        }
+
+        return ((rows[dy + this.radius] >>> (dx + this.radius)) & 1L) != 0;
+    }
+
+    private static int getRadius(int[] xs, int[] ys) {
+        int radius = 0;
+        for (int i = 0; i < xs.length; i++) {
+            radius = Math.max(radius, Math.max(Math.abs(xs[i]), Math.abs(ys[i])));
+        }
+        return radius;
+    }
+
+    private static long[] buildRows(int[] xs, int[] ys, int radius) {
+        long[] rows = new long[radius * 2 + 1];
+        for (int i = 0; i < xs.length; i++) {
+            rows[ys[i] + radius] |= 1L << (xs[i] + radius);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,233 @@
+package reghzy.laserdrill.placement;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a layout written by {@link LayoutFileWriter}, streaming it through a channel
+ * <p>
+ * The header is read on creation. The drills can then be read once, straight into an engine, an occupancy
+ * grid, a pair of coordinate arrays or a visitor, without building any setup objects. The occupancy bitmap,
+ * if the file has one, comes after them
+ * </p>
+ */
+public class LayoutFileReader implements Closeable {
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final int width;
+    private final int height;
+    private final int count;
+    private final boolean hasOccupancy;
+    private final Footprint footprint;
+    private boolean drillsRead;
+
+    public LayoutFileReader(ReadableByteChannel channel) throws IOException {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(LayoutFileWriter.BufferSize);
+        this.buffer.limit(0);
+
+        require(18);
+        if (this.buffer.getInt() != LayoutFileWriter.Magic) {
+            throw new IOException("Not a layout file");
+        }
+        int version = this.buffer.get();
+        if (version != LayoutFileWriter.Version) {
+            throw new IOException("Unsupported layout file version " + version);
+        }
+        int flags = this.buffer.get();
+        this.width = this.buffer.getInt();
+        this.height = this.buffer.getInt();
+        this.count = this.buffer.getInt();
+        if (this.width <= 0 || this.height <= 0 || this.count < 0) {
+            throw new IOException("Invalid layout header (" + this.width + "x" + this.height + ", " + this.count + " drills)");
+        }
+        this.hasOccupancy = (flags & LayoutFileWriter.FlagOccupancy) != 0;
+
+        int[][] solid = readOffsets();
+        int[][] beam = readOffsets();
+        Footprint footprint;
+        try {
+            footprint = new Footprint(solid[0], solid[1], beam[0], beam[1]);
+        }
+        catch (IllegalArgumentException e) {
+            throw new IOException("Invalid footprint: " + e.getMessage());
+        }
+        this.footprint = footprint.hasSameCells(Footprint.LASER_DRILL) ? Footprint.LASER_DRILL : footprint;
+    }
+
+    public static LayoutFileReader open(Path path) throws IOException {
+        return new LayoutFileReader(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    public int getDrillCount() {
+        return this.count;
+    }
+
+    /**
+     * Returns the footprint the layout was saved with
+     */
+    public Footprint getFootprint() {
+        return this.footprint;
+    }
+
+    public boolean hasOccupancy() {
+        return this.hasOccupancy;
+    }
+
+    /**
+     * Reads every drill, in row major order
+     *
+     * @throws IllegalStateException If the drills have already been read
+     */
+    public void readDrills(DrillVisitor visitor) throws IOException {
+        if (this.drillsRead) {
+            throw new IllegalStateException("Drills have already been read");
+        }
+        this.drillsRead = true;
+
+        long cell = -1L;
+        long cells = (long) this.width * this.height;
+        for (int i = 0; i < this.count; i++) {
+            cell += readVarint() + 1;
+            if (cell >= cells) {
+                throw new IOException("Drill " + i + " is outside the grid");
+            }
+            visitor.visit((int) (cell % this.width), (int) (cell / this.width));
+        }
+    }
+
+    /**
+     * Reads every drill into the given arrays, which must hold at least {@link #getDrillCount()}
+     */
+    public void readDrills(int[] xs, int[] ys) throws IOException {
+        int[] index = new int[1];
+        readDrills((x, y) -> {
+            xs[index[0]] = x;
+            ys[index[0]++] = y;
+        });
+    }
+
+    /**
+     * Adds every drill to the engine and clears its history, so the load cannot be undone drill by drill
+     *
+     * @throws IOException If the engine's grid or footprint differ from the file's, or a drill cannot be placed
+     */
+    public void readInto(PlacementEngine engine) throws IOException {
+        if (engine.getWidth() != this.width || engine.getHeight() != this.height) {
+            throw new IOException("Layout is " + this.width + "x" + this.height + " but the engine is " + engine.getWidth() + "x" + engine.getHeight());
+        }
+        if (!engine.getFootprint().hasSameCells(this.footprint)) {
+            throw new IOException("Layout was saved with a different footprint");
+        }
+
+        IOException[] failure = new IOException[1];
+        readDrills((x, y) -> {
+            if (!engine.addUnrecorded(x, y) && failure[0] == null) {
+                failure[0] = new IOException("Drill " + x + "," + y + " cannot be placed");
+            }
+        });
+        engine.clearHistory();
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    /**
+     * Marks every drill's footprint in the grid, without checking the drills against each other
+     */
+    public void readInto(OccupancyGrid grid) throws IOException {
+        readDrills((x, y) -> grid.place(this.footprint, x, y));
+    }
+
+    /**
+     * Reads the occupancy bitmap as a mask of the cells a setup covers, reading past the drills first if they
+     * have not been read. Useful as the blocked cells of another layer
+     *
+     * @throws IllegalStateException If the file has no occupancy bitmap
+     */
+    public CellMask readOccupancy() throws IOException {
+        if (!this.hasOccupancy) {
+            throw new IllegalStateException("Layout file has no occupancy bitmap");
+        }
+        if (!this.drillsRead) {
+            readDrills((x, y) -> { });
+        }
+
+        CellMask mask = new CellMask(this.width, this.height);
+        long[] words = mask.getWords();
+        for (int i = 0; i < words.length; i++) {
+            require(8);
+            words[i] = this.buffer.getLong();
+        }
+        return mask;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    private int[][] readOffsets() throws IOException {
+        long length = readVarint();
+        if (length > 1024) {
+            throw new IOException("Invalid footprint size " + length);
+        }
+
+        int[][] offsets = new int[2][(int) length];
+        for (int i = 0; i < length; i++) {
+            offsets[0][i] = unZigZag(readVarint());
+            offsets[1][i] = unZigZag(readVarint());
+        }
+        return offsets;
+    }
+
+    private long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (!this.buffer.hasRemaining()) {
+                require(1);
+            }
+            byte b = this.buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Invalid varint");
+    }
+
+    private static int unZigZag(long value) {
+        return (int) (value >>> 1) ^ -(int) (value & 1);
+    }
+
+    /**
+     * Makes sure the buffer has at least the given number of bytes left, reading more from the channel
+     */
+    private void require(int bytes) throws IOException {
+        if (this.buffer.remaining() >= bytes) {
+            return;
+        }
+
+        this.buffer.compact();
+        while (this.buffer.position() < bytes) {
+            if (this.channel.read(this.buffer) < 0) {
+                throw new EOFException("Layout file ends early");
+            }
+        }
+        this.buffer.flip();
+    }
+}
@@ -0,0 +1,210 @@
+package reghzy.laserdrill.placement;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Writes a layout in the compact binary layout format, streaming it through a channel
+ * <p>
+ * The file starts with a header: magic, version, flags, the grid's width and height, the drill count and
+ * the footprint's solid and beam offsets. Then come the drills in row major order, each written as the
+ * number of cells skipped since the previous drill, as an unsigned LEB128 varint. Drills are usually a few
+ * cells apart, so most take a single byte. If the occupancy flag is set, the file ends with a bitmap of every
+ * cell a setup covers (solid or beam), in rows of big endian longs laid out like a {@link CellMask}
+ * </p>
+ * <p>
+ * Drills must be added in row major order, see {@link #write(WritableByteChannel, int, int, int[], int[], Footprint, boolean)}
+ * for writing them in any order. Everything goes through one buffer of {@link #BufferSize} bytes, so only the
+ * occupancy bitmap, if asked for, takes memory in proportion to the grid. See {@link LayoutFileReader}
+ * </p>
+ */
+public class LayoutFileWriter implements Closeable {
+    static final int Magic = 0x4C444C46; // "LDLF"
+    static final int Version = 1;
+    static final int FlagOccupancy = 1;
+    static final int BufferSize = 1 << 16;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final int width;
+    private final int height;
+    private final int count;
+    private final Footprint footprint;
+    private final int wordsPerRow;
+    private final long[] occupancy;
+    private int written;
+    private long lastCell = -1L;
+
+    /**
+     * Writes the header
+     *
+     * @param count     The number of drills that will be added
+     * @param occupancy True to end the file with the occupancy bitmap
+     */
+    public LayoutFileWriter(WritableByteChannel channel, int width, int height, int count, Footprint footprint, boolean occupancy) throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Grid size must be positive (" + width + "x" + height + ")");
+        }
+        if (count < 0) {
+            throw new IllegalArgumentException("Drill count cannot be negative (was " + count + ")");
+        }
+
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(BufferSize);
+        this.width = width;
+        this.height = height;
+        this.count = count;
+        this.footprint = footprint;
+        this.wordsPerRow = (width + 63) >> 6;
+        this.occupancy = occupancy ? new CellMask(width, height).getWords() : null;
+
+        this.buffer.putInt(Magic);
+        this.buffer.put((byte) Version);
+        this.buffer.put((byte) (occupancy ? FlagOccupancy : 0));
+        this.buffer.putInt(width);
+        this.buffer.putInt(height);
+        this.buffer.putInt(count);
+        writeOffsets(footprint.solidX, footprint.solidY);
+        writeOffsets(footprint.beamX, footprint.beamY);
+    }
+
+    /**
+     * Writes a whole layout to a file, replacing it if it exists
+     */
+    public static void write(Path path, int width, int height, int[] xs, int[] ys, Footprint footprint, boolean occupancy) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(channel, width, height, xs, ys, footprint, occupancy);
+        }
+    }
+
+    /**
+     * Writes a whole layout, sorting the drills into row major order first if they are not already. The
+     * channel is not closed
+     */
+    public static void write(WritableByteChannel channel, int width, int height, int[] xs, int[] ys, Footprint footprint, boolean occupancy) throws IOException {
+        long[] cells = new long[xs.length];
+        boolean sorted = true;
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = (long) ys[i] * width + xs[i];
+            sorted &= i == 0 || cells[i] > cells[i - 1];
+        }
+        if (!sorted) {
+            Arrays.sort(cells);
+        }
+
+        LayoutFileWriter writer = new LayoutFileWriter(channel, width, height, cells.length, footprint, occupancy);
+        for (long cell : cells) {
+            writer.add((int) (cell % width), (int) (cell / width));
+        }
+        writer.finish();
+    }
+
+    /**
+     * Adds the next drill, which must come after the previous one in row major order
+     */
+    public void add(int x, int y) throws IOException {
+        if (x < 0 || y < 0 || x >= this.width || y >= this.height) {
+            throw new IllegalArgumentException("Drill " + x + "," + y + " is outside the grid (" + this.width + "x" + this.height + ")");
+        }
+        long cell = (long) y * this.width + x;
+        if (cell <= this.lastCell) {
+            throw new IllegalStateException("Drill " + x + "," + y + " is not after the previous one in row major order");
+        }
+        if (this.written == this.count) {
+            throw new IllegalStateException("More drills than the " + this.count + " in the header");
+        }
+
+        if (this.buffer.remaining() < 10) {
+            flush();
+        }
+        putVarint(cell - this.lastCell - 1);
+        this.lastCell = cell;
+        this.written++;
+
+        if (this.occupancy != null) {
+            mark(this.footprint.solidX, this.footprint.solidY, x, y);
+            mark(this.footprint.beamX, this.footprint.beamY, x, y);
+        }
+    }
+
+    /**
+     * Writes the occupancy bitmap if there is one and flushes everything to the channel, without closing it
+     *
+     * @throws IllegalStateException If fewer drills were added than the header says
+     */
+    public void finish() throws IOException {
+        if (this.written != this.count) {
+            throw new IllegalStateException("Only " + this.written + " of the " + this.count + " drills were added");
+        }
+
+        if (this.occupancy != null) {
+            for (long word : this.occupancy) {
+                if (this.buffer.remaining() < 8) {
+                    flush();
+                }
+                this.buffer.putLong(word);
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Finishes the file and closes the channel
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        }
+        finally {
+            this.channel.close();
+        }
+    }
+
+    private void mark(int[] xs, int[] ys, int x, int y) {
+        for (int i = 0; i < xs.length; i++) {
+            int cellX = x + xs[i];
+            int cellY = y + ys[i];
+            if (cellX >= 0 && cellY >= 0 && cellX < this.width && cellY < this.height) {
+                this.occupancy[cellY * this.wordsPerRow + (cellX >> 6)] |= 1L << (cellX & 63);
+            }
+        }
+    }
+
+    private void writeOffsets(int[] xs, int[] ys) throws IOException {
+        putVarint(xs.length);
+        for (int i = 0; i < xs.length; i++) {
+            if (this.buffer.remaining() < 10) {
+                flush();
+            }
+            putVarint(zigZag(xs[i]));
+            putVarint(zigZag(ys[i]));
+        }
+    }
+
+    private void putVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            this.buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        this.buffer.put((byte) value);
+    }
+
+    private static long zigZag(int value) {
+        return ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL;
+    }
+
+    private void flush() throws IOException {
+        this.buffer.flip();
+        while (this.buffer.hasRemaining()) {
+            this.channel.write(this.buffer);
+        }
+        this.buffer.clear();
+    }
+}
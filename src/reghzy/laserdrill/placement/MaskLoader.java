@@ -0,0 +1,223 @@
+package reghzy.laserdrill.placement;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads and writes {@link CellMask}s. The file is memory mapped rather than read through a stream, so large
+ * masks are decoded straight from the page cache
+ * <p>
+ * Three formats are read, told apart by their first bytes:
+ * </p>
+ * <ul>
+ *     <li>Bitmap: "LDMK", then the width and height as big endian ints, then each row as little endian
+ *     longs (the lowest bit of the first long being the row's first cell). Rows are copied in bulk</li>
+ *     <li>PNG: dark, opaque pixels are blocked. Decoded with ImageIO, so the image must fit in memory</li>
+ *     <li>Text: one line per row, where '#', 'X', 'x' and '1' are blocked and anything else is free.
+ *     The width is the longest line</li>
+ * </ul>
+ */
+public final class MaskLoader {
+    private static final int BitmapMagic = 0x4C444D4B; // "LDMK"
+    private static final int BitmapHeaderSize = 12;
+    private static final byte[] PngSignature = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private MaskLoader() {
+    }
+
+    public static CellMask load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Mask file is too large to map (" + size + " bytes)");
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (size >= 4 && buffer.getInt(0) == BitmapMagic) {
+                return readBitmap(buffer);
+            }
+            if (startsWith(buffer, PngSignature)) {
+                return readImage(buffer);
+            }
+            return readText(buffer);
+        }
+    }
+
+    /**
+     * Writes the mask in the bitmap format, which loads the fastest
+     */
+    public static void writeBitmap(CellMask mask, Path path) throws IOException {
+        long[] words = mask.getWords();
+        long size = BitmapHeaderSize + (long) words.length * 8;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Mask is too large to map (" + size + " bytes)");
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(BitmapMagic);
+            buffer.putInt(mask.width);
+            buffer.putInt(mask.height);
+            buffer.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().put(words);
+            buffer.force();
+        }
+    }
+
+    private static CellMask readBitmap(ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < BitmapHeaderSize) {
+            throw new IOException("Mask bitmap header is truncated");
+        }
+
+        int width = buffer.getInt(4);
+        int height = buffer.getInt(8);
+        if (width <= 0 || height <= 0) {
+            throw new IOException("Mask bitmap has an invalid size (" + width + "x" + height + ")");
+        }
+
+        CellMask mask = new CellMask(width, height);
+        long[] words = mask.getWords();
+        if (buffer.capacity() - BitmapHeaderSize < (long) words.length * 8) {
+            throw new IOException("Mask bitmap is truncated (expected " + width + "x" + height + " cells)");
+        }
+
+        buffer.position(BitmapHeaderSize);
+        buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().get(words);
+
+        // Stray bits past the end of a row would read as blocked cells of the next one
+        if ((width & 63) != 0) {
+            long lastWordMask = (1L << (width & 63)) - 1;
+            int wordsPerRow = mask.getWordsPerRow();
+            for (int word = wordsPerRow - 1; word < words.length; word += wordsPerRow) {
+                words[word] &= lastWordMask;
+            }
+        }
+        return mask;
+    }
+
+    private static CellMask readImage(ByteBuffer buffer) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteBufferInputStream(buffer));
+        if (image == null) {
+            throw new IOException("Mask image could not be decoded");
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        CellMask mask = new CellMask(width, height);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                if (isBlocked(row[x])) {
+                    mask.setBlocked(x, y);
+                }
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Returns true for pixels that are mostly opaque and darker than mid grey
+     */
+    private static boolean isBlocked(int argb) {
+        int alpha = argb >>> 24;
+        int luma = (((argb >> 16) & 0xFF) * 299 + ((argb >> 8) & 0xFF) * 587 + (argb & 0xFF) * 114) / 1000;
+        return alpha >= 128 && luma < 128;
+    }
+
+    private static CellMask readText(ByteBuffer buffer) throws IOException {
+        // The first pass only measures, so the mask can be allocated once at its final size
+        int limit = buffer.limit();
+        int width = 0;
+        int height = 0;
+        int lineLength = 0;
+        for (int i = 0; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (b == '\n') {
+                width = Math.max(width, lineLength);
+                height++;
+                lineLength = 0;
+            }
+            else if (b != '\r') {
+                lineLength++;
+            }
+        }
+        if (lineLength > 0) {
+            width = Math.max(width, lineLength);
+            height++;
+        }
+        if (width == 0 || height == 0) {
+            throw new IOException("Mask text is empty");
+        }
+
+        CellMask mask = new CellMask(width, height);
+        int x = 0;
+        int y = 0;
+        for (int i = 0; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (b == '\n') {
+                x = 0;
+                y++;
+            }
+            else if (b != '\r') {
+                if (b == '#' || b == 'X' || b == 'x' || b == '1') {
+                    mask.setBlocked(x, y);
+                }
+                x++;
+            }
+        }
+        return mask;
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, byte[] prefix) {
+        if (buffer.limit() < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer.duplicate();
+            this.buffer.position(0);
+        }
+
+        @Override
+        public int read() {
+            return this.buffer.hasRemaining() ? this.buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!this.buffer.hasRemaining()) {
+                return -1;
+            }
+
+            int count = Math.min(length, this.buffer.remaining());
+            this.buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return this.buffer.remaining();
+        }
+    }
+}
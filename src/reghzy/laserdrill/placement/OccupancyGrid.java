@@ -0,0 +1,159 @@
+package reghzy.laserdrill.placement;
+
+import java.util.Arrays;
+
+/**
+ * A packed occupancy bitmap of a rectangular grid, with one bit per cell stored in rows of longs
+ * <p>
+ * Solid cells (drills and pre-chargers) are kept in one plane and the drills alone in another, so that
+ * footprint row masks can be tested against the drills with one AND per row. Beam cells are not kept,
+ * since whether a setup fits is only ever decided by its drill and solid cells. Cells outside the grid
+ * always read as empty
+ * </p>
+ */
+public class OccupancyGrid {
+    private final int width;
+    private final int height;
+    private final int wordsPerRow;
+    private final long[] solid;
+    private final long[] drill;
+
+    public OccupancyGrid(int width, int height) {
+        if (width < 0 || height < 0) {
+            throw new IllegalArgumentException("Grid size cannot be negative (" + width + "x" + height + ")");
+        }
+
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (width + 63) >>> 6;
+        this.solid = new long[this.wordsPerRow * height];
+        this.drill = new long[this.wordsPerRow * height];
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    public boolean isInside(int x, int y) {
+        return x >= 0 && y >= 0 && x < this.width && y < this.height;
+    }
+
+    public boolean isSolid(int x, int y) {
+        return isInside(x, y) && getBit(this.solid, x, y);
+    }
+
+    public boolean isDrill(int x, int y) {
+        return isInside(x, y) && getBit(this.drill, x, y);
+    }
+
+    public void setSolid(int x, int y) {
+        if (isInside(x, y)) {
+            setBit(this.solid, x, y);
+        }
+    }
+
+    public void setDrill(int x, int y) {
+        if (isInside(x, y)) {
+            setBit(this.drill, x, y);
+        }
+    }
+
+    public void clearSolid(int x, int y) {
+        if (isInside(x, y)) {
+            clearBit(this.solid, x, y);
+        }
+    }
+
+    public void clearDrill(int x, int y) {
+        if (isInside(x, y)) {
+            clearBit(this.drill, x, y);
+        }
+    }
+
+    /**
+     * Marks every solid cell of the given footprint, with its drill at the given location
+     */
+    public void place(Footprint footprint, int x, int y) {
+        setDrill(x, y);
+        for (int i = 0; i < footprint.solidX.length; i++) {
+            setSolid(x + footprint.solidX[i], y + footprint.solidY[i]);
+        }
+    }
+
+    /**
+     * Returns true if a drill can be placed at the given location, that being when it is not on top of
+     * an already placed drill or pre-charger (see LaserDrillSetup#canPlaceAbove)
+     */
+    public boolean canPlace(int x, int y) {
+        return !isSolid(x, y);
+    }
+
+    /**
+     * Returns true if any of the given footprint row masks, centered on the given location, overlaps a drill
+     */
+    public boolean intersectsDrill(long[] rowMasks, int radius, int x, int y) {
+        return intersects(this.drill, rowMasks, radius, x, y);
+    }
+
+    public void clear() {
+        Arrays.fill(this.solid, 0L);
+        Arrays.fill(this.drill, 0L);
+    }
+
+    private boolean intersects(long[] plane, long[] rowMasks, int radius, int x, int y) {
+        int startX = x - radius;
+        for (int row = 0; row < rowMasks.length; row++) {
+            long mask = rowMasks[row];
+            if (mask != 0 && (getBits(plane, y - radius + row, startX) & mask) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long getBits(long[] plane, int y, int startX) {
+        return getRowBits(plane, this.wordsPerRow, this.height, y, startX);
+    }
+
+    /**
+     * Returns the 64 cells of the given row of a plane starting at startX, with startX in the lowest bit.
+     * Cells outside the plane read as 0
+     */
+    static long getRowBits(long[] plane, int wordsPerRow, int height, int y, int startX) {
+        if (y < 0 || y >= height) {
+            return 0L;
+        }
+
+        int base = y * wordsPerRow;
+        int word = startX >> 6;
+        int shift = startX & 63;
+        long bits = getWord(plane, wordsPerRow, base, word) >>> shift;
+        if (shift != 0) {
+            bits |= getWord(plane, wordsPerRow, base, word + 1) << (64 - shift);
+        }
+        return bits;
+    }
+
+    private static long getWord(long[] plane, int wordsPerRow, int base, int word) {
+        if (word < 0 || word >= wordsPerRow) {
+            return 0L;
+        }
+        return plane[base + word];
+    }
+
+    private boolean getBit(long[] plane, int x, int y) {
+        return ((plane[y * this.wordsPerRow + (x >>> 6)] >>> (x & 63)) & 1L) != 0;
+    }
+
+    private void setBit(long[] plane, int x, int y) {
+        plane[y * this.wordsPerRow + (x >>> 6)] |= 1L << (x & 63);
+    }
+
+    private void clearBit(long[] plane, int x, int y) {
+        plane[y * this.wordsPerRow + (x >>> 6)] &= ~(1L << (x & 63));
+    }
+}
@@ -0,0 +1,295 @@
+package reghzy.laserdrill.placement;
+
+import reghzy.laserdrill.metrics.SolverMetrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Keeps a layout that can be edited one setup at a time, with undo and redo
+ * <p>
+ * Every cell keeps a count of the setups whose solid cells cover it, so that removing a setup can clear
+ * exactly the bits of the {@link OccupancyGrid} no other setup still needs. Adding, removing and
+ * checking a setup only touch its own footprint. Since conflicts are symmetric, removing a setup can never
+ * make another one invalid, so nothing else has to be re-checked
+ * </p>
+ * <p>
+ * Edits are recorded in a journal of packed longs. Undo and redo replay it and notify listeners like
+ * any other edit. Not thread safe
+ * </p>
+ * <p>
+ * Metrics (see {@link #setMetrics(SolverMetrics)}): checks are the canPlace calls, nodes the edits applied
+ * (including undo and redo), prunes the adds that were refused, and the best is the most setups held at once
+ * </p>
+ */
+public class PlacementEngine {
+    private static final long RemoveFlag = 1L << 62;
+
+    private final int width;
+    private final int height;
+    private final Footprint footprint;
+    private final CellMask mask;
+    private final OccupancyGrid occupancy;
+    private final short[] solidCounts;
+    private final ArrayList<PlacementListener> listeners = new ArrayList<PlacementListener>(2);
+    private long[] undoJournal = new long[64];
+    private int undoSize;
+    private long[] redoJournal = new long[64];
+    private int redoSize;
+    private int setupCount;
+    private SolverMetrics metrics = SolverMetrics.DISABLED;
+
+    public PlacementEngine(int width, int height) {
+        this(width, height, Footprint.LASER_DRILL);
+    }
+
+    public PlacementEngine(int width, int height, Footprint footprint) {
+        this(width, height, footprint, null);
+    }
+
+    /**
+     * @param mask The cells no setup may cover, or null if every cell is free
+     */
+    public PlacementEngine(int width, int height, Footprint footprint, CellMask mask) {
+        this.width = width;
+        this.height = height;
+        this.footprint = footprint;
+        this.mask = mask;
+        this.occupancy = new OccupancyGrid(width, height);
+        this.solidCounts = new short[width * height];
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    public Footprint getFootprint() {
+        return this.footprint;
+    }
+
+    /**
+     * Returns the blocked cells, or null if there are none
+     */
+    public CellMask getMask() {
+        return this.mask;
+    }
+
+    /**
+     * Returns the occupancy bitmap of the current layout. It must not be modified directly
+     */
+    public OccupancyGrid getOccupancy() {
+        return this.occupancy;
+    }
+
+    public int getSetupCount() {
+        return this.setupCount;
+    }
+
+    public SolverMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Sets the metrics this engine counts into, or {@link SolverMetrics#DISABLED} to stop counting
+     */
+    public void setMetrics(SolverMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void addListener(PlacementListener listener) {
+        this.listeners.add(listener);
+    }
+
+    public void removeListener(PlacementListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Returns true if the whole footprint of a setup at the given location fits inside the grid
+     */
+    public boolean isInside(int x, int y) {
+        int radius = this.footprint.radius;
+        return x >= radius && y >= radius && x < (this.width - radius) && y < (this.height - radius);
+    }
+
+    /**
+     * Returns true if a setup can be added at the given location: it fits in the grid, none of its cells are
+     * blocked by the mask, its drill is not on another setup's solid cell, and none of its solid cells are on
+     * another setup's drill
+     */
+    public boolean canPlace(int x, int y) {
+        this.metrics.addChecks(1);
+        return isInside(x, y)
+               && !this.occupancy.isSolid(x, y)
+               && !this.occupancy.intersectsDrill(this.footprint.solidRows, this.footprint.radius, x, y)
+               && (this.mask == null || !this.mask.intersects(this.footprint.cellRows, this.footprint.radius, x, y));
+    }
+
+    public boolean isDrill(int x, int y) {
+        return this.occupancy.isDrill(x, y);
+    }
+
+    /**
+     * Adds a setup at the given location, returning false (and changing nothing) if it cannot be placed.
+     * Clears the redo history
+     */
+    public boolean add(int x, int y) {
+        if (!canPlace(x, y)) {
+            this.metrics.addPrunes(1);
+            return false;
+        }
+
+        apply(pack(x, y));
+        this.undoJournal = push(this.undoJournal, this.undoSize++, pack(x, y));
+        this.redoSize = 0;
+        return true;
+    }
+
+    /**
+     * Adds a setup like {@link #add(int, int)}, but without recording it in the journal, for bulk loads
+     * (see LayoutFileReader) that clear the history afterwards anyway
+     */
+    boolean addUnrecorded(int x, int y) {
+        if (!canPlace(x, y)) {
+            this.metrics.addPrunes(1);
+            return false;
+        }
+
+        apply(pack(x, y));
+        return true;
+    }
+
+    /**
+     * Removes the setup whose drill is at the given location, returning false if there is none.
+     * Clears the redo history
+     */
+    public boolean remove(int x, int y) {
+        if (!isDrill(x, y)) {
+            return false;
+        }
+
+        apply(pack(x, y) | RemoveFlag);
+        this.undoJournal = push(this.undoJournal, this.undoSize++, pack(x, y) | RemoveFlag);
+        this.redoSize = 0;
+        return true;
+    }
+
+    public boolean canUndo() {
+        return this.undoSize > 0;
+    }
+
+    public boolean canRedo() {
+        return this.redoSize > 0;
+    }
+
+    public boolean undo() {
+        if (this.undoSize == 0) {
+            return false;
+        }
+
+        long entry = this.undoJournal[--this.undoSize];
+        apply(entry ^ RemoveFlag);
+        this.redoJournal = push(this.redoJournal, this.redoSize++, entry);
+        return true;
+    }
+
+    public boolean redo() {
+        if (this.redoSize == 0) {
+            return false;
+        }
+
+        long entry = this.redoJournal[--this.redoSize];
+        apply(entry);
+        this.undoJournal = push(this.undoJournal, this.undoSize++, entry);
+        return true;
+    }
+
+    /**
+     * Forgets all undo and redo history, keeping the current layout
+     */
+    public void clearHistory() {
+        this.undoSize = 0;
+        this.redoSize = 0;
+    }
+
+    /**
+     * Visits the drill of every setup, row by row
+     */
+    public void forEach(DrillVisitor visitor) {
+        for (int y = 0; y < this.height; y++) {
+            for (int x = 0; x < this.width; x++) {
+                if (this.occupancy.isDrill(x, y)) {
+                    visitor.visit(x, y);
+                }
+            }
+        }
+    }
+
+    private void apply(long entry) {
+        this.metrics.addNodes(1);
+        int x = unpackX(entry);
+        int y = unpackY(entry);
+        if ((entry & RemoveFlag) != 0) {
+            change(x, y, -1);
+            this.occupancy.clearDrill(x, y);
+            this.setupCount--;
+            for (int i = 0; i < this.listeners.size(); i++) {
+                this.listeners.get(i).setupRemoved(x, y);
+            }
+        }
+        else {
+            change(x, y, 1);
+            this.occupancy.setDrill(x, y);
+            this.setupCount++;
+            this.metrics.recordBest(this.setupCount);
+            for (int i = 0; i < this.listeners.size(); i++) {
+                this.listeners.get(i).setupAdded(x, y);
+            }
+        }
+    }
+
+    /**
+     * Adds the given delta to the counts of every solid cell of the footprint at the given location, updating
+     * the occupancy bits of cells whose count starts or stops being zero
+     */
+    private void change(int x, int y, int delta) {
+        Footprint footprint = this.footprint;
+        for (int i = 0; i < footprint.solidX.length; i++) {
+            int cellX = x + footprint.solidX[i];
+            int cellY = y + footprint.solidY[i];
+            int index = cellY * this.width + cellX;
+            int count = this.solidCounts[index] + delta;
+            this.solidCounts[index] = (short) count;
+            if (count == 0) {
+                this.occupancy.clearSolid(cellX, cellY);
+            }
+            else if (count == delta) {
+                this.occupancy.setSolid(cellX, cellY);
+            }
+        }
+    }
+
+    private static long[] push(long[] journal, int index, long entry) {
+        if (index == journal.length) {
+            journal = Arrays.copyOf(journal, index * 2);
+        }
+        journal[index] = entry;
+        return journal;
+    }
+
+    private static long pack(int x, int y) {
+        return ((long) y << 31) | x;
+    }
+
+    private static int unpackX(long entry) {
+        return (int) (entry & 0x7FFFFFFFL);
+    }
+
+    private static int unpackY(long entry) {
+        return (int) ((entry >>> 31) & 0x7FFFFFFFL);
+    }
+}
@@ -0,0 +1,10 @@
+package reghzy.laserdrill.placement;
+
+/**
+ * Notified whenever a {@link PlacementEngine} adds or removes a setup, including through undo and redo
+ */
+public interface PlacementListener {
+    void setupAdded(int x, int y);
+
+    void setupRemoved(int x, int y);
+}
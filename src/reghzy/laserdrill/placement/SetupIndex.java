@@ -0,0 +1,144 @@
+package reghzy.laserdrill.placement;
+
+import reghzy.laserdrill.LaserDrillSetup;
+import reghzy.laserdrill.utils.AxisAlignedBB;
+import reghzy.laserdrill.utils.Vector2;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.function.Consumer;
+
+/**
+ * A uniform bucket grid of {@link LaserDrillSetup}s, keyed on the bucket that contains each setup's center
+ * <p>
+ * Placement checks only visit the buckets that can hold a setup whose bounding box overlaps the
+ * candidate's, so a check costs the same no matter how many setups have been indexed
+ * </p>
+ * <p>
+ * Not thread safe; a single lookup key is reused to avoid allocating on every query
+ * </p>
+ */
+public class SetupIndex {
+    /**
+     * Each bucket covers 8x8 cells, which is a bit larger than the default 5x5 setup footprint
+     */
+    private static final int BucketShift = 3;
+
+    private final HashMap<Vector2, ArrayList<LaserDrillSetup>> buckets;
+    private final Vector2 lookupKey = new Vector2(0);
+    private int maxExtent;
+    private int size;
+
+    public SetupIndex() {
+        this.buckets = new HashMap<Vector2, ArrayList<LaserDrillSetup>>(64);
+    }
+
+    public void add(LaserDrillSetup setup) {
+        Vector2 key = new Vector2(setup.center.x >> BucketShift, setup.center.y >> BucketShift);
+        ArrayList<LaserDrillSetup> bucket = this.buckets.get(key);
+        if (bucket == null) {
+            bucket = new ArrayList<LaserDrillSetup>(4);
+            this.buckets.put(key, bucket);
+        }
+
+        bucket.add(setup);
+        this.maxExtent = Math.max(this.maxExtent, getExtent(setup));
+        this.size++;
+    }
+
+    public boolean remove(LaserDrillSetup setup) {
+        ArrayList<LaserDrillSetup> bucket = getBucket(setup.center.x >> BucketShift, setup.center.y >> BucketShift);
+        if (bucket == null || !bucket.remove(setup)) {
+            return false;
+        }
+
+        if (bucket.isEmpty()) {
+            this.buckets.remove(this.lookupKey);
+        }
+
+        this.size--;
+        return true;
+    }
+
+    /**
+     * Returns true if every indexed setup allows the given setup to be placed above it
+     * (see {@link LaserDrillSetup#canPlaceAbove(LaserDrillSetup)})
+     */
+    public boolean canPlace(LaserDrillSetup candidate) {
+        return canPlace(candidate.center.x, candidate.center.y);
+    }
+
+    /**
+     * Same as {@link #canPlace(LaserDrillSetup)}, for a drill at the given cell without building the setup
+     */
+    public boolean canPlace(int x, int y) {
+        int minBucketX = (x - this.maxExtent) >> BucketShift;
+        int minBucketY = (y - this.maxExtent) >> BucketShift;
+        int maxBucketX = (x + this.maxExtent) >> BucketShift;
+        int maxBucketY = (y + this.maxExtent) >> BucketShift;
+        for (int bucketX = minBucketX; bucketX <= maxBucketX; bucketX++) {
+            for (int bucketY = minBucketY; bucketY <= maxBucketY; bucketY++) {
+                ArrayList<LaserDrillSetup> bucket = getBucket(bucketX, bucketY);
+                if (bucket == null) {
+                    continue;
+                }
+
+                for (int i = 0, count = bucket.size(); i < count; i++) {
+                    if (!bucket.get(i).canPlaceAbove(x, y)) {
+                        return false;
+                    }
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Passes every indexed setup whose bounding box intersects the given box to the consumer
+     */
+    public void forEachIntersecting(AxisAlignedBB box, Consumer<LaserDrillSetup> consumer) {
+        int minBucketX = (box.minX - this.maxExtent) >> BucketShift;
+        int minBucketY = (box.minY - this.maxExtent) >> BucketShift;
+        int maxBucketX = (box.maxX + this.maxExtent) >> BucketShift;
+        int maxBucketY = (box.maxY + this.maxExtent) >> BucketShift;
+        for (int bucketX = minBucketX; bucketX <= maxBucketX; bucketX++) {
+            for (int bucketY = minBucketY; bucketY <= maxBucketY; bucketY++) {
+                ArrayList<LaserDrillSetup> bucket = getBucket(bucketX, bucketY);
+                if (bucket == null) {
+                    continue;
+                }
+
+                for (int i = 0, count = bucket.size(); i < count; i++) {
+                    LaserDrillSetup setup = bucket.get(i);
+                    if (setup.boundingBox.intersectsAABB(box)) {
+                        consumer.accept(setup);
+                    }
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public void clear() {
+        this.buckets.clear();
+        this.maxExtent = 0;
+        this.size = 0;
+    }
+
+    private ArrayList<LaserDrillSetup> getBucket(int bucketX, int bucketY) {
+        this.lookupKey.x = bucketX;
+        this.lookupKey.y = bucketY;
+        return this.buckets.get(this.lookupKey);
+    }
+
+    private static int getExtent(LaserDrillSetup setup) {
+        AxisAlignedBB box = setup.boundingBox;
+        int extentX = Math.max(setup.center.x - box.minX, box.maxX - setup.center.x);
+        int extentY = Math.max(setup.center.y - box.minY, box.maxY - setup.center.y);
+        return Math.max(extentX, extentY);
+    }
+}
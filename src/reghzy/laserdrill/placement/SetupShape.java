@@ -0,0 +1,285 @@
+package reghzy.laserdrill.placement;
+
+import java.util.ArrayList;
+
+/**
+ * A declarative description of a setup: which cells around the drill it uses and what each one is
+ * <p>
+ * Shapes are written either as parameters (see {@link #parse(String)}), for the usual drill with some number
+ * of pre-chargers at the end of straight lasers, or as a diagram (see {@link #parseDiagram(String)}) for
+ * anything else. Nothing checks placements against a shape directly: it is compiled once into a
+ * {@link Footprint}, whose offset arrays and row masks are what every solver and collision check uses, so
+ * a new drill variant costs the same as the default one
+ * </p>
+ */
+public class SetupShape {
+    /**
+     * The directions pre-chargers can be in, in the order their cells are compiled
+     */
+    private static final String Directions = "WNES";
+    private static final int[] DirectionX = {-1, 0, 1, 0};
+    private static final int[] DirectionY = {0, -1, 0, 1};
+    /**
+     * The directions used for a pre-charger count, opposite pairs first so a two charger setup is a line
+     */
+    private static final String CountedDirections = "WENS";
+
+    /**
+     * The default setup: lasers of range 1 towards four pre-chargers (see {@link Footprint#LASER_DRILL})
+     */
+    public static final SetupShape LASER_DRILL = of(1, "WNES");
+
+    private final int[] xs;
+    private final int[] ys;
+    private final Role[] roles;
+    private Footprint footprint;
+
+    /**
+     * @param xs    The X offset of each cell from the drill
+     * @param ys    The Y offset of each cell from the drill
+     * @param roles The role of each cell. Exactly one must be the drill, at offset 0,0
+     */
+    public SetupShape(int[] xs, int[] ys, Role[] roles) {
+        if (xs.length != ys.length || xs.length != roles.length) {
+            throw new IllegalArgumentException("Shape arrays must be the same length");
+        }
+
+        int drills = 0;
+        for (int i = 0; i < roles.length; i++) {
+            if (roles[i] == Role.DRILL) {
+                if (xs[i] != 0 || ys[i] != 0) {
+                    throw new IllegalArgumentException("Drill must be at offset 0,0 (was " + xs[i] + "," + ys[i] + ")");
+                }
+                drills++;
+            }
+            for (int j = 0; j < i; j++) {
+                if (xs[i] == xs[j] && ys[i] == ys[j]) {
+                    throw new IllegalArgumentException("Shape uses the cell " + xs[i] + "," + ys[i] + " twice");
+                }
+            }
+        }
+        if (drills != 1) {
+            throw new IllegalArgumentException("Shape must have exactly one drill (had " + drills + ")");
+        }
+
+        this.xs = xs.clone();
+        this.ys = ys.clone();
+        this.roles = roles.clone();
+    }
+
+    /**
+     * Creates the usual shape: a straight laser of the given range from the drill towards a pre-charger in
+     * each of the given directions, written as letters out of "WNES"
+     */
+    public static SetupShape of(int laserRange, String chargerDirections) {
+        if (laserRange < 1) {
+            throw new IllegalArgumentException("Laser range must be at least 1 (was " + laserRange + ")");
+        }
+
+        boolean[] used = new boolean[Directions.length()];
+        for (int i = 0; i < chargerDirections.length(); i++) {
+            int direction = Directions.indexOf(Character.toUpperCase(chargerDirections.charAt(i)));
+            if (direction == -1 || used[direction]) {
+                throw new IllegalArgumentException("Invalid pre-charger directions '" + chargerDirections + "', expected distinct letters of " + Directions);
+            }
+            used[direction] = true;
+        }
+
+        // Solid cells first (drill, then pre-chargers) and then the lasers, the order LaserDrillSetup's tiles use
+        ArrayList<int[]> cells = new ArrayList<int[]>(16);
+        cells.add(new int[] {0, 0, Role.DRILL.ordinal()});
+        for (int direction = 0; direction < used.length; direction++) {
+            if (used[direction]) {
+                cells.add(new int[] {DirectionX[direction] * (laserRange + 1), DirectionY[direction] * (laserRange + 1), Role.PRE_CHARGER.ordinal()});
+            }
+        }
+        for (int distance = 1; distance <= laserRange; distance++) {
+            for (int direction = 0; direction < used.length; direction++) {
+                if (used[direction]) {
+                    cells.add(new int[] {DirectionX[direction] * distance, DirectionY[direction] * distance, Role.LASER.ordinal()});
+                }
+            }
+        }
+        return fromCells(cells);
+    }
+
+    /**
+     * Creates the usual shape with the given number of pre-chargers (1 to 4), in opposite pairs
+     */
+    public static SetupShape of(int laserRange, int chargerCount) {
+        if (chargerCount < 1 || chargerCount > CountedDirections.length()) {
+            throw new IllegalArgumentException("Pre-charger count must be 1 to " + CountedDirections.length() + " (was " + chargerCount + ")");
+        }
+        return of(laserRange, CountedDirections.substring(0, chargerCount));
+    }
+
+    /**
+     * Parses parameters separated by commas or spaces: "range=R" (default 1) and "chargers=N" or
+     * "chargers=LETTERS" (default 4). For example "range=2,chargers=WE"
+     */
+    public static SetupShape parse(String spec) {
+        int range = 1;
+        String chargers = null;
+        int count = 4;
+        for (String part : spec.trim().split("[,\\s]+")) {
+            if (part.isEmpty()) {
+                continue;
+            }
+
+            int separator = part.indexOf('=');
+            String key = separator == -1 ? part : part.substring(0, separator);
+            String value = separator == -1 ? "" : part.substring(separator + 1);
+            try {
+                if (key.equals("range")) {
+                    range = Integer.parseInt(value);
+                }
+                else if (key.equals("chargers")) {
+                    if (!value.isEmpty() && Character.isDigit(value.charAt(0))) {
+                        count = Integer.parseInt(value);
+                        chargers = null;
+                    }
+                    else {
+                        chargers = value;
+                    }
+                }
+                else {
+                    throw new IllegalArgumentException("Unknown shape parameter '" + key + "'");
+                }
+            }
+            catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value for shape parameter '" + key + "': '" + value + "'");
+            }
+        }
+        return chargers != null ? of(range, chargers) : of(range, count);
+    }
+
+    /**
+     * Parses a diagram with one line per row: 'D' is the drill, 'P' a pre-charger, 'L' a laser, and '.' or a
+     * space an unused cell. Offsets are relative to the drill
+     */
+    public static SetupShape parseDiagram(String diagram) {
+        String[] lines = diagram.split("\r?\n");
+        int drillX = -1;
+        int drillY = -1;
+        for (int y = 0; y < lines.length; y++) {
+            int x = lines[y].indexOf('D');
+            if (x != -1) {
+                if (drillX != -1 || lines[y].lastIndexOf('D') != x) {
+                    throw new IllegalArgumentException("Diagram has more than one drill");
+                }
+                drillX = x;
+                drillY = y;
+            }
+        }
+        if (drillX == -1) {
+            throw new IllegalArgumentException("Diagram has no drill ('D')");
+        }
+
+        ArrayList<int[]> solids = new ArrayList<int[]>(8);
+        ArrayList<int[]> beams = new ArrayList<int[]>(8);
+        solids.add(new int[] {0, 0, Role.DRILL.ordinal()});
+        for (int y = 0; y < lines.length; y++) {
+            String line = lines[y];
+            for (int x = 0; x < line.length(); x++) {
+                char c = line.charAt(x);
+                if (c == 'P') {
+                    solids.add(new int[] {x - drillX, y - drillY, Role.PRE_CHARGER.ordinal()});
+                }
+                else if (c == 'L') {
+                    beams.add(new int[] {x - drillX, y - drillY, Role.LASER.ordinal()});
+                }
+                else if (c != 'D' && c != '.' && c != ' ') {
+                    throw new IllegalArgumentException("Unknown diagram cell '" + c + "' at " + x + "," + y);
+                }
+            }
+        }
+
+        solids.addAll(beams);
+        return fromCells(solids);
+    }
+
+    public int getCellCount() {
+        return this.roles.length;
+    }
+
+    public int getX(int index) {
+        return this.xs[index];
+    }
+
+    public int getY(int index) {
+        return this.ys[index];
+    }
+
+    public Role getRole(int index) {
+        return this.roles[index];
+    }
+
+    /**
+     * Returns the compiled footprint: the drill and pre-chargers as solid cells (the drill first), the lasers
+     * as beam cells, each in the order they were declared. Compiled once; the default shape compiles to
+     * {@link Footprint#LASER_DRILL} itself, so per footprint caches are shared with it
+     */
+    public synchronized Footprint compile() {
+        if (this.footprint == null) {
+            int solidCount = 0;
+            for (Role role : this.roles) {
+                if (role.isSolid()) {
+                    solidCount++;
+                }
+            }
+
+            int[] solidX = new int[solidCount];
+            int[] solidY = new int[solidCount];
+            int[] beamX = new int[this.roles.length - solidCount];
+            int[] beamY = new int[this.roles.length - solidCount];
+            int solids = 1;
+            int beams = 0;
+            for (int i = 0; i < this.roles.length; i++) {
+                if (this.roles[i] == Role.DRILL) {
+                    continue;
+                }
+                if (this.roles[i].isSolid()) {
+                    solidX[solids] = this.xs[i];
+                    solidY[solids] = this.ys[i];
+                    solids++;
+                }
+                else {
+                    beamX[beams] = this.xs[i];
+                    beamY[beams] = this.ys[i];
+                    beams++;
+                }
+            }
+
+            Footprint footprint = new Footprint(solidX, solidY, beamX, beamY);
+            this.footprint = footprint.hasSameCells(Footprint.LASER_DRILL) ? Footprint.LASER_DRILL : footprint;
+        }
+        return this.footprint;
+    }
+
+    private static SetupShape fromCells(ArrayList<int[]> cells) {
+        int[] xs = new int[cells.size()];
+        int[] ys = new int[cells.size()];
+        Role[] roles = new Role[cells.size()];
+        Role[] values = Role.values();
+        for (int i = 0; i < xs.length; i++) {
+            int[] cell = cells.get(i);
+            xs[i] = cell[0];
+            ys[i] = cell[1];
+            roles[i] = values[cell[2]];
+        }
+        return new SetupShape(xs, ys, roles);
+    }
+
+    public enum Role {
+        DRILL,
+        PRE_CHARGER,
+        LASER;
+
+        /**
+         * Returns true for the cells another drill may never be placed on
+         */
+        public boolean isSolid() {
+            return this != LASER;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package reghzy.laserdrill.scoring;
+
+import reghzy.laserdrill.placement.Footprint;
+
+/**
+ * The total length of every setup's lasers, in cells, which the energy a layout needs grows with. Lasers of
+ * different setups may cross, and each is counted in full
+ */
+public class BeamLengthTerm implements ScoreTerm {
+    private double beamLength;
+
+    @Override
+    public String getName() {
+        return "beam-length";
+    }
+
+    @Override
+    public void reset(int width, int height, Footprint footprint) {
+        this.beamLength = footprint.beamX.length;
+    }
+
+    @Override
+    public double added(int x, int y) {
+        return this.beamLength;
+    }
+
+    @Override
+    public double removed(int x, int y) {
+        return -this.beamLength;
+    }
+}
@@ -0,0 +1,68 @@
+package reghzy.laserdrill.scoring;
+
+import reghzy.laserdrill.placement.Footprint;
+
+/**
+ * The number of pre-chargers saved by setups sharing them: every pre-charger cell used by n setups counts
+ * n - 1, since one block powers all of them
+ * <p>
+ * Pre-chargers are the footprint's solid cells other than the drill. A count of the setups using each cell
+ * is kept, so a setup's change is found from its own pre-charger cells alone
+ * </p>
+ */
+public class ChargerSharingTerm implements ScoreTerm {
+    private int width;
+    private int[] chargerX;
+    private int[] chargerY;
+    private short[] counts;
+
+    @Override
+    public String getName() {
+        return "shared-chargers";
+    }
+
+    @Override
+    public void reset(int width, int height, Footprint footprint) {
+        int chargers = 0;
+        for (int i = 0; i < footprint.solidX.length; i++) {
+            if (footprint.solidX[i] != 0 || footprint.solidY[i] != 0) {
+                chargers++;
+            }
+        }
+
+        this.width = width;
+        this.chargerX = new int[chargers];
+        this.chargerY = new int[chargers];
+        for (int i = 0, j = 0; i < footprint.solidX.length; i++) {
+            if (footprint.solidX[i] != 0 || footprint.solidY[i] != 0) {
+                this.chargerX[j] = footprint.solidX[i];
+                this.chargerY[j++] = footprint.solidY[i];
+            }
+        }
+        this.counts = new short[width * height];
+    }
+
+    @Override
+    public double added(int x, int y) {
+        int shared = 0;
+        for (int i = 0; i < this.chargerX.length; i++) {
+            int index = (y + this.chargerY[i]) * this.width + x + this.chargerX[i];
+            if (this.counts[index]++ != 0) {
+                shared++;
+            }
+        }
+        return shared;
+    }
+
+    @Override
+    public double removed(int x, int y) {
+        int shared = 0;
+        for (int i = 0; i < this.chargerX.length; i++) {
+            int index = (y + this.chargerY[i]) * this.width + x + this.chargerX[i];
+            if (--this.counts[index] != 0) {
+                shared++;
+            }
+        }
+        return -shared;
+    }
+}
@@ -0,0 +1,78 @@
+package reghzy.laserdrill.scoring;
+
+import reghzy.laserdrill.placement.Footprint;
+
+/**
+ * The number of chunks (square areas of the grid, 16 cells wide by default) that any setup's footprint
+ * reaches into, which is what has to stay loaded for the layout to run
+ * <p>
+ * A count of the setups reaching into each chunk is kept. Setups are taken as their footprint's square
+ * bounds, which touch at most four chunks unless the footprint is wider than a chunk
+ * </p>
+ */
+public class ChunkCoverageTerm implements ScoreTerm {
+    public static final int DefaultChunkSize = 16;
+
+    private final int chunkSize;
+    private int radius;
+    private int chunksX;
+    private int lastChunkX;
+    private int lastChunkY;
+    private int[] counts;
+
+    public ChunkCoverageTerm() {
+        this(DefaultChunkSize);
+    }
+
+    public ChunkCoverageTerm(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive (was " + chunkSize + ")");
+        }
+
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public String getName() {
+        return "chunks";
+    }
+
+    @Override
+    public void reset(int width, int height, Footprint footprint) {
+        this.radius = footprint.radius;
+        this.chunksX = (width + this.chunkSize - 1) / this.chunkSize;
+        this.lastChunkX = this.chunksX - 1;
+        this.lastChunkY = (height + this.chunkSize - 1) / this.chunkSize - 1;
+        this.counts = new int[this.chunksX * (this.lastChunkY + 1)];
+    }
+
+    @Override
+    public double added(int x, int y) {
+        return change(x, y, 1);
+    }
+
+    @Override
+    public double removed(int x, int y) {
+        return -change(x, y, -1);
+    }
+
+    /**
+     * Adds the delta to every chunk the setup reaches, returning the number of chunks whose count became or
+     * stopped being 0
+     */
+    private int change(int x, int y, int delta) {
+        int changed = 0;
+        int maxChunkY = Math.min(this.lastChunkY, (y + this.radius) / this.chunkSize);
+        int maxChunkX = Math.min(this.lastChunkX, (x + this.radius) / this.chunkSize);
+        for (int chunkY = Math.max(0, y - this.radius) / this.chunkSize; chunkY <= maxChunkY; chunkY++) {
+            for (int chunkX = Math.max(0, x - this.radius) / this.chunkSize; chunkX <= maxChunkX; chunkX++) {
+                int index = chunkY * this.chunksX + chunkX;
+                int count = this.counts[index] += delta;
+                if (count == 0 || count == delta) {
+                    changed++;
+                }
+            }
+        }
+        return changed;
+    }
+}
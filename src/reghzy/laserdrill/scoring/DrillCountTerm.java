@@ -0,0 +1,27 @@
+package reghzy.laserdrill.scoring;
+
+import reghzy.laserdrill.placement.Footprint;
+
+/**
+ * The number of drills, which is the layout's yield
+ */
+public class DrillCountTerm implements ScoreTerm {
+    @Override
+    public String getName() {
+        return "drills";
+    }
+
+    @Override
+    public void reset(int width, int height, Footprint footprint) {
+    }
+
+    @Override
+    public double added(int x, int y) {
+        return 1.0D;
+    }
+
+    @Override
+    public double removed(int x, int y) {
+        return -1.0D;
+    }
+}
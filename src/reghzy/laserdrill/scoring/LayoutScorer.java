@@ -0,0 +1,169 @@
+package reghzy.laserdrill.scoring;
+
+import reghzy.laserdrill.placement.Footprint;
+import reghzy.laserdrill.placement.PlacementEngine;
+import reghzy.laserdrill.placement.PlacementListener;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Scores a layout as the weighted sum of a set of {@link ScoreTerm}s, updating the score by delta as setups
+ * are added and removed instead of scoring the whole layout again
+ * <p>
+ * Attached to a {@link PlacementEngine}, the scorer scores the engine's current layout once and then
+ * follows every edit, including undo and redo, so an optimiser can try a move, read {@link #getScore()} and
+ * undo it at the cost of a few footprints. Without an engine, setups can be passed to
+ * {@link #setupAdded(int, int)} and {@link #setupRemoved(int, int)} directly, but nothing then checks they
+ * are valid, and every setup's footprint must fit in the grid
+ * </p>
+ * <p>
+ * Each term's value is kept separately and the score is summed when asked for, so weights can be changed
+ * at any time. Not thread safe, like the engine
+ * </p>
+ */
+public class LayoutScorer implements PlacementListener {
+    private final int width;
+    private final int height;
+    private final Footprint footprint;
+    private ScoreTerm[] terms = new ScoreTerm[0];
+    private double[] weights = new double[0];
+    private double[] values = new double[0];
+    private int setupCount;
+
+    public LayoutScorer(int width, int height, Footprint footprint) {
+        this.width = width;
+        this.height = height;
+        this.footprint = footprint;
+    }
+
+    /**
+     * Creates a scorer with every built in term: drills (weight 1), shared pre-chargers (0.5), beam length
+     * (-0.05) and chunks (-0.25). The weights are a starting point, rating a shared pre-charger as half a
+     * drill and a loaded chunk as a quarter of one
+     */
+    public static LayoutScorer createDefault(int width, int height, Footprint footprint) {
+        LayoutScorer scorer = new LayoutScorer(width, height, footprint);
+        scorer.addTerm(new DrillCountTerm(), 1.0D);
+        scorer.addTerm(new ChargerSharingTerm(), 0.5D);
+        scorer.addTerm(new BeamLengthTerm(), -0.05D);
+        scorer.addTerm(new ChunkCoverageTerm(), -0.25D);
+        return scorer;
+    }
+
+    /**
+     * Adds a term with the given weight
+     *
+     * @throws IllegalStateException If setups have already been scored, as the term would not know them
+     */
+    public void addTerm(ScoreTerm term, double weight) {
+        if (this.setupCount != 0) {
+            throw new IllegalStateException("Terms must be added before any setup is scored");
+        }
+
+        term.reset(this.width, this.height, this.footprint);
+        int index = this.terms.length;
+        this.terms = Arrays.copyOf(this.terms, index + 1);
+        this.weights = Arrays.copyOf(this.weights, index + 1);
+        this.values = Arrays.copyOf(this.values, index + 1);
+        this.terms[index] = term;
+        this.weights[index] = weight;
+    }
+
+    /**
+     * Scores the engine's current layout and then follows its edits until detached
+     *
+     * @throws IllegalArgumentException If the engine's grid or footprint differ from the scorer's
+     */
+    public void attach(PlacementEngine engine) {
+        if (engine.getWidth() != this.width || engine.getHeight() != this.height || !engine.getFootprint().hasSameCells(this.footprint)) {
+            throw new IllegalArgumentException("Engine's grid or footprint differs from the scorer's");
+        }
+
+        reset();
+        engine.forEach(this::setupAdded);
+        engine.addListener(this);
+    }
+
+    public void detach(PlacementEngine engine) {
+        engine.removeListener(this);
+    }
+
+    /**
+     * Forgets every setup, as for an empty grid
+     */
+    public void reset() {
+        for (int i = 0; i < this.terms.length; i++) {
+            this.terms[i].reset(this.width, this.height, this.footprint);
+            this.values[i] = 0.0D;
+        }
+        this.setupCount = 0;
+    }
+
+    @Override
+    public void setupAdded(int x, int y) {
+        for (int i = 0; i < this.values.length; i++) {
+            this.values[i] += this.terms[i].added(x, y);
+        }
+        this.setupCount++;
+    }
+
+    @Override
+    public void setupRemoved(int x, int y) {
+        for (int i = 0; i < this.values.length; i++) {
+            this.values[i] += this.terms[i].removed(x, y);
+        }
+        this.setupCount--;
+    }
+
+    /**
+     * Returns the weighted sum of every term's value
+     */
+    public double getScore() {
+        double score = 0.0D;
+        for (int i = 0; i < this.values.length; i++) {
+            score += this.weights[i] * this.values[i];
+        }
+        return score;
+    }
+
+    public int getTermCount() {
+        return this.terms.length;
+    }
+
+    public ScoreTerm getTerm(int index) {
+        return this.terms[index];
+    }
+
+    /**
+     * Returns the given term's value, before weighting
+     */
+    public double getValue(int index) {
+        return this.values[index];
+    }
+
+    public double getWeight(int index) {
+        return this.weights[index];
+    }
+
+    public void setWeight(int index, double weight) {
+        this.weights[index] = weight;
+    }
+
+    public int getSetupCount() {
+        return this.setupCount;
+    }
+
+    /**
+     * Returns the score followed by each term's name, value and weight, one per line
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(64 * (this.terms.length + 1));
+        builder.append(String.format(Locale.ROOT, "score %.2f", getScore()));
+        for (int i = 0; i < this.terms.length; i++) {
+            builder.append(String.format(Locale.ROOT, "%n  %-16s %12.2f x %.2f", this.terms[i].getName(), this.values[i], this.weights[i]));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,33 @@
+package reghzy.laserdrill.scoring;
+
+import reghzy.laserdrill.placement.Footprint;
+
+/**
+ * One measure of a layout, kept up to date by a {@link LayoutScorer} one setup at a time
+ * <p>
+ * A term holds whatever state it needs to work out the change a single setup makes (per cell or per chunk
+ * counts, for example), so adding or removing a setup costs about as much as its footprint, however large
+ * the layout is. A term belongs to one scorer
+ * </p>
+ */
+public interface ScoreTerm {
+    /**
+     * Returns the name the term is reported under
+     */
+    String getName();
+
+    /**
+     * Clears the term's state for an empty grid of the given size, whose setups all use the given footprint
+     */
+    void reset(int width, int height, Footprint footprint);
+
+    /**
+     * Called once a setup has been added at the given location, returning how much the term's value changed
+     */
+    double added(int x, int y);
+
+    /**
+     * Called once the setup at the given location has been removed, returning how much the term's value changed
+     */
+    double removed(int x, int y);
+}
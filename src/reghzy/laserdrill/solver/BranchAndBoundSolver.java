@@ -0,0 +1,514 @@
+package reghzy.laserdrill.solver;
+
+import reghzy.laserdrill.metrics.SolverMetrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds the largest possible number of setups for a {@link PlacementProblem}, and proves it
+ * <p>
+ * Each connected component of the {@link ConflictGraph} is searched on its own. A search node first applies
+ * the usual independent set reductions (a vertex with no or one free neighbour is always part of some
+ * maximum set), then prunes if the node cannot beat the best set found so far, and otherwise branches on the
+ * free vertex with the most free neighbours: once including it, once excluding it
+ * </p>
+ * <p>
+ * The bound is the number of free vertices minus a matching over them, since each matched pair can hold at
+ * most one drill. When a component is bipartite (as it is for the default footprint) a maximum matching is
+ * used, which by Konig's theorem makes the bound exact, so the search goes almost straight to an optimum
+ * </p>
+ * <p>
+ * Include branches near the root are forked onto a {@link ForkJoinPool}, and components are searched in parallel
+ * </p>
+ * <p>
+ * Metrics: candidates are the graph's vertices, nodes the search nodes expanded and prunes the nodes cut by
+ * the bound. The best layout is the union of each component's best so far, offered at most every 100 ms.
+ * Progress is the share of vertices in components whose search has finished.
+ * The stop request is checked at every node, and a stopped solve returns the union of the incumbents, which
+ * is valid but no longer proven optimal
+ * </p>
+ */
+public class BranchAndBoundSolver implements Solver {
+    /**
+     * Include branches are forked up to this depth, below that the search carries on in the same task
+     */
+    private static final int ForkDepth = 12;
+    /**
+     * The least time between two intermediate layouts offered to the control, as building one visits every
+     * vertex
+     */
+    private static final long OfferIntervalNanos = 100000000L;
+
+    private final ForkJoinPool pool;
+
+    public BranchAndBoundSolver() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public BranchAndBoundSolver(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public Layout solve(PlacementProblem problem) {
+        return solve(problem, new SolveControl());
+    }
+
+    @Override
+    public Layout solve(PlacementProblem problem, SolveControl control) {
+        ConflictGraph graph;
+        SolverMetrics.Phase phase = control.getMetrics().beginPhase("graph");
+        try {
+            graph = ConflictGraph.build(problem);
+        }
+        finally {
+            phase.close();
+        }
+
+        Layout layout = toLayout(problem, graph, solve(graph, control, problem));
+        control.offer(layout);
+        return layout;
+    }
+
+    private static Layout toLayout(PlacementProblem problem, ConflictGraph graph, int[] chosen) {
+        int[] xs = new int[chosen.length];
+        int[] ys = new int[chosen.length];
+        for (int i = 0; i < chosen.length; i++) {
+            xs[i] = graph.xs[chosen[i]];
+            ys[i] = graph.ys[chosen[i]];
+        }
+        return new Layout(problem.width, problem.height, xs, ys);
+    }
+
+    /**
+     * Returns the vertices of a maximum independent set of the given graph, in ascending order
+     */
+    public int[] solve(ConflictGraph graph) {
+        return solve(graph, new SolveControl(), null);
+    }
+
+    /**
+     * Returns the vertices of a maximum independent set of the given graph, or if the control stops the
+     * search early, of the best independent set found so far
+     */
+    public int[] solve(ConflictGraph graph, SolveControl control) {
+        return solve(graph, control, null);
+    }
+
+    /**
+     * @param problem The problem the graph was built from, to offer intermediate layouts of, or null to only
+     *                record the best count
+     */
+    private int[] solve(ConflictGraph graph, SolveControl control, PlacementProblem problem) {
+        SolverMetrics metrics = control.getMetrics();
+        metrics.addCandidates(graph.getVertexCount());
+        int[][] components = graph.getComponents();
+        int[] globalToLocal = new int[graph.getVertexCount()];
+
+        final Search search = new Search(graph, control, problem, components.length);
+        for (int[] vertices : components) {
+            search.components.add(new Component(graph, vertices, globalToLocal, search));
+        }
+
+        SolverMetrics.Phase phase = metrics.beginPhase("search");
+        try {
+            this.pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    ArrayList<SearchTask> tasks = new ArrayList<SearchTask>(search.components.size());
+                    for (Component component : search.components) {
+                        tasks.add(component.createRootTask());
+                    }
+                    search.improved(0);
+                    invokeAll(tasks);
+                }
+            });
+        }
+        finally {
+            phase.close();
+        }
+        return search.getChosen();
+    }
+
+    /**
+     * The state shared by the searches of every component: the control, and what is reported to it
+     */
+    private static class Search {
+        private final ConflictGraph graph;
+        private final SolveControl control;
+        private final PlacementProblem problem;
+        private final ArrayList<Component> components;
+        // The sum of every component's best
+        private final AtomicInteger total = new AtomicInteger();
+        private final AtomicInteger finishedVertices = new AtomicInteger();
+        private long lastOfferNanos;
+
+        private Search(ConflictGraph graph, SolveControl control, PlacementProblem problem, int componentCount) {
+            this.graph = graph;
+            this.control = control;
+            this.problem = problem;
+            this.components = new ArrayList<Component>(componentCount);
+        }
+
+        /**
+         * Called when a component's best grows by the given amount
+         */
+        private void improved(int delta) {
+            int total = this.total.addAndGet(delta);
+            if (this.problem == null) {
+                this.control.getMetrics().recordBest(total);
+                return;
+            }
+
+            synchronized (this) {
+                long now = System.nanoTime();
+                if (this.lastOfferNanos != 0 && now - this.lastOfferNanos < OfferIntervalNanos) {
+                    return;
+                }
+                this.lastOfferNanos = now;
+            }
+            this.control.offer(toLayout(this.problem, this.graph, getChosen()));
+        }
+
+        private void finished(Component component) {
+            int vertices = this.finishedVertices.addAndGet(component.size);
+            this.control.setProgress((double) vertices / this.graph.getVertexCount());
+        }
+
+        /**
+         * Returns the union of every component's best, in ascending order
+         */
+        private int[] getChosen() {
+            int[] vertices = new int[this.graph.getVertexCount()];
+            int index = 0;
+            for (Component component : this.components) {
+                long[] chosen = component.bestChosen;
+                for (int local = 0; chosen != null && local < component.size; local++) {
+                    if (getBit(chosen, local)) {
+                        vertices[index++] = component.vertices[local];
+                    }
+                }
+            }
+            vertices = Arrays.copyOf(vertices, index);
+            Arrays.sort(vertices);
+            return vertices;
+        }
+    }
+
+    /**
+     * One connected component of the conflict graph, renumbered from 0 so its vertex sets fit in small bitsets
+     */
+    private static class Component {
+        private final int[] vertices;
+        private final int size;
+        private final int words;
+        private final int[] offsets;
+        private final int[] adjacency;
+        private final boolean[] left;
+        private final AtomicInteger best = new AtomicInteger();
+        private volatile long[] bestChosen;
+        private final Search search;
+
+        private Component(ConflictGraph graph, int[] vertices, int[] globalToLocal, Search search) {
+            this.search = search;
+            this.vertices = vertices;
+            this.size = vertices.length;
+            this.words = (this.size + 63) >>> 6;
+            for (int local = 0; local < this.size; local++) {
+                globalToLocal[vertices[local]] = local;
+            }
+
+            this.offsets = new int[this.size + 1];
+            int edgeCount = 0;
+            for (int local = 0; local < this.size; local++) {
+                edgeCount += graph.getDegree(vertices[local]);
+            }
+
+            this.adjacency = new int[edgeCount];
+            edgeCount = 0;
+            for (int local = 0; local < this.size; local++) {
+                this.offsets[local] = edgeCount;
+                int vertex = vertices[local];
+                for (int i = graph.offsets[vertex]; i < graph.offsets[vertex + 1]; i++) {
+                    this.adjacency[edgeCount++] = globalToLocal[graph.adjacency[i]];
+                }
+            }
+            this.offsets[this.size] = edgeCount;
+
+            boolean[] colour = graph.getBipartition(vertices);
+            if (colour == null) {
+                this.left = null;
+            }
+            else {
+                this.left = new boolean[this.size];
+                for (int local = 0; local < this.size; local++) {
+                    this.left[local] = colour[vertices[local]];
+                }
+            }
+        }
+
+        private SearchTask createRootTask() {
+            long[] free = new long[this.words];
+            for (int v = 0; v < this.size; v++) {
+                setBit(free, v);
+            }
+
+            // Prime the incumbent with a scan order greedy pass, which is already optimal on plain grids
+            long[] greedyFree = free.clone();
+            long[] greedyChosen = new long[this.words];
+            int greedyCount = 0;
+            for (int v = 0; v < this.size; v++) {
+                if (getBit(greedyFree, v)) {
+                    select(greedyFree, greedyChosen, v);
+                    greedyCount++;
+                }
+            }
+            this.best.set(greedyCount);
+            this.bestChosen = greedyChosen;
+            this.search.total.addAndGet(greedyCount);
+
+            return new SearchTask(this, free, new long[this.words], 0, 0);
+        }
+
+        private void select(long[] free, long[] chosen, int v) {
+            clearBit(free, v);
+            setBit(chosen, v);
+            for (int i = this.offsets[v]; i < this.offsets[v + 1]; i++) {
+                clearBit(free, this.adjacency[i]);
+            }
+        }
+
+        private int getFreeDegree(long[] free, int v) {
+            int degree = 0;
+            for (int i = this.offsets[v]; i < this.offsets[v + 1]; i++) {
+                if (getBit(free, this.adjacency[i])) {
+                    degree++;
+                }
+            }
+            return degree;
+        }
+
+        private synchronized void offer(long[] chosen, int count) {
+            int previous = this.best.get();
+            if (count > previous) {
+                this.bestChosen = chosen.clone();
+                this.best.set(count);
+                this.search.improved(count - previous);
+            }
+        }
+
+        /**
+         * Repeatedly selects free vertices with at most one free neighbour, returning how many were selected
+         */
+        private int reduce(long[] free, long[] chosen) {
+            int selected = 0;
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (int word = 0; word < this.words; word++) {
+                    long bits = free[word];
+                    while (bits != 0) {
+                        int v = (word << 6) + Long.numberOfTrailingZeros(bits);
+                        bits &= bits - 1;
+                        if (getBit(free, v) && getFreeDegree(free, v) <= 1) {
+                            select(free, chosen, v);
+                            selected++;
+                            changed = true;
+                        }
+                    }
+                }
+            }
+            return selected;
+        }
+
+        private int getUpperBound(long[] free, int freeCount) {
+            return freeCount - (this.left != null ? getMaximumMatching(free) : getGreedyMatching(free));
+        }
+
+        private int getGreedyMatching(long[] free) {
+            long[] unmatched = free.clone();
+            int matching = 0;
+            for (int v = 0; v < this.size; v++) {
+                if (!getBit(unmatched, v)) {
+                    continue;
+                }
+
+                for (int i = this.offsets[v]; i < this.offsets[v + 1]; i++) {
+                    int u = this.adjacency[i];
+                    if (getBit(unmatched, u)) {
+                        clearBit(unmatched, v);
+                        clearBit(unmatched, u);
+                        matching++;
+                        break;
+                    }
+                }
+            }
+            return matching;
+        }
+
+        /**
+         * Kuhn's augmenting path algorithm over the free vertices, from the left side of the bipartition
+         */
+        private int getMaximumMatching(long[] free) {
+            int[] match = new int[this.size];
+            Arrays.fill(match, -1);
+            int[] visited = new int[this.size];
+            int matching = 0;
+            int stamp = 0;
+            for (int v = 0; v < this.size; v++) {
+                if (!this.left[v] || !getBit(free, v)) {
+                    continue;
+                }
+
+                stamp++;
+                if (augment(free, match, visited, stamp, v)) {
+                    matching++;
+                }
+            }
+            return matching;
+        }
+
+        private boolean augment(long[] free, int[] match, int[] visited, int stamp, int v) {
+            for (int i = this.offsets[v]; i < this.offsets[v + 1]; i++) {
+                int u = this.adjacency[i];
+                if (!getBit(free, u) || visited[u] == stamp) {
+                    continue;
+                }
+
+                visited[u] = stamp;
+                if (match[u] == -1 || augment(free, match, visited, stamp, match[u])) {
+                    match[u] = v;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private int pickBranchVertex(long[] free) {
+            int bestVertex = -1;
+            int bestDegree = -1;
+            for (int word = 0; word < this.words; word++) {
+                long bits = free[word];
+                while (bits != 0) {
+                    int v = (word << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    int degree = getFreeDegree(free, v);
+                    if (degree > bestDegree) {
+                        bestDegree = degree;
+                        bestVertex = v;
+                    }
+                }
+            }
+            return bestVertex;
+        }
+    }
+
+    private static class SearchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Component component;
+        private final long[] free;
+        private final long[] chosen;
+        private final int count;
+        private final int depth;
+
+        private SearchTask(Component component, long[] free, long[] chosen, int count, int depth) {
+            this.component = component;
+            this.free = free;
+            this.chosen = chosen;
+            this.count = count;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            search(this.free, this.chosen, this.count, this.depth);
+            if (this.depth == 0) {
+                // Only the root task of a component starts at depth 0, and it joins every task it forked
+                this.component.search.finished(this.component);
+            }
+        }
+
+        /**
+         * Searches the node described by the given (owned, so freely modified) sets. The exclude branch
+         * is followed by looping rather than recursing, which keeps the stack as deep as the include chain
+         */
+        private void search(long[] free, long[] chosen, int count, int depth) {
+            Component component = this.component;
+            ArrayList<SearchTask> forked = null;
+            long nodes = 0;
+            long prunes = 0;
+            SolveControl control = component.search.control;
+            while (true) {
+                if (control.isStopped()) {
+                    break;
+                }
+
+                nodes++;
+                count += component.reduce(free, chosen);
+                int freeCount = bitCount(free);
+                if (freeCount == 0) {
+                    component.offer(chosen, count);
+                    break;
+                }
+
+                if (count + component.getUpperBound(free, freeCount) <= component.best.get()) {
+                    prunes++;
+                    break;
+                }
+
+                int v = component.pickBranchVertex(free);
+                long[] includeFree = free.clone();
+                long[] includeChosen = chosen.clone();
+                component.select(includeFree, includeChosen, v);
+                if (depth < ForkDepth) {
+                    SearchTask task = new SearchTask(component, includeFree, includeChosen, count + 1, depth + 1);
+                    task.fork();
+                    if (forked == null) {
+                        forked = new ArrayList<SearchTask>();
+                    }
+                    forked.add(task);
+                }
+                else {
+                    search(includeFree, includeChosen, count + 1, depth + 1);
+                }
+
+                clearBit(free, v);
+                depth++;
+            }
+
+            control.getMetrics().addNodes(nodes);
+            control.getMetrics().addPrunes(prunes);
+
+            if (forked != null) {
+                for (SearchTask task : forked) {
+                    task.join();
+                }
+            }
+        }
+    }
+
+    private static int bitCount(long[] bits) {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    private static boolean getBit(long[] bits, int index) {
+        return ((bits[index >>> 6] >>> (index & 63)) & 1L) != 0;
+    }
+
+    private static void setBit(long[] bits, int index) {
+        bits[index >>> 6] |= 1L << (index & 63);
+    }
+
+    private static void clearBit(long[] bits, int index) {
+        bits[index >>> 6] &= ~(1L << (index & 63));
+    }
+}
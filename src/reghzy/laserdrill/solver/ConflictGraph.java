@@ -0,0 +1,220 @@
+package reghzy.laserdrill.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The graph of every candidate drill location in a {@link PlacementProblem}, with an edge between each pair
+ * of locations that conflict. A valid layout is an independent set of this graph
+ * <p>
+ * Adjacency is stored in compressed rows: the neighbours of vertex v are
+ * {@code adjacency[offsets[v]] .. adjacency[offsets[v + 1] - 1]}
+ * </p>
+ */
+public class ConflictGraph {
+    public final int[] xs;
+    public final int[] ys;
+    public final int[] offsets;
+    public final int[] adjacency;
+
+    private ConflictGraph(int[] xs, int[] ys, int[] offsets, int[] adjacency) {
+        this.xs = xs;
+        this.ys = ys;
+        this.offsets = offsets;
+        this.adjacency = adjacency;
+    }
+
+    public static ConflictGraph build(PlacementProblem problem) {
+        int[] cellToVertex = new int[problem.width * problem.height];
+        Arrays.fill(cellToVertex, -1);
+
+        int count = 0;
+        for (int y = 0; y < problem.height; y++) {
+            for (int x = 0; x < problem.width; x++) {
+                if (problem.isCandidate(x, y)) {
+                    cellToVertex[y * problem.width + x] = count++;
+                }
+            }
+        }
+
+        int[] xs = new int[count];
+        int[] ys = new int[count];
+        for (int y = 0; y < problem.height; y++) {
+            for (int x = 0; x < problem.width; x++) {
+                int vertex = cellToVertex[y * problem.width + x];
+                if (vertex != -1) {
+                    xs[vertex] = x;
+                    ys[vertex] = y;
+                }
+            }
+        }
+
+        ArrayList<int[]> conflictOffsets = getConflictOffsets(problem);
+        int[] offsets = new int[count + 1];
+        int[] adjacency = new int[count * conflictOffsets.size()];
+        int edgeCount = 0;
+        for (int v = 0; v < count; v++) {
+            offsets[v] = edgeCount;
+            for (int[] offset : conflictOffsets) {
+                int x = xs[v] + offset[0];
+                int y = ys[v] + offset[1];
+                if (x >= 0 && y >= 0 && x < problem.width && y < problem.height) {
+                    int neighbour = cellToVertex[y * problem.width + x];
+                    if (neighbour != -1) {
+                        adjacency[edgeCount++] = neighbour;
+                    }
+                }
+            }
+        }
+        offsets[count] = edgeCount;
+
+        return new ConflictGraph(xs, ys, offsets, Arrays.copyOf(adjacency, edgeCount));
+    }
+
+    /**
+     * Builds the graph of a periodX by periodY torus, where every conflict offset wraps around the edges.
+     * If the footprint wraps onto its own solid cells, no cell can hold a drill and the graph is empty.
+     * An independent set of this graph repeated across the plane is a valid (periodic) layout
+     */
+    public static ConflictGraph buildTorus(PlacementProblem problem, int periodX, int periodY) {
+        ArrayList<int[]> conflictOffsets = getConflictOffsets(problem);
+        boolean selfConflict = false;
+        for (int[] offset : conflictOffsets) {
+            if (Math.floorMod(offset[0], periodX) == 0 && Math.floorMod(offset[1], periodY) == 0) {
+                selfConflict = true;
+                break;
+            }
+        }
+
+        int cells = periodX * periodY;
+        int[] cellToVertex = new int[cells];
+        int count = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            cellToVertex[cell] = selfConflict ? -1 : count++;
+        }
+
+        int[] xs = new int[count];
+        int[] ys = new int[count];
+        for (int cell = 0; cell < cells; cell++) {
+            int vertex = cellToVertex[cell];
+            if (vertex != -1) {
+                xs[vertex] = cell % periodX;
+                ys[vertex] = cell / periodX;
+            }
+        }
+
+        int[] offsets = new int[count + 1];
+        int[] adjacency = new int[count * conflictOffsets.size()];
+        int edgeCount = 0;
+        for (int v = 0; v < count; v++) {
+            offsets[v] = edgeCount;
+            for (int[] offset : conflictOffsets) {
+                int x = Math.floorMod(xs[v] + offset[0], periodX);
+                int y = Math.floorMod(ys[v] + offset[1], periodY);
+                int neighbour = cellToVertex[y * periodX + x];
+                boolean duplicate = neighbour == -1;
+                for (int i = offsets[v]; i < edgeCount && !duplicate; i++) {
+                    duplicate = adjacency[i] == neighbour;
+                }
+                if (!duplicate) {
+                    adjacency[edgeCount++] = neighbour;
+                }
+            }
+        }
+        offsets[count] = edgeCount;
+
+        return new ConflictGraph(xs, ys, offsets, Arrays.copyOf(adjacency, edgeCount));
+    }
+
+    private static ArrayList<int[]> getConflictOffsets(PlacementProblem problem) {
+        int radius = problem.footprint.radius;
+        ArrayList<int[]> conflictOffsets = new ArrayList<int[]>();
+        for (int dy = -radius; dy <= radius; dy++) {
+            for (int dx = -radius; dx <= radius; dx++) {
+                if ((dx != 0 || dy != 0) && problem.conflicts(dx, dy)) {
+                    conflictOffsets.add(new int[] {dx, dy});
+                }
+            }
+        }
+        return conflictOffsets;
+    }
+
+    public int getVertexCount() {
+        return this.xs.length;
+    }
+
+    public int getDegree(int vertex) {
+        return this.offsets[vertex + 1] - this.offsets[vertex];
+    }
+
+    /**
+     * Splits the vertices into connected components, each sorted in ascending order
+     */
+    public int[][] getComponents() {
+        int count = getVertexCount();
+        boolean[] visited = new boolean[count];
+        int[] stack = new int[count];
+        ArrayList<int[]> components = new ArrayList<int[]>();
+        for (int start = 0; start < count; start++) {
+            if (visited[start]) {
+                continue;
+            }
+
+            int[] component = new int[count];
+            int size = 0;
+            int top = 0;
+            stack[top++] = start;
+            visited[start] = true;
+            while (top > 0) {
+                int v = stack[--top];
+                component[size++] = v;
+                for (int i = this.offsets[v]; i < this.offsets[v + 1]; i++) {
+                    int u = this.adjacency[i];
+                    if (!visited[u]) {
+                        visited[u] = true;
+                        stack[top++] = u;
+                    }
+                }
+            }
+
+            component = Arrays.copyOf(component, size);
+            Arrays.sort(component);
+            components.add(component);
+        }
+        return components.toArray(new int[0][]);
+    }
+
+    /**
+     * Two-colours the given vertices, returning null if they contain an odd cycle. Each vertex's
+     * colour is stored at its own index of the returned array
+     */
+    public boolean[] getBipartition(int[] vertices) {
+        boolean[] colour = new boolean[getVertexCount()];
+        boolean[] coloured = new boolean[getVertexCount()];
+        int[] stack = new int[getVertexCount()];
+        for (int start : vertices) {
+            if (coloured[start]) {
+                continue;
+            }
+
+            int top = 0;
+            stack[top++] = start;
+            coloured[start] = true;
+            while (top > 0) {
+                int v = stack[--top];
+                for (int i = this.offsets[v]; i < this.offsets[v + 1]; i++) {
+                    int u = this.adjacency[i];
+                    if (!coloured[u]) {
+                        coloured[u] = true;
+                        colour[u] = !colour[v];
+                        stack[top++] = u;
+                    }
+                    else if (colour[u] == colour[v]) {
+                        return null;
+                    }
+                }
+            }
+        }
+        return colour;
+    }
+}
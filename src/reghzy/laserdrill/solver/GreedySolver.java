@@ -0,0 +1,116 @@
+package reghzy.laserdrill.solver;
+
+import reghzy.laserdrill.metrics.SolverMetrics;
+import reghzy.laserdrill.placement.OccupancyGrid;
+
+import java.util.Arrays;
+
+/**
+ * Visits every cell once and places a drill wherever one still fits. By default the grid is swept column by
+ * column, see {@link PlacementOrder} for the other orders
+ * <p>
+ * Both directions of the conflict are checked, since a footprint that is not symmetric (see SetupShape) can
+ * put a solid cell on a drill that was placed earlier in the sweep
+ * </p>
+ * <p>
+ * Metrics: candidates are the cells visited, checks the occupancy checks of the cells a drill could go on.
+ * Progress is the share of cells visited, and a stopped solve returns the drills placed so far
+ * </p>
+ */
+public class GreedySolver implements Solver {
+    /**
+     * The stop request and progress are checked once every this many cells, plus one (a power of two)
+     */
+    private static final int CheckMask = (1 << 12) - 1;
+
+    private final PlacementOrder order;
+    private final long seed;
+
+    public GreedySolver() {
+        this(PlacementOrder.SWEEP, 0L);
+    }
+
+    /**
+     * @param seed The seed of the shuffle, only used by {@link PlacementOrder#RANDOM}
+     */
+    public GreedySolver(PlacementOrder order, long seed) {
+        this.order = order;
+        this.seed = seed;
+    }
+
+    public PlacementOrder getOrder() {
+        return this.order;
+    }
+
+    @Override
+    public Layout solve(PlacementProblem problem) {
+        return solve(problem, new SolveControl());
+    }
+
+    @Override
+    public Layout solve(PlacementProblem problem, SolveControl control) {
+        SolverMetrics metrics = control.getMetrics();
+        int[] cells = null;
+        if (this.order != PlacementOrder.SWEEP) {
+            SolverMetrics.Phase phase = metrics.beginPhase("order");
+            try {
+                cells = this.order.getCells(problem, this.seed);
+            }
+            finally {
+                phase.close();
+            }
+        }
+
+        // The sweep is walked directly rather than listed, as it is the order used for the largest grids
+        int total = cells != null ? cells.length : problem.width * problem.height;
+        int[] xs = new int[16];
+        int[] ys = new int[16];
+        int count = 0;
+        long checks = 0;
+        int i = 0;
+        SolverMetrics.Phase phase = metrics.beginPhase("place");
+        try {
+            OccupancyGrid occupancy = new OccupancyGrid(problem.width, problem.height);
+            long[] solidRows = problem.footprint.solidRows;
+            int radius = problem.footprint.radius;
+            for (; i < total; i++) {
+                if ((i & CheckMask) == CheckMask) {
+                    if (control.isStopped()) {
+                        break;
+                    }
+                    control.setProgress((double) i / total);
+                }
+
+                int x = cells != null ? cells[i] % problem.width : i / problem.height;
+                int y = cells != null ? cells[i] / problem.width : i % problem.height;
+                if (!problem.isCandidate(x, y)) {
+                    continue;
+                }
+
+                checks++;
+                if (occupancy.canPlace(x, y) && !occupancy.intersectsDrill(solidRows, radius, x, y)) {
+                    occupancy.place(problem.footprint, x, y);
+                    if (count == xs.length) {
+                        xs = Arrays.copyOf(xs, count * 2);
+                        ys = Arrays.copyOf(ys, count * 2);
+                    }
+                    xs[count] = x;
+                    ys[count] = y;
+                    count++;
+                }
+            }
+        }
+        finally {
+            metrics.addCandidates(i);
+            metrics.addChecks(checks);
+            phase.close();
+        }
+
+        Layout layout = new Layout(problem.width, problem.height, Arrays.copyOf(xs, count), Arrays.copyOf(ys, count));
+        if (i == total) {
+            control.setProgress(1.0D);
+        }
+        control.offer(layout);
+        return layout;
+    }
+}
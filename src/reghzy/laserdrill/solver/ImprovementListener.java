@@ -0,0 +1,11 @@
+package reghzy.laserdrill.solver;
+
+/**
+ * Notified whenever an anytime solver finds a layout with more drills than any before it
+ */
+public interface ImprovementListener {
+    /**
+     * Called from the solver's threads, one call at a time. The layout is never modified afterwards
+     */
+    void layoutImproved(Layout layout);
+}
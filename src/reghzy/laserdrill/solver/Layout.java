@@ -0,0 +1,57 @@
+package reghzy.laserdrill.solver;
+
+import reghzy.laserdrill.LaserDrillSetup;
+import reghzy.laserdrill.placement.Footprint;
+
+import java.util.ArrayList;
+
+/**
+ * The drill locations a solver placed on a grid
+ */
+public class Layout {
+    public final int width;
+    public final int height;
+    private final int[] xs;
+    private final int[] ys;
+
+    public Layout(int width, int height, int[] xs, int[] ys) {
+        if (xs.length != ys.length) {
+            throw new IllegalArgumentException("Coordinate arrays differ in length (" + xs.length + " and " + ys.length + ")");
+        }
+
+        this.width = width;
+        this.height = height;
+        this.xs = xs;
+        this.ys = ys;
+    }
+
+    public int size() {
+        return this.xs.length;
+    }
+
+    public int getX(int index) {
+        return this.xs[index];
+    }
+
+    public int getY(int index) {
+        return this.ys[index];
+    }
+
+    /**
+     * Builds a setup for every drill in this layout, for rendering
+     */
+    public ArrayList<LaserDrillSetup> toSetups() {
+        return toSetups(Footprint.LASER_DRILL);
+    }
+
+    /**
+     * Builds a setup with the given footprint for every drill in this layout
+     */
+    public ArrayList<LaserDrillSetup> toSetups(Footprint footprint) {
+        ArrayList<LaserDrillSetup> setups = new ArrayList<LaserDrillSetup>(this.xs.length);
+        for (int i = 0; i < this.xs.length; i++) {
+            setups.add(new LaserDrillSetup(this.xs[i], this.ys[i], footprint));
+        }
+        return setups;
+    }
+}
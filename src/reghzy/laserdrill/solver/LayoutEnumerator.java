@@ -0,0 +1,396 @@
+package reghzy.laserdrill.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Lists every layout with the most drills a {@link PlacementProblem} allows, one per symmetry class
+ * <p>
+ * The optimum is found first with the {@link BranchAndBoundSolver}. The enumeration then walks the candidate
+ * cells in row order, deciding for each free one whether it holds a drill, and prunes any node that can no
+ * longer reach the optimum (the same free-vertices-minus-matching bound the solver uses)
+ * </p>
+ * <p>
+ * The symmetries are the flips and rotations of the grid (eight on a square grid, four otherwise) that map
+ * the conflict graph onto itself, so a footprint or mask without that symmetry simply rules it out. Only the
+ * lex leader of each class is kept: the layout whose cells, read in row order, are greatest under every
+ * symmetry. A node is pruned as soon as the cells decided so far show some symmetry maps it to something
+ * greater, so each class is only searched once, which is up to eight times less work on a square grid
+ * </p>
+ */
+public class LayoutEnumerator {
+    private final int limit;
+
+    /**
+     * @param limit The most layouts to list before stopping, since the count grows quickly with the grid
+     */
+    public LayoutEnumerator(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be at least 1 (was " + limit + ")");
+        }
+        this.limit = limit;
+    }
+
+    public Result enumerate(PlacementProblem problem) {
+        ConflictGraph graph = ConflictGraph.build(problem);
+        int optimum = new BranchAndBoundSolver().solve(graph).length;
+        Search search = new Search(problem, graph, getSymmetries(problem, graph), optimum, this.limit);
+        search.search(0, 0);
+        return new Result(optimum, search.layouts, search.orbitSizes, search.symmetries.length, search.nodes, !search.limited);
+    }
+
+    public static class Result {
+        /**
+         * The most drills any layout can hold
+         */
+        public final int optimum;
+        private final List<Layout> layouts;
+        private final int[] orbitSizes;
+        private final int symmetryCount;
+        private final long nodeCount;
+        private final boolean complete;
+
+        private Result(int optimum, ArrayList<Layout> layouts, int[] orbitSizes, int symmetryCount, long nodeCount, boolean complete) {
+            this.optimum = optimum;
+            this.layouts = Collections.unmodifiableList(layouts);
+            this.orbitSizes = Arrays.copyOf(orbitSizes, layouts.size());
+            this.symmetryCount = symmetryCount;
+            this.nodeCount = nodeCount;
+            this.complete = complete;
+        }
+
+        /**
+         * Returns one layout of each symmetry class, in the order they were found
+         */
+        public List<Layout> getLayouts() {
+            return this.layouts;
+        }
+
+        /**
+         * Returns the number of distinct layouts the given class's layout can be flipped or rotated into,
+         * including itself
+         */
+        public int getOrbitSize(int index) {
+            return this.orbitSizes[index];
+        }
+
+        /**
+         * Returns the number of distinct optimal layouts covered by the listed classes
+         */
+        public long getTotalLayouts() {
+            long total = 0;
+            for (int size : this.orbitSizes) {
+                total += size;
+            }
+            return total;
+        }
+
+        /**
+         * Returns the number of symmetries used, including the identity
+         */
+        public int getSymmetryCount() {
+            return this.symmetryCount;
+        }
+
+        public long getNodeCount() {
+            return this.nodeCount;
+        }
+
+        /**
+         * Returns false if the limit was reached before every class was listed
+         */
+        public boolean isComplete() {
+            return this.complete;
+        }
+    }
+
+    /**
+     * Returns the vertex permutation of every flip and rotation of the grid that is an automorphism of the
+     * conflict graph, starting with the identity
+     */
+    private static int[][] getSymmetries(PlacementProblem problem, ConflictGraph graph) {
+        int count = graph.getVertexCount();
+        int[] cellToVertex = new int[problem.width * problem.height];
+        Arrays.fill(cellToVertex, -1);
+        for (int v = 0; v < count; v++) {
+            cellToVertex[graph.ys[v] * problem.width + graph.xs[v]] = v;
+        }
+
+        boolean square = problem.width == problem.height;
+        ArrayList<int[]> symmetries = new ArrayList<int[]>(8);
+        for (int transform = 0; transform < 8; transform++) {
+            boolean swap = (transform & 4) != 0;
+            if (swap && !square) {
+                continue;
+            }
+
+            int[] permutation = new int[count];
+            boolean valid = true;
+            for (int v = 0; v < count && valid; v++) {
+                int x = graph.xs[v];
+                int y = graph.ys[v];
+                if ((transform & 1) != 0) {
+                    x = problem.width - 1 - x;
+                }
+                if ((transform & 2) != 0) {
+                    y = problem.height - 1 - y;
+                }
+                if (swap) {
+                    int temp = x;
+                    x = y;
+                    y = temp;
+                }
+
+                permutation[v] = cellToVertex[y * problem.width + x];
+                valid = permutation[v] != -1;
+            }
+
+            if (valid && preservesEdges(graph, permutation)) {
+                symmetries.add(permutation);
+            }
+        }
+        return symmetries.toArray(new int[0][]);
+    }
+
+    private static boolean preservesEdges(ConflictGraph graph, int[] permutation) {
+        for (int v = 0; v < graph.getVertexCount(); v++) {
+            int image = permutation[v];
+            if (graph.getDegree(image) != graph.getDegree(v)) {
+                return false;
+            }
+
+            for (int i = graph.offsets[v]; i < graph.offsets[v + 1]; i++) {
+                int neighbour = permutation[graph.adjacency[i]];
+                boolean found = false;
+                for (int j = graph.offsets[image]; j < graph.offsets[image + 1] && !found; j++) {
+                    found = graph.adjacency[j] == neighbour;
+                }
+                if (!found) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static class Search {
+        private final PlacementProblem problem;
+        private final ConflictGraph graph;
+        private final int[][] symmetries;
+        private final int[][] inverses;
+        private final int optimum;
+        private final int limit;
+        private final int size;
+        private final boolean[] left;
+        private final boolean[] chosen;
+        // The number of chosen neighbours of each vertex, a vertex is free while this is 0
+        private final int[] blockers;
+        private final int[] match;
+        private final int[] visited;
+        private int stamp;
+        private final ArrayList<Layout> layouts = new ArrayList<Layout>();
+        private int[] orbitSizes = new int[16];
+        private long nodes;
+        private boolean limited;
+
+        private Search(PlacementProblem problem, ConflictGraph graph, int[][] symmetries, int optimum, int limit) {
+            this.problem = problem;
+            this.graph = graph;
+            this.symmetries = symmetries;
+            this.optimum = optimum;
+            this.limit = limit;
+            this.size = graph.getVertexCount();
+            this.chosen = new boolean[this.size];
+            this.blockers = new int[this.size];
+            this.match = new int[this.size];
+            this.visited = new int[this.size];
+
+            this.inverses = new int[symmetries.length][this.size];
+            for (int g = 0; g < symmetries.length; g++) {
+                for (int v = 0; v < this.size; v++) {
+                    this.inverses[g][symmetries[g][v]] = v;
+                }
+            }
+
+            int[] all = new int[this.size];
+            for (int v = 0; v < this.size; v++) {
+                all[v] = v;
+            }
+            this.left = graph.getBipartition(all);
+        }
+
+        /**
+         * Decides the vertices from the given one onwards, every vertex before it already being decided
+         */
+        private void search(int vertex, int count) {
+            if (this.limited) {
+                return;
+            }
+
+            this.nodes++;
+            if (count == this.optimum) {
+                // Nothing more can be added, so every undecided vertex is left out
+                if (isCanonical(this.size)) {
+                    emit();
+                }
+                return;
+            }
+
+            while (vertex < this.size && this.blockers[vertex] != 0) {
+                vertex++;
+            }
+            if (vertex == this.size || count + getUpperBound(vertex) < this.optimum || !isCanonical(vertex)) {
+                return;
+            }
+
+            select(vertex, true);
+            search(vertex + 1, count + 1);
+            select(vertex, false);
+            search(vertex + 1, count);
+        }
+
+        private void select(int vertex, boolean include) {
+            this.chosen[vertex] = include;
+            int change = include ? 1 : -1;
+            for (int i = this.graph.offsets[vertex]; i < this.graph.offsets[vertex + 1]; i++) {
+                this.blockers[this.graph.adjacency[i]] += change;
+            }
+        }
+
+        /**
+         * Returns false if some symmetry is already known to map the current layout to a greater one, given
+         * that the vertices before decided are decided and blocked vertices are known to be empty
+         */
+        private boolean isCanonical(int decided) {
+            for (int g = 1; g < this.symmetries.length; g++) {
+                int[] inverse = this.inverses[g];
+                for (int v = 0; v < this.size; v++) {
+                    int source = inverse[v];
+                    if (!isKnown(v, decided) || !isKnown(source, decided)) {
+                        break;
+                    }
+
+                    boolean mine = this.chosen[v];
+                    boolean image = this.chosen[source];
+                    if (mine != image) {
+                        if (image) {
+                            return false;
+                        }
+                        break;
+                    }
+                }
+            }
+            return true;
+        }
+
+        private boolean isKnown(int vertex, int decided) {
+            return vertex < decided || (this.blockers[vertex] != 0 && !this.chosen[vertex]);
+        }
+
+        /**
+         * The free vertices from the given one onwards, minus a matching over them, since each matched
+         * pair can hold at most one drill
+         */
+        private int getUpperBound(int from) {
+            Arrays.fill(this.match, -1);
+            int free = 0;
+            int matching = 0;
+            for (int v = from; v < this.size; v++) {
+                if (this.blockers[v] != 0) {
+                    continue;
+                }
+
+                free++;
+                if (this.left == null) {
+                    // No bipartition to run augmenting paths over, so match greedily
+                    if (this.match[v] != -1) {
+                        continue;
+                    }
+                    for (int i = this.graph.offsets[v]; i < this.graph.offsets[v + 1]; i++) {
+                        int u = this.graph.adjacency[i];
+                        if (u >= from && this.blockers[u] == 0 && this.match[u] == -1) {
+                            this.match[u] = v;
+                            this.match[v] = u;
+                            matching++;
+                            break;
+                        }
+                    }
+                }
+                else if (this.left[v]) {
+                    this.stamp++;
+                    if (augment(from, v)) {
+                        matching++;
+                    }
+                }
+            }
+            return free - matching;
+        }
+
+        private boolean augment(int from, int v) {
+            for (int i = this.graph.offsets[v]; i < this.graph.offsets[v + 1]; i++) {
+                int u = this.graph.adjacency[i];
+                if (u < from || this.blockers[u] != 0 || this.visited[u] == this.stamp) {
+                    continue;
+                }
+
+                this.visited[u] = this.stamp;
+                if (this.match[u] == -1 || augment(from, this.match[u])) {
+                    this.match[u] = v;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void emit() {
+            // Only a class past the limit shows the list is incomplete, so the search goes on until one turns up
+            if (this.layouts.size() >= this.limit) {
+                this.limited = true;
+                return;
+            }
+
+            int count = 0;
+            for (int v = 0; v < this.size; v++) {
+                if (this.chosen[v]) {
+                    count++;
+                }
+            }
+
+            int[] xs = new int[count];
+            int[] ys = new int[count];
+            int index = 0;
+            for (int v = 0; v < this.size; v++) {
+                if (this.chosen[v]) {
+                    xs[index] = this.graph.xs[v];
+                    ys[index] = this.graph.ys[v];
+                    index++;
+                }
+            }
+
+            if (this.layouts.size() == this.orbitSizes.length) {
+                this.orbitSizes = Arrays.copyOf(this.orbitSizes, this.orbitSizes.length * 2);
+            }
+            this.orbitSizes[this.layouts.size()] = getOrbitSize();
+            this.layouts.add(new Layout(this.problem.width, this.problem.height, xs, ys));
+        }
+
+        /**
+         * Counts the distinct images of the current layout, which is the group's size over its stabiliser's
+         */
+        private int getOrbitSize() {
+            int stabiliser = 0;
+            for (int[] inverse : this.inverses) {
+                boolean fixed = true;
+                for (int v = 0; v < this.size && fixed; v++) {
+                    fixed = this.chosen[v] == this.chosen[inverse[v]];
+                }
+                if (fixed) {
+                    stabiliser++;
+                }
+            }
+            return this.inverses.length / stabiliser;
+        }
+    }
+}
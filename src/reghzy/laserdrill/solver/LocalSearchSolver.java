@@ -0,0 +1,409 @@
+package reghzy.laserdrill.solver;
+
+import reghzy.laserdrill.metrics.SolverMetrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Improves the greedy layout for as long as a time budget allows, for grids too large to solve exactly
+ * <p>
+ * Several independent chains start from the greedy layout, each with its own random seed, and anneal it
+ * with three kinds of move. An insert adds a drill on a free cell, one no drill conflicts with, and is always
+ * taken. A shift picks a cell next to a drill and places a drill there, evicting every drill it conflicts
+ * with, so evicting one is a sideways move and evicting more makes the layout worse. A remove simply takes
+ * a drill out. Moves that lose drills are accepted with the usual probability exp(delta / temperature),
+ * with the temperature falling over the budget, and evicted or removed cells are tabu for a short while so
+ * the next insert does not just undo the move
+ * </p>
+ * <p>
+ * Each chain keeps, for every cell, the number of drills it conflicts with, and the sets of drills and free
+ * cells as swap-remove arrays, so every move costs a pass over one footprint's conflict offsets. The best
+ * layout across all chains is checked every few thousand moves and offered to the control whenever it
+ * grows, so it can be watched or used before the budget runs out
+ * </p>
+ * <p>
+ * Metrics: those of the greedy start, then nodes are the moves tried and prunes the moves that changed
+ * nothing, being tabu, blocked or not accepted. Progress is the share of the time budget used, and the
+ * search ends at the budget or the control's deadline, whichever is first, or when the control is cancelled
+ * </p>
+ */
+public class LocalSearchSolver implements Solver {
+    public static final long DefaultTimeBudgetMillis = 10000L;
+
+    private static final double StartTemperature = 0.6D;
+    private static final double EndTemperature = 0.02D;
+    private static final double RemoveChance = 0.02D;
+    /**
+     * How many moves a cell that lost its drill stays closed to inserts
+     */
+    private static final int TabuTenure = 64;
+    /**
+     * Moves between checks of the clock and the best layout
+     */
+    private static final int MovesPerCheck = 1 << 12;
+
+    private final long timeBudgetNanos;
+    private final int chains;
+    private final long seed;
+
+    public LocalSearchSolver() {
+        this(DefaultTimeBudgetMillis);
+    }
+
+    public LocalSearchSolver(long timeBudgetMillis) {
+        this(timeBudgetMillis, Runtime.getRuntime().availableProcessors(), System.nanoTime());
+    }
+
+    /**
+     * @param chains The number of independent chains, each run on its own thread
+     * @param seed   The seed the chains' random sequences are derived from
+     */
+    public LocalSearchSolver(long timeBudgetMillis, int chains, long seed) {
+        if (timeBudgetMillis < 0) {
+            throw new IllegalArgumentException("Time budget cannot be negative (was " + timeBudgetMillis + ")");
+        }
+        if (chains < 1) {
+            throw new IllegalArgumentException("Need at least one chain (was " + chains + ")");
+        }
+
+        this.timeBudgetNanos = timeBudgetMillis * 1000000L;
+        this.chains = chains;
+        this.seed = seed;
+    }
+
+    /**
+     * Returns the best layout found within the time budget, which is never worse than the greedy one
+     */
+    @Override
+    public Layout solve(PlacementProblem problem) {
+        return solve(problem, new SolveControl());
+    }
+
+    @Override
+    public Layout solve(PlacementProblem problem, SolveControl control) {
+        long deadline = System.nanoTime() + this.timeBudgetNanos;
+        long controlDeadline = control.getDeadline(deadline);
+        if (controlDeadline - deadline < 0) {
+            deadline = controlDeadline;
+        }
+
+        // The greedy start gets a control of its own, as its progress is not that of the search
+        SolverMetrics metrics = control.getMetrics();
+        final Best best = new Best(new GreedySolver().solve(problem, new SolveControl(metrics)), control);
+        control.offer(best.layout);
+        if (this.timeBudgetNanos == 0 || control.isStopped()) {
+            return best.layout;
+        }
+
+        SolverMetrics.Phase phase = metrics.beginPhase("search");
+        try {
+            return search(problem, best, deadline);
+        }
+        finally {
+            phase.close();
+        }
+    }
+
+    private Layout search(PlacementProblem problem, final Best best, long deadline) {
+        final Neighbourhood neighbourhood = new Neighbourhood(problem);
+        SplittableRandom seeds = new SplittableRandom(this.seed);
+        if (this.chains == 1) {
+            new Chain(neighbourhood, best.layout, seeds.split()).run(best, deadline);
+            return best.layout;
+        }
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(this.chains, runnable -> {
+            Thread thread = new Thread(runnable, "LocalSearch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            ArrayList<Future<?>> futures = new ArrayList<Future<?>>(this.chains);
+            for (int i = 0; i < this.chains; i++) {
+                final SplittableRandom random = seeds.split();
+                final Layout start = best.layout;
+                futures.add(executor.submit(() -> new Chain(neighbourhood, start, random).run(best, deadline)));
+            }
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                }
+                catch (InterruptedException e) {
+                    // Give back what was found so far, the chains are stopped below
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                catch (ExecutionException e) {
+                    throw new IllegalStateException("Local search chain failed", e.getCause());
+                }
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        synchronized (best) {
+            return best.layout;
+        }
+    }
+
+    /**
+     * The best layout of all chains. The count is read without locking to skip needless snapshots
+     */
+    private static class Best {
+        private final SolveControl control;
+        private volatile int count;
+        private Layout layout;
+
+        private Best(Layout layout, SolveControl control) {
+            this.control = control;
+            this.layout = layout;
+            this.count = layout.size();
+        }
+
+        private synchronized void offer(Layout layout) {
+            if (layout.size() > this.count) {
+                this.layout = layout;
+                this.count = layout.size();
+                this.control.offer(layout);
+            }
+        }
+    }
+
+    /**
+     * The problem's candidate cells and conflict offsets, shared read only by every chain
+     */
+    private static class Neighbourhood {
+        private final int width;
+        private final int height;
+        private final boolean[] candidates;
+        private final int[] offsetX;
+        private final int[] offsetY;
+
+        private Neighbourhood(PlacementProblem problem) {
+            this.width = problem.width;
+            this.height = problem.height;
+            this.candidates = new boolean[problem.width * problem.height];
+            for (int y = 0; y < problem.height; y++) {
+                for (int x = 0; x < problem.width; x++) {
+                    this.candidates[y * problem.width + x] = problem.isCandidate(x, y);
+                }
+            }
+
+            int radius = problem.footprint.radius;
+            int[] offsetX = new int[(radius * 2 + 1) * (radius * 2 + 1)];
+            int[] offsetY = new int[offsetX.length];
+            int count = 0;
+            for (int dy = -radius; dy <= radius; dy++) {
+                for (int dx = -radius; dx <= radius; dx++) {
+                    if ((dx != 0 || dy != 0) && problem.conflicts(dx, dy)) {
+                        offsetX[count] = dx;
+                        offsetY[count] = dy;
+                        count++;
+                    }
+                }
+            }
+            this.offsetX = Arrays.copyOf(offsetX, count);
+            this.offsetY = Arrays.copyOf(offsetY, count);
+        }
+
+        /**
+         * Returns the cell at the given conflict offset from another, or -1 if it is not a candidate
+         */
+        private int getNeighbour(int cell, int offset) {
+            int x = cell % this.width + this.offsetX[offset];
+            int y = cell / this.width + this.offsetY[offset];
+            if (x < 0 || y < 0 || x >= this.width || y >= this.height) {
+                return -1;
+            }
+
+            int neighbour = y * this.width + x;
+            return this.candidates[neighbour] ? neighbour : -1;
+        }
+    }
+
+    private static class Chain {
+        private final Neighbourhood neighbourhood;
+        private final SplittableRandom random;
+        private final int[] conflicts;
+        private final int[] tabuUntil;
+        private final int[] drills;
+        private final int[] drillSlots;
+        private int drillCount;
+        private final int[] free;
+        private final int[] freeSlots;
+        private int freeCount;
+        private int moves;
+
+        private Chain(Neighbourhood neighbourhood, Layout start, SplittableRandom random) {
+            int cells = neighbourhood.width * neighbourhood.height;
+            this.neighbourhood = neighbourhood;
+            this.random = random;
+            this.conflicts = new int[cells];
+            this.tabuUntil = new int[cells];
+            this.drills = new int[cells];
+            this.drillSlots = new int[cells];
+            this.free = new int[cells];
+            this.freeSlots = new int[cells];
+            Arrays.fill(this.drillSlots, -1);
+            Arrays.fill(this.freeSlots, -1);
+
+            for (int cell = 0; cell < cells; cell++) {
+                if (neighbourhood.candidates[cell]) {
+                    addFree(cell);
+                }
+            }
+            for (int i = 0; i < start.size(); i++) {
+                place(start.getY(i) * neighbourhood.width + start.getX(i));
+            }
+        }
+
+        private void run(Best best, long deadline) {
+            long start = System.nanoTime();
+            double span = Math.max(1L, deadline - start);
+            double temperature = StartTemperature;
+            while (true) {
+                int idle = 0;
+                for (int i = 0; i < MovesPerCheck; i++) {
+                    if (!step(temperature)) {
+                        idle++;
+                    }
+                }
+                best.control.getMetrics().addNodes(MovesPerCheck);
+                best.control.getMetrics().addPrunes(idle);
+
+                if (this.drillCount > best.count) {
+                    best.offer(snapshot());
+                }
+
+                // Ask the control first, so a stop at its deadline is remembered and the solve reported as cut short
+                long now = System.nanoTime();
+                if (best.control.isStopped() || now >= deadline || Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                best.control.setProgress((now - start) / span);
+                temperature = StartTemperature * Math.pow(EndTemperature / StartTemperature, (now - start) / span);
+            }
+        }
+
+        /**
+         * Tries one random move, returning false if it changed nothing
+         */
+        private boolean step(double temperature) {
+            this.moves++;
+            if (this.freeCount > 0) {
+                int cell = this.free[this.random.nextInt(this.freeCount)];
+                if (this.tabuUntil[cell] - this.moves <= 0) {
+                    place(cell);
+                    return true;
+                }
+            }
+            if (this.drillCount == 0) {
+                return false;
+            }
+
+            int drill = this.drills[this.random.nextInt(this.drillCount)];
+            if (this.random.nextDouble() < RemoveChance) {
+                if (accept(-1, temperature)) {
+                    evict(drill);
+                    return true;
+                }
+                return false;
+            }
+
+            int target = this.neighbourhood.getNeighbour(drill, this.random.nextInt(this.neighbourhood.offsetX.length));
+            if (target == -1 || this.drillSlots[target] != -1 || this.tabuUntil[target] - this.moves > 0) {
+                return false;
+            }
+
+            if (accept(1 - this.conflicts[target], temperature)) {
+                for (int offset = 0; offset < this.neighbourhood.offsetX.length; offset++) {
+                    int neighbour = this.neighbourhood.getNeighbour(target, offset);
+                    if (neighbour != -1 && this.drillSlots[neighbour] != -1) {
+                        evict(neighbour);
+                    }
+                }
+                place(target);
+                return true;
+            }
+            return false;
+        }
+
+        private boolean accept(int delta, double temperature) {
+            return delta >= 0 || this.random.nextDouble() < Math.exp(delta / temperature);
+        }
+
+        private void place(int cell) {
+            removeFree(cell);
+            this.drillSlots[cell] = this.drillCount;
+            this.drills[this.drillCount++] = cell;
+            for (int offset = 0; offset < this.neighbourhood.offsetX.length; offset++) {
+                int neighbour = this.neighbourhood.getNeighbour(cell, offset);
+                if (neighbour != -1 && this.conflicts[neighbour]++ == 0) {
+                    removeFree(neighbour);
+                }
+            }
+        }
+
+        private void evict(int cell) {
+            int slot = this.drillSlots[cell];
+            int last = this.drills[--this.drillCount];
+            this.drills[slot] = last;
+            this.drillSlots[last] = slot;
+            this.drillSlots[cell] = -1;
+            this.tabuUntil[cell] = this.moves + TabuTenure;
+            for (int offset = 0; offset < this.neighbourhood.offsetX.length; offset++) {
+                int neighbour = this.neighbourhood.getNeighbour(cell, offset);
+                if (neighbour != -1 && --this.conflicts[neighbour] == 0 && this.drillSlots[neighbour] == -1) {
+                    addFree(neighbour);
+                }
+            }
+            if (this.conflicts[cell] == 0) {
+                addFree(cell);
+            }
+        }
+
+        private void addFree(int cell) {
+            if (this.freeSlots[cell] == -1) {
+                this.freeSlots[cell] = this.freeCount;
+                this.free[this.freeCount++] = cell;
+            }
+        }
+
+        private void removeFree(int cell) {
+            int slot = this.freeSlots[cell];
+            if (slot != -1) {
+                int last = this.free[--this.freeCount];
+                this.free[slot] = last;
+                this.freeSlots[last] = slot;
+                this.freeSlots[cell] = -1;
+            }
+        }
+
+        /**
+         * Copies the current drills into a layout, row by row
+         */
+        private Layout snapshot() {
+            int[] cells = Arrays.copyOf(this.drills, this.drillCount);
+            Arrays.sort(cells);
+            int width = this.neighbourhood.width;
+            int[] xs = new int[cells.length];
+            int[] ys = new int[cells.length];
+            for (int i = 0; i < cells.length; i++) {
+                xs[i] = cells[i] % width;
+                ys[i] = cells[i] / width;
+            }
+            return new Layout(width, this.neighbourhood.height, xs, ys);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package reghzy.laserdrill.solver;
+
+import reghzy.laserdrill.placement.CellMask;
+import reghzy.laserdrill.placement.DrillVisitor;
+import reghzy.laserdrill.placement.Footprint;
+import reghzy.laserdrill.utils.PackedVector2;
+
+import java.util.Arrays;
+
+/**
+ * A layout made of a repeating pattern stamped across a grid, plus a few extra drills along the edges
+ * <p>
+ * The drills are never stored one by one: the plan can be counted and queried in time that depends only on
+ * the pattern size, so it can describe grids far too large to materialise as a {@link Layout}
+ * </p>
+ * <p>
+ * If the problem has a mask, pattern drills whose footprint covers a blocked cell are left out. They are
+ * found once from the blocked cells and kept sorted, so the cost grows with the blocked area, not the grid
+ * </p>
+ */
+public class PeriodicPlan {
+    public final PlacementProblem problem;
+    public final int periodX;
+    public final int periodY;
+    private final int phaseX;
+    private final int phaseY;
+    private final boolean[] pattern;
+    private final long[] fixups;
+    private final long[] suppressed;
+    private final int minX;
+    private final int minY;
+    private final int maxX;
+    private final int maxY;
+
+    /**
+     * @param pattern The cells of one periodX by periodY tile that hold a drill, indexed by y * periodX + x
+     * @param phaseX  The grid X coordinate that lines up with the tile's first column (and likewise for Y)
+     * @param fixups  Extra drills outside the pattern, as packed coordinates (see {@link PackedVector2})
+     */
+    PeriodicPlan(PlacementProblem problem, int periodX, int periodY, boolean[] pattern, int phaseX, int phaseY, long[] fixups) {
+        this(problem, periodX, periodY, pattern, phaseX, phaseY, fixups, null);
+    }
+
+    private PeriodicPlan(PlacementProblem problem, int periodX, int periodY, boolean[] pattern, int phaseX, int phaseY, long[] fixups, long[] suppressed) {
+        this.problem = problem;
+        this.periodX = periodX;
+        this.periodY = periodY;
+        this.pattern = pattern;
+        this.phaseX = phaseX;
+        this.phaseY = phaseY;
+        this.fixups = fixups.clone();
+        Arrays.sort(this.fixups);
+
+        int radius = problem.footprint.radius;
+        this.minX = radius;
+        this.minY = radius;
+        this.maxX = problem.width - radius;
+        this.maxY = problem.height - radius;
+        this.suppressed = suppressed != null ? suppressed : findSuppressed();
+    }
+
+    /**
+     * Returns a copy of this plan with the given fix-ups instead, sharing the suppressed drills
+     */
+    PeriodicPlan withFixups(long[] fixups) {
+        return new PeriodicPlan(this.problem, this.periodX, this.periodY, this.pattern, this.phaseX, this.phaseY, fixups, this.suppressed);
+    }
+
+    /**
+     * Returns true if the pattern (ignoring edge fix-ups) puts a drill at the given location
+     */
+    public boolean isPatternDrill(int x, int y) {
+        if (x < this.minX || y < this.minY || x >= this.maxX || y >= this.maxY) {
+            return false;
+        }
+        return isPatternCell(this.pattern, this.periodX, this.periodY, x - this.phaseX, y - this.phaseY)
+               && (this.suppressed.length == 0 || Arrays.binarySearch(this.suppressed, PackedVector2.pack(x, y)) < 0);
+    }
+
+    public boolean isDrill(int x, int y) {
+        return isPatternDrill(x, y) || Arrays.binarySearch(this.fixups, PackedVector2.pack(x, y)) >= 0;
+    }
+
+    /**
+     * Counts the drills of this plan, without visiting them
+     */
+    public long count() {
+        return countPattern(this.pattern, this.periodX, this.periodY, this.phaseX, this.phaseY,
+                            this.minX, this.minY, this.maxX, this.maxY) - this.suppressed.length + this.fixups.length;
+    }
+
+    public int getFixupCount() {
+        return this.fixups.length;
+    }
+
+    /**
+     * Returns the number of pattern drills left out because their footprint covers a blocked cell
+     */
+    public int getSuppressedCount() {
+        return this.suppressed.length;
+    }
+
+    /**
+     * Visits every pattern drill left out because of the mask
+     */
+    void forEachSuppressed(DrillVisitor visitor) {
+        for (long drill : this.suppressed) {
+            visitor.visit(PackedVector2.getX(drill), PackedVector2.getY(drill));
+        }
+    }
+
+    /**
+     * Visits every drill, row by row for the pattern and then the edge fix-ups
+     */
+    public void forEach(DrillVisitor visitor) {
+        // Suppressed drills are sorted row by row, the same order the pattern is walked in
+        int next = 0;
+        long nextSuppressed = this.suppressed.length > 0 ? this.suppressed[0] : -1L;
+        for (int y = this.minY; y < this.maxY; y++) {
+            int row = Math.floorMod(y - this.phaseY, this.periodY) * this.periodX;
+            for (int x = this.minX; x < this.maxX; x++) {
+                if (this.pattern[row + Math.floorMod(x - this.phaseX, this.periodX)]) {
+                    if (PackedVector2.pack(x, y) == nextSuppressed) {
+                        nextSuppressed = ++next < this.suppressed.length ? this.suppressed[next] : -1L;
+                        continue;
+                    }
+                    visitor.visit(x, y);
+                }
+            }
+        }
+
+        for (long fixup : this.fixups) {
+            visitor.visit(PackedVector2.getX(fixup), PackedVector2.getY(fixup));
+        }
+    }
+
+    /**
+     * Materialises every drill into a {@link Layout}
+     */
+    public Layout toLayout() {
+        long count = count();
+        if (count > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Plan has too many drills (" + count + ") to hold in a layout");
+        }
+
+        final int[] xs = new int[(int) count];
+        final int[] ys = new int[(int) count];
+        final int[] index = new int[1];
+        forEach((x, y) -> {
+            xs[index[0]] = x;
+            ys[index[0]] = y;
+            index[0]++;
+        });
+        return new Layout(this.problem.width, this.problem.height, xs, ys);
+    }
+
+    /**
+     * Finds the pattern drills whose footprint covers a blocked cell, by looking from every blocked cell
+     * back at the drills that could reach it
+     */
+    private long[] findSuppressed() {
+        CellMask mask = this.problem.mask;
+        if (mask == null) {
+            return new long[0];
+        }
+
+        final Footprint footprint = this.problem.footprint;
+        final long[][] found = {new long[64]};
+        final int[] count = new int[1];
+        mask.forEachBlocked((blockedX, blockedY) -> {
+            for (int i = 0; i < footprint.solidX.length + footprint.beamX.length; i++) {
+                boolean solid = i < footprint.solidX.length;
+                int x = blockedX - (solid ? footprint.solidX[i] : footprint.beamX[i - footprint.solidX.length]);
+                int y = blockedY - (solid ? footprint.solidY[i] : footprint.beamY[i - footprint.solidX.length]);
+                if (x >= this.minX && y >= this.minY && x < this.maxX && y < this.maxY
+                    && isPatternCell(this.pattern, this.periodX, this.periodY, x - this.phaseX, y - this.phaseY)) {
+                    if (count[0] == found[0].length) {
+                        found[0] = Arrays.copyOf(found[0], count[0] * 2);
+                    }
+                    found[0][count[0]++] = PackedVector2.pack(x, y);
+                }
+            }
+        });
+
+        // A drill near several blocked cells is found once for each
+        long[] drills = found[0];
+        Arrays.sort(drills, 0, count[0]);
+        int unique = 0;
+        for (int i = 0; i < count[0]; i++) {
+            if (unique == 0 || drills[unique - 1] != drills[i]) {
+                drills[unique++] = drills[i];
+            }
+        }
+        return Arrays.copyOf(drills, unique);
+    }
+
+    static boolean isPatternCell(boolean[] pattern, int periodX, int periodY, int x, int y) {
+        return pattern[Math.floorMod(y, periodY) * periodX + Math.floorMod(x, periodX)];
+    }
+
+    static long countPattern(boolean[] pattern, int periodX, int periodY, int phaseX, int phaseY,
+                             int minX, int minY, int maxX, int maxY) {
+        long count = 0;
+        for (int y = 0; y < periodY; y++) {
+            long rows = countResidue(minY, maxY, y, periodY, phaseY);
+            if (rows == 0) {
+                continue;
+            }
+
+            for (int x = 0; x < periodX; x++) {
+                if (pattern[y * periodX + x]) {
+                    count += rows * countResidue(minX, maxX, x, periodX, phaseX);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Counts the values in [min, max) that land on the given residue of the period, once shifted by the phase
+     */
+    private static long countResidue(int min, int max, int residue, int period, int phase) {
+        int first = min + Math.floorMod(residue + phase - min, period);
+        if (first >= max) {
+            return 0;
+        }
+        return ((long) (max - 1 - first) / period) + 1;
+    }
+}
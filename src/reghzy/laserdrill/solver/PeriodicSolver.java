@@ -0,0 +1,228 @@
+package reghzy.laserdrill.solver;
+
+import reghzy.laserdrill.metrics.SolverMetrics;
+import reghzy.laserdrill.placement.DrillVisitor;
+import reghzy.laserdrill.placement.Footprint;
+import reghzy.laserdrill.utils.PackedVector2;
+
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+
+/**
+ * Fills a grid by repeating the densest small pattern, found by solving every torus up to a maximum period
+ * <p>
+ * A pattern that is valid on a torus is valid on the plane, so it can be stamped across any area. The stamp
+ * is aligned to get the most drills inside the grid, then the cells near the edges (where the clipped pattern
+ * may have left room) are filled greedily. Planning costs the same for any grid size, only
+ * {@link PeriodicPlan#toLayout()} and {@link PeriodicPlan#forEach(DrillVisitor)} grow with the area
+ * </p>
+ * <p>
+ * With a mask, the pattern drills that would cover a blocked cell are dropped, and the cells around them are
+ * filled greedily like the edges, so planning grows with the blocked area but still not with the grid
+ * </p>
+ * <p>
+ * Metrics: the phases only, finding the pattern (once per footprint), aligning it, fixing up the edges and
+ * listing the drills. Planning does not grow with the grid, so it is not stopped early, and progress is
+ * only reported once the plan is made
+ * </p>
+ */
+public class PeriodicSolver implements Solver {
+    private static final int DefaultMaxPeriod = 8;
+
+    private final int maxPeriod;
+    private final BranchAndBoundSolver torusSolver = new BranchAndBoundSolver();
+    private final IdentityHashMap<Footprint, Pattern> patterns = new IdentityHashMap<Footprint, Pattern>(4);
+
+    public PeriodicSolver() {
+        this(DefaultMaxPeriod);
+    }
+
+    public PeriodicSolver(int maxPeriod) {
+        if (maxPeriod < 1) {
+            throw new IllegalArgumentException("Max period must be at least 1 (was " + maxPeriod + ")");
+        }
+        this.maxPeriod = maxPeriod;
+    }
+
+    @Override
+    public Layout solve(PlacementProblem problem) {
+        return plan(problem).toLayout();
+    }
+
+    @Override
+    public Layout solve(PlacementProblem problem, SolveControl control) {
+        PeriodicPlan plan = plan(problem, control.getMetrics());
+        control.setProgress(0.5D);
+        Layout layout;
+        SolverMetrics.Phase phase = control.getMetrics().beginPhase("layout");
+        try {
+            layout = plan.toLayout();
+        }
+        finally {
+            phase.close();
+        }
+        control.setProgress(1.0D);
+        control.offer(layout);
+        return layout;
+    }
+
+    public PeriodicPlan plan(PlacementProblem problem) {
+        return plan(problem, SolverMetrics.DISABLED);
+    }
+
+    public PeriodicPlan plan(PlacementProblem problem, SolverMetrics metrics) {
+        Pattern pattern;
+        SolverMetrics.Phase phase = metrics.beginPhase("pattern");
+        try {
+            pattern = getPattern(problem);
+        }
+        finally {
+            phase.close();
+        }
+
+        int radius = problem.footprint.radius;
+        int minX = radius;
+        int minY = radius;
+        int maxX = problem.width - radius;
+        int maxY = problem.height - radius;
+
+        PeriodicPlan stamped;
+        phase = metrics.beginPhase("align");
+        try {
+            int bestPhaseX = 0;
+            int bestPhaseY = 0;
+            long bestCount = -1;
+            for (int phaseY = 0; phaseY < pattern.periodY; phaseY++) {
+                for (int phaseX = 0; phaseX < pattern.periodX; phaseX++) {
+                    long count = PeriodicPlan.countPattern(pattern.cells, pattern.periodX, pattern.periodY, phaseX, phaseY, minX, minY, maxX, maxY);
+                    if (count > bestCount) {
+                        bestCount = count;
+                        bestPhaseX = phaseX;
+                        bestPhaseY = phaseY;
+                    }
+                }
+            }
+
+            stamped = new PeriodicPlan(problem, pattern.periodX, pattern.periodY, pattern.cells, bestPhaseX, bestPhaseY, new long[0]);
+        }
+        finally {
+            phase.close();
+        }
+
+        phase = metrics.beginPhase("fixups");
+        try {
+            return stamped.withFixups(fixEdges(problem, stamped, minX, minY, maxX, maxY));
+        }
+        finally {
+            phase.close();
+        }
+    }
+
+    /**
+     * Greedily adds drills in the band along the edges of the grid that no conflict offset can reach past,
+     * and around the pattern drills the mask left out
+     */
+    private static long[] fixEdges(final PlacementProblem problem, final PeriodicPlan stamped, int minX, int minY, int maxX, int maxY) {
+        int band = problem.footprint.radius;
+        final HashSet<Long> added = new HashSet<Long>();
+        for (int y = minY; y < maxY; y++) {
+            boolean edgeRow = y < minY + band || y >= maxY - band;
+            for (int x = minX; x < maxX; x++) {
+                if (!edgeRow && x >= minX + band && x < maxX - band) {
+                    x = maxX - band - 1;
+                    continue;
+                }
+
+                tryAdd(problem, stamped, added, x, y);
+            }
+        }
+
+        // Only cells that conflicted with a dropped drill can have been freed up by it
+        stamped.forEachSuppressed((suppressedX, suppressedY) -> {
+            for (int dy = -band; dy <= band; dy++) {
+                for (int dx = -band; dx <= band; dx++) {
+                    if ((dx == 0 && dy == 0) || problem.conflicts(dx, dy)) {
+                        tryAdd(problem, stamped, added, suppressedX + dx, suppressedY + dy);
+                    }
+                }
+            }
+        });
+
+        long[] fixups = new long[added.size()];
+        int index = 0;
+        for (long fixup : added) {
+            fixups[index++] = fixup;
+        }
+        return fixups;
+    }
+
+    private static void tryAdd(PlacementProblem problem, PeriodicPlan stamped, HashSet<Long> added, int x, int y) {
+        if (problem.isCandidate(x, y) && !stamped.isPatternDrill(x, y) && !added.contains(PackedVector2.pack(x, y))
+            && !conflictsWithPlan(problem, stamped, added, x, y)) {
+            added.add(PackedVector2.pack(x, y));
+        }
+    }
+
+    private static boolean conflictsWithPlan(PlacementProblem problem, PeriodicPlan stamped, HashSet<Long> added, int x, int y) {
+        int radius = problem.footprint.radius;
+        for (int dy = -radius; dy <= radius; dy++) {
+            for (int dx = -radius; dx <= radius; dx++) {
+                if (!problem.conflicts(dx, dy)) {
+                    continue;
+                }
+                if (stamped.isPatternDrill(x + dx, y + dy) || added.contains(PackedVector2.pack(x + dx, y + dy))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private Pattern getPattern(PlacementProblem problem) {
+        synchronized (this.patterns) {
+            Pattern pattern = this.patterns.get(problem.footprint);
+            if (pattern == null) {
+                pattern = findPattern(problem);
+                this.patterns.put(problem.footprint, pattern);
+            }
+            return pattern;
+        }
+    }
+
+    /**
+     * Solves every torus up to the maximum period, keeping the densest (and on ties, the first found)
+     */
+    private Pattern findPattern(PlacementProblem problem) {
+        Pattern best = null;
+        for (int periodY = 1; periodY <= this.maxPeriod; periodY++) {
+            for (int periodX = 1; periodX <= this.maxPeriod; periodX++) {
+                ConflictGraph graph = ConflictGraph.buildTorus(problem, periodX, periodY);
+                int[] chosen = this.torusSolver.solve(graph);
+                if (best != null && (long) chosen.length * best.periodX * best.periodY <= (long) best.count * periodX * periodY) {
+                    continue;
+                }
+
+                boolean[] cells = new boolean[periodX * periodY];
+                for (int vertex : chosen) {
+                    cells[graph.ys[vertex] * periodX + graph.xs[vertex]] = true;
+                }
+                best = new Pattern(periodX, periodY, cells, chosen.length);
+            }
+        }
+        return best;
+    }
+
+    private static class Pattern {
+        private final int periodX;
+        private final int periodY;
+        private final boolean[] cells;
+        private final int count;
+
+        private Pattern(int periodX, int periodY, boolean[] cells, int count) {
+            this.periodX = periodX;
+            this.periodY = periodY;
+            this.cells = cells;
+            this.count = count;
+        }
+    }
+}
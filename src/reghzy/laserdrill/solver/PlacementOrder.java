@@ -0,0 +1,189 @@
+package reghzy.laserdrill.solver;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * The orders the {@link GreedySolver} can visit cells in. Greedy placement keeps every drill it places, so
+ * the order alone decides how well the grid ends up packed, and which order is best depends on the grid's
+ * size, mask and footprint (see {@link PortfolioSolver})
+ */
+public enum PlacementOrder {
+    /**
+     * Column by column, top to bottom, the solver's original order
+     */
+    SWEEP("sweep"),
+    /**
+     * Along the anti-diagonals from the top left corner
+     */
+    DIAGONAL("diagonal"),
+    /**
+     * Around the edge of the grid and then inwards, so the border is packed first
+     */
+    SPIRAL("spiral"),
+    /**
+     * The sweep over the cells where x + y is even, then over the rest
+     */
+    CHECKERBOARD("checkerboard"),
+    /**
+     * A seeded shuffle of the sweep
+     */
+    RANDOM("random"),
+    /**
+     * The cells that conflict with the fewest other candidates first, since a drill there rules out the
+     * least and so leaves room for the densest packing. Ties keep the sweep order
+     */
+    DENSEST_FIRST("densest");
+
+    private final String name;
+
+    PlacementOrder(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Returns the candidate cells of the problem in this order, each as y * width + x
+     *
+     * @param seed Only used by {@link #RANDOM}
+     */
+    public int[] getCells(PlacementProblem problem, long seed) {
+        int width = problem.width;
+        int height = problem.height;
+        int[] cells = new int[width * height];
+        int count = 0;
+        switch (this) {
+            case SWEEP:
+            case RANDOM:
+            case DENSEST_FIRST:
+                for (int x = 0; x < width; x++) {
+                    for (int y = 0; y < height; y++) {
+                        cells[count++] = y * width + x;
+                    }
+                }
+                break;
+            case DIAGONAL:
+                for (int sum = 0; sum < width + height - 1; sum++) {
+                    for (int x = Math.max(0, sum - height + 1), maxX = Math.min(width - 1, sum); x <= maxX; x++) {
+                        cells[count++] = (sum - x) * width + x;
+                    }
+                }
+                break;
+            case SPIRAL:
+                for (int ring = 0; ring * 2 < width && ring * 2 < height; ring++) {
+                    int minX = ring;
+                    int minY = ring;
+                    int maxX = width - 1 - ring;
+                    int maxY = height - 1 - ring;
+                    for (int x = minX; x <= maxX; x++) {
+                        cells[count++] = minY * width + x;
+                    }
+                    for (int y = minY + 1; y <= maxY; y++) {
+                        cells[count++] = y * width + maxX;
+                    }
+                    if (maxY > minY) {
+                        for (int x = maxX - 1; x >= minX; x--) {
+                            cells[count++] = maxY * width + x;
+                        }
+                    }
+                    if (maxX > minX) {
+                        for (int y = maxY - 1; y > minY; y--) {
+                            cells[count++] = y * width + minX;
+                        }
+                    }
+                }
+                break;
+            case CHECKERBOARD:
+                for (int parity = 0; parity < 2; parity++) {
+                    for (int x = 0; x < width; x++) {
+                        for (int y = (x + parity) & 1; y < height; y += 2) {
+                            cells[count++] = y * width + x;
+                        }
+                    }
+                }
+                break;
+        }
+
+        int candidates = 0;
+        for (int i = 0; i < count; i++) {
+            int cell = cells[i];
+            if (problem.isCandidate(cell % width, cell / width)) {
+                cells[candidates++] = cell;
+            }
+        }
+        cells = Arrays.copyOf(cells, candidates);
+
+        if (this == RANDOM) {
+            SplittableRandom random = new SplittableRandom(seed);
+            for (int i = cells.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int cell = cells[i];
+                cells[i] = cells[j];
+                cells[j] = cell;
+            }
+        }
+        else if (this == DENSEST_FIRST) {
+            cells = sortByConflicts(problem, cells);
+        }
+        return cells;
+    }
+
+    /**
+     * Counting sorts the cells by the number of candidates they conflict with, which is at most the number
+     * of conflict offsets
+     */
+    private static int[] sortByConflicts(PlacementProblem problem, int[] cells) {
+        int width = problem.width;
+        int radius = problem.footprint.radius;
+        int[] offsetX = new int[(radius * 2 + 1) * (radius * 2 + 1)];
+        int[] offsetY = new int[offsetX.length];
+        int offsets = 0;
+        for (int dy = -radius; dy <= radius; dy++) {
+            for (int dx = -radius; dx <= radius; dx++) {
+                if ((dx != 0 || dy != 0) && problem.conflicts(dx, dy)) {
+                    offsetX[offsets] = dx;
+                    offsetY[offsets] = dy;
+                    offsets++;
+                }
+            }
+        }
+
+        int[] degrees = new int[cells.length];
+        int[] starts = new int[offsets + 2];
+        for (int i = 0; i < cells.length; i++) {
+            int x = cells[i] % width;
+            int y = cells[i] / width;
+            int degree = 0;
+            for (int offset = 0; offset < offsets; offset++) {
+                int nx = x + offsetX[offset];
+                int ny = y + offsetY[offset];
+                if (problem.isCandidate(nx, ny)) {
+                    degree++;
+                }
+            }
+            degrees[i] = degree;
+            starts[degree + 1]++;
+        }
+
+        for (int degree = 1; degree < starts.length; degree++) {
+            starts[degree] += starts[degree - 1];
+        }
+        int[] sorted = new int[cells.length];
+        for (int i = 0; i < cells.length; i++) {
+            sorted[starts[degrees[i]]++] = cells[i];
+        }
+        return sorted;
+    }
+
+    public static PlacementOrder fromName(String name) {
+        for (PlacementOrder order : values()) {
+            if (order.name.equalsIgnoreCase(name)) {
+                return order;
+            }
+        }
+        throw new IllegalArgumentException("Unknown placement order '" + name + "'");
+    }
+}
@@ -0,0 +1,99 @@
+package reghzy.laserdrill.solver;
+
+import reghzy.laserdrill.placement.CellMask;
+import reghzy.laserdrill.placement.Footprint;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Describes a grid to fill with setups: its size and the footprint every setup uses
+ * <p>
+ * A drill can be placed anywhere its whole footprint stays inside the grid, and two drills conflict when one
+ * would sit on a solid cell of the other (the same rule as LaserDrillSetup#canPlaceAbove, applied both ways)
+ * </p>
+ * <p>
+ * An optional {@link CellMask} marks cells that are already taken. A drill is only a candidate if none of its
+ * footprint's cells, solid or beam, are blocked. Solvers that only place candidates honour the mask for free
+ * </p>
+ */
+public class PlacementProblem {
+    public final int width;
+    public final int height;
+    public final Footprint footprint;
+    /**
+     * The blocked cells, or null if every cell is free
+     */
+    public final CellMask mask;
+
+    public PlacementProblem(int width, int height) {
+        this(width, height, Footprint.LASER_DRILL);
+    }
+
+    public PlacementProblem(int width, int height, Footprint footprint) {
+        this(width, height, footprint, null);
+    }
+
+    public PlacementProblem(int width, int height, Footprint footprint, CellMask mask) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Grid size must be positive (" + width + "x" + height + ")");
+        }
+
+        this.width = width;
+        this.height = height;
+        this.footprint = footprint;
+        this.mask = mask;
+    }
+
+    /**
+     * Creates a problem covering the whole of the given mask
+     */
+    public static PlacementProblem forMask(CellMask mask, Footprint footprint) {
+        return new PlacementProblem(mask.width, mask.height, footprint, mask);
+    }
+
+    /**
+     * Returns true if a drill can be placed at the given location on an empty grid
+     */
+    public boolean isCandidate(int x, int y) {
+        int radius = this.footprint.radius;
+        return x >= radius && y >= radius && x < (this.width - radius) && y < (this.height - radius)
+               && (this.mask == null || !this.mask.intersects(this.footprint.cellRows, radius, x, y));
+    }
+
+    /**
+     * Returns true if the mask blocks any cell of the given rectangle (inclusive)
+     */
+    public boolean isBlocked(int minX, int minY, int maxX, int maxY) {
+        return this.mask != null && this.mask.intersects(minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Returns true if two drills the given distance apart cannot both be placed
+     */
+    public boolean conflicts(int dx, int dy) {
+        return this.footprint.isSolid(dx, dy) || this.footprint.isSolid(-dx, -dy);
+    }
+
+    /**
+     * Writes everything that decides which layouts are valid for this problem, so two problems with the same
+     * signature always have the same solutions (see SolutionCache)
+     */
+    public void writeSignature(DataOutput out) throws IOException {
+        out.writeInt(this.width);
+        out.writeInt(this.height);
+        writeOffsets(out, this.footprint.solidX, this.footprint.solidY);
+        writeOffsets(out, this.footprint.beamX, this.footprint.beamY);
+        if (this.mask != null) {
+            this.mask.writeSignature(out);
+        }
+    }
+
+    private static void writeOffsets(DataOutput out, int[] xs, int[] ys) throws IOException {
+        out.writeInt(xs.length);
+        for (int i = 0; i < xs.length; i++) {
+            out.writeInt(xs[i]);
+            out.writeInt(ys[i]);
+        }
+    }
+}
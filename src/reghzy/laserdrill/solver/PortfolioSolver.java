@@ -0,0 +1,141 @@
+package reghzy.laserdrill.solver;
+
+import reghzy.laserdrill.utils.LongIntHashMap;
+import reghzy.laserdrill.utils.PackedVector2;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the {@link GreedySolver} with several {@link PlacementOrder}s at once and keeps the best layout
+ * <p>
+ * Each order is an independent greedy pass, so on a machine with a core per order the portfolio takes about
+ * as long as the slowest single pass. Ties go to the order listed first, so the result is never worse than
+ * the plain sweep and does not depend on which thread finishes first
+ * </p>
+ * <p>
+ * The winning order of every grid size solved is recorded (see {@link #getWinner(int, int)}), since the
+ * same order tends to win again on the same size, e.g. for a long running caller deciding which orders are
+ * still worth running
+ * </p>
+ * <p>
+ * Metrics are those of every greedy pass added together, so phase times are summed over the threads. Progress
+ * is that of the furthest pass, and a stopped solve returns the best of the passes so far
+ * </p>
+ */
+public class PortfolioSolver implements Solver {
+    private final PlacementOrder[] orders;
+    private final long seed;
+    private final int threads;
+    private final LongIntHashMap winners = new LongIntHashMap();
+
+    /**
+     * Creates a portfolio of every order, with a time based seed for {@link PlacementOrder#RANDOM}
+     */
+    public PortfolioSolver() {
+        this(PlacementOrder.values(), System.nanoTime());
+    }
+
+    public PortfolioSolver(PlacementOrder[] orders, long seed) {
+        this(orders, seed, Math.min(orders.length, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * @param orders  The orders to race, in order of preference when they tie
+     * @param seed    The seed of the random order
+     * @param threads The most orders to run at once
+     */
+    public PortfolioSolver(PlacementOrder[] orders, long seed, int threads) {
+        if (orders.length == 0) {
+            throw new IllegalArgumentException("Portfolio needs at least one order");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one thread (was " + threads + ")");
+        }
+
+        this.orders = orders.clone();
+        this.seed = seed;
+        this.threads = threads;
+    }
+
+    @Override
+    public Layout solve(PlacementProblem problem) {
+        return solve(problem, new SolveControl());
+    }
+
+    @Override
+    public Layout solve(PlacementProblem problem, SolveControl control) {
+        Layout[] layouts = new Layout[this.orders.length];
+        if (this.threads == 1 || this.orders.length == 1) {
+            for (int i = 0; i < this.orders.length; i++) {
+                layouts[i] = new GreedySolver(this.orders[i], this.seed).solve(problem, control);
+            }
+        }
+        else {
+            solveAll(problem, control, layouts);
+        }
+
+        int best = 0;
+        for (int i = 1; i < layouts.length; i++) {
+            if (layouts[i].size() > layouts[best].size()) {
+                best = i;
+            }
+        }
+
+        // A stopped pass placed fewer drills than it would have, so it says nothing about the order
+        if (control.wasStopped()) {
+            return layouts[best];
+        }
+        synchronized (this.winners) {
+            this.winners.put(PackedVector2.pack(problem.width, problem.height), this.orders[best].ordinal());
+        }
+        return layouts[best];
+    }
+
+    private void solveAll(final PlacementProblem problem, final SolveControl control, final Layout[] layouts) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.threads, this.orders.length), runnable -> {
+            Thread thread = new Thread(runnable, "Portfolio-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            ArrayList<Future<?>> futures = new ArrayList<Future<?>>(this.orders.length);
+            for (int i = 0; i < this.orders.length; i++) {
+                final int index = i;
+                final GreedySolver solver = new GreedySolver(this.orders[i], this.seed);
+                futures.add(executor.submit(() -> layouts[index] = solver.solve(problem, control)));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the portfolio", e);
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException("Portfolio order failed", e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the order that won the last time a grid of the given size was solved, or null if none has been
+     */
+    public PlacementOrder getWinner(int width, int height) {
+        int ordinal;
+        synchronized (this.winners) {
+            ordinal = this.winners.get(PackedVector2.pack(width, height), -1);
+        }
+        return ordinal == -1 ? null : PlacementOrder.values()[ordinal];
+    }
+}
@@ -0,0 +1,11 @@
+package reghzy.laserdrill.solver;
+
+/**
+ * Listens for the progress of a solve (see {@link SolveControl#addProgressListener(ProgressListener)})
+ */
+public interface ProgressListener {
+    /**
+     * Called with the estimated fraction of the solve that is done, from 0 to 1. Never goes backwards
+     */
+    void progressChanged(double progress);
+}
@@ -0,0 +1,178 @@
+package reghzy.laserdrill.solver;
+
+import reghzy.laserdrill.metrics.SolverMetrics;
+
+import java.util.ArrayList;
+
+/**
+ * Shared between a running solve and whoever is watching it: the solver reports progress and every better
+ * layout it finds, and checks whether it has been cancelled or run past its deadline
+ * <p>
+ * Stopping is cooperative. Solvers check {@link #isStopped()} every few thousand cells, nodes or moves, which
+ * costs a volatile read and, with a deadline, a clock read, and then return the best valid layout they have
+ * (for example the cells placed so far, or the best incumbent). Solvers that do not support it simply run
+ * to the end, see {@link Solver#solve(PlacementProblem, SolveControl)}
+ * </p>
+ * <p>
+ * Listeners are called on the solving thread (any of them, for parallel solvers), so they must be quick and
+ * thread safe. Progress is an estimate: the share of cells visited, columns swept, components searched or
+ * time budget used, depending on the solver
+ * </p>
+ */
+public class SolveControl {
+    /**
+     * The smallest progress change reported to listeners (one percent), so they are not called for every cell
+     */
+    private static final double ProgressStep = 0.01D;
+
+    private final SolverMetrics metrics;
+    private final ArrayList<ImprovementListener> improvementListeners = new ArrayList<ImprovementListener>(2);
+    private final ArrayList<ProgressListener> progressListeners = new ArrayList<ProgressListener>(2);
+    private volatile boolean cancelled;
+    private volatile boolean hasDeadline;
+    private volatile long deadlineNanos;
+    private volatile boolean stopSeen;
+    private volatile double progress;
+    private double reportedProgress = -1.0D;
+    private Layout best;
+
+    public SolveControl() {
+        this(SolverMetrics.DISABLED);
+    }
+
+    public SolveControl(SolverMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public SolverMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    public void addImprovementListener(ImprovementListener listener) {
+        synchronized (this.improvementListeners) {
+            this.improvementListeners.add(listener);
+        }
+    }
+
+    public void removeImprovementListener(ImprovementListener listener) {
+        synchronized (this.improvementListeners) {
+            this.improvementListeners.remove(listener);
+        }
+    }
+
+    public void addProgressListener(ProgressListener listener) {
+        synchronized (this.progressListeners) {
+            this.progressListeners.add(listener);
+        }
+    }
+
+    public void removeProgressListener(ProgressListener listener) {
+        synchronized (this.progressListeners) {
+            this.progressListeners.remove(listener);
+        }
+    }
+
+    /**
+     * Asks the solve to stop as soon as it next checks
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    /**
+     * Stops the solve once the given amount of time from now has passed
+     */
+    public void setTimeLimit(long millis) {
+        setDeadline(System.nanoTime() + millis * 1000000L);
+    }
+
+    /**
+     * Stops the solve once System#nanoTime reaches the given value
+     */
+    public void setDeadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+        this.hasDeadline = true;
+    }
+
+    /**
+     * Returns the deadline as a System#nanoTime value, or the given default if there is none
+     */
+    public long getDeadline(long defaultNanos) {
+        return this.hasDeadline ? this.deadlineNanos : defaultNanos;
+    }
+
+    /**
+     * Returns true if the solve should stop now, because it was cancelled or its deadline has passed. Meant to
+     * be called by solvers, and remembered so {@link #wasStopped()} can tell a cut short solve from a full one
+     */
+    public boolean isStopped() {
+        if (this.cancelled || (this.hasDeadline && System.nanoTime() - this.deadlineNanos >= 0)) {
+            this.stopSeen = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the solver saw a stop request, so its result may not be the one a full solve gives
+     */
+    public boolean wasStopped() {
+        return this.stopSeen;
+    }
+
+    /**
+     * Called by solvers with their estimated progress from 0 to 1. Values lower than the last are ignored
+     */
+    public void setProgress(double progress) {
+        progress = Math.min(1.0D, progress);
+        synchronized (this.progressListeners) {
+            if (progress <= this.progress) {
+                return;
+            }
+
+            this.progress = progress;
+            if (progress - this.reportedProgress < ProgressStep && progress < 1.0D) {
+                return;
+            }
+            this.reportedProgress = progress;
+            for (ProgressListener listener : this.progressListeners) {
+                listener.progressChanged(progress);
+            }
+        }
+    }
+
+    public double getProgress() {
+        return this.progress;
+    }
+
+    /**
+     * Called by solvers with a valid layout they found. Kept and passed on to the listeners and metrics if it
+     * has more drills than any offered before
+     */
+    public void offer(Layout layout) {
+        synchronized (this.improvementListeners) {
+            if (this.best != null && layout.size() <= this.best.size()) {
+                return;
+            }
+
+            this.best = layout;
+            this.metrics.recordBest(layout.size());
+            for (ImprovementListener listener : this.improvementListeners) {
+                listener.layoutImproved(layout);
+            }
+        }
+    }
+
+    /**
+     * Returns the best layout offered so far, or null if there has been none
+     */
+    public Layout getBest() {
+        synchronized (this.improvementListeners) {
+            return this.best;
+        }
+    }
+}
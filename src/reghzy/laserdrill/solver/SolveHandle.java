@@ -0,0 +1,131 @@
+package reghzy.laserdrill.solver;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * A solve running on its own thread, which can be watched through its {@link SolveControl} and stopped early
+ * <p>
+ * The result is the better of the solver's own result and the best layout it offered to the control, so a
+ * solve that is cancelled or runs out of time still gives back the best valid layout found so far
+ * </p>
+ */
+public class SolveHandle {
+    private static final AtomicInteger ThreadCount = new AtomicInteger();
+
+    private final SolveControl control;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final ArrayList<Consumer<Layout>> doneActions = new ArrayList<Consumer<Layout>>(1);
+    private volatile Layout result;
+    private volatile Throwable failure;
+    private boolean finished; // guarded by doneActions, set before the done actions run
+
+    private SolveHandle(SolveControl control) {
+        this.control = control;
+    }
+
+    /**
+     * Starts solving on a new daemon thread. Listeners should be added to the control before this is called,
+     * so they see every improvement
+     */
+    public static SolveHandle start(final Solver solver, final PlacementProblem problem, SolveControl control) {
+        final SolveHandle handle = new SolveHandle(control);
+        Thread thread = new Thread(() -> handle.run(solver, problem), "Solve-" + ThreadCount.incrementAndGet());
+        thread.setDaemon(true);
+        thread.start();
+        return handle;
+    }
+
+    private void run(Solver solver, PlacementProblem problem) {
+        try {
+            Layout layout = solver.solve(problem, this.control);
+            Layout best = this.control.getBest();
+            this.result = best != null && best.size() > layout.size() ? best : layout;
+            this.control.setProgress(1.0D);
+        }
+        catch (Throwable e) {
+            this.failure = e;
+        }
+        finally {
+            // The actions run before the handle counts as done, so get() only returns once they have
+            ArrayList<Consumer<Layout>> actions;
+            synchronized (this.doneActions) {
+                this.finished = true;
+                actions = new ArrayList<Consumer<Layout>>(this.doneActions);
+                this.doneActions.clear();
+            }
+            try {
+                if (this.failure == null) {
+                    for (Consumer<Layout> action : actions) {
+                        action.accept(this.result);
+                    }
+                }
+            }
+            finally {
+                this.done.countDown();
+            }
+        }
+    }
+
+    /**
+     * Calls the given action with the result once the solve has finished, or right away if it already has.
+     * It runs on the solving thread (or the caller's) before {@link #get()} returns, so it must not wait for
+     * the handle itself, and is not called if the solve failed
+     */
+    public void whenDone(Consumer<Layout> action) {
+        synchronized (this.doneActions) {
+            if (!this.finished) {
+                this.doneActions.add(action);
+                return;
+            }
+        }
+        if (this.failure == null) {
+            action.accept(this.result);
+        }
+    }
+
+    public SolveControl getControl() {
+        return this.control;
+    }
+
+    public void cancel() {
+        this.control.cancel();
+    }
+
+    public boolean isDone() {
+        return this.done.getCount() == 0;
+    }
+
+    /**
+     * Waits for the solve to finish and returns its result
+     *
+     * @throws IllegalStateException If the solver failed
+     * @throws InterruptedException  If interrupted while waiting, which does not stop the solve
+     */
+    public Layout get() throws InterruptedException {
+        this.done.await();
+        return getResult();
+    }
+
+    /**
+     * Waits up to the given time for the solve to finish. If it has not, it is cancelled and, once the solver
+     * has noticed, the best layout it found is returned
+     */
+    public Layout get(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!this.done.await(timeout, unit)) {
+            cancel();
+            this.done.await();
+        }
+        return getResult();
+    }
+
+    private Layout getResult() {
+        if (this.failure != null) {
+            throw new IllegalStateException("Solve failed", this.failure);
+        }
+        return this.result;
+    }
+}
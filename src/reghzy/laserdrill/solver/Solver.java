@@ -0,0 +1,36 @@
+package reghzy.laserdrill.solver;
+
+import reghzy.laserdrill.metrics.SolverMetrics;
+
+/**
+ * A strategy for filling a {@link PlacementProblem} with setups
+ */
+public interface Solver {
+    Layout solve(PlacementProblem problem);
+
+    /**
+     * Solves the problem, recording what the solve did into the given metrics
+     */
+    default Layout solve(PlacementProblem problem, SolverMetrics metrics) {
+        return solve(problem, new SolveControl(metrics));
+    }
+
+    /**
+     * Solves the problem under the given control, reporting progress and better layouts to it and stopping
+     * early when it asks to. Solvers that support none of that run to the end, only recording a single
+     * "solve" phase and offering the final layout
+     */
+    default Layout solve(PlacementProblem problem, SolveControl control) {
+        Layout layout;
+        SolverMetrics.Phase phase = control.getMetrics().beginPhase("solve");
+        try {
+            layout = solve(problem);
+        }
+        finally {
+            phase.close();
+        }
+        control.setProgress(1.0D);
+        control.offer(layout);
+        return layout;
+    }
+}
@@ -0,0 +1,50 @@
+package reghzy.laserdrill.solver;
+
+/**
+ * The solvers that can be picked by name, e.g. from the command line
+ */
+public enum SolverType {
+    GREEDY("greedy"),
+    EXACT("exact"),
+    PERIODIC("periodic"),
+    STRIP("strip"),
+    LOCAL("local"),
+    PORTFOLIO("portfolio");
+
+    private final String name;
+
+    SolverType(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public Solver create() {
+        switch (this) {
+            case GREEDY:
+                return new GreedySolver();
+            case EXACT:
+                return new BranchAndBoundSolver();
+            case PERIODIC:
+                return new PeriodicSolver();
+            case STRIP:
+                return new StripSolver();
+            case LOCAL:
+                return new LocalSearchSolver();
+            case PORTFOLIO:
+                return new PortfolioSolver();
+        }
+        throw new IllegalStateException("Unknown solver type " + this);
+    }
+
+    public static SolverType fromName(String name) {
+        for (SolverType type : values()) {
+            if (type.name.equalsIgnoreCase(name)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown solver '" + name + "'");
+    }
+}
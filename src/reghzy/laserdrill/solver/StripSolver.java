@@ -0,0 +1,542 @@
+package reghzy.laserdrill.solver;
+
+import reghzy.laserdrill.metrics.SolverMetrics;
+import reghzy.laserdrill.utils.LongIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Solves narrow strips exactly with a column by column transfer matrix dynamic program
+ * <p>
+ * The strip runs along its longer side. Walking along it, the state is which rows hold a drill in each of
+ * the last R columns, R being the furthest a conflict reaches along the strip, packed into a long. Each
+ * step appends one conflict free column to every reachable state and keeps the best count per new state,
+ * so the cost is linear in the length and exponential only in the width
+ * </p>
+ * <p>
+ * The state takes rows times R bits, and strips needing more than {@link #MaxStateBits} are rejected up
+ * front (see {@link #checkSupported(PlacementProblem)}). Within that, how many states are reachable depends on
+ * the footprint and the mask, so the solve is also given up with an IllegalArgumentException rather than
+ * running out of memory once it reaches {@link #MaxStates} states, {@link #MaxSuccessors} cached successors,
+ * or an estimated half of the heap for its tables, checkpoints and replay buffers
+ * </p>
+ * <p>
+ * Every reachable state is numbered once through a {@link LongIntHashMap}, and the states it can step to are
+ * cached as int arrays, so each column is a walk over cached successor lists. To rebuild the layout without keeping every
+ * column's states, the reachable states are only stored every sqrt(length) columns, and each segment is
+ * replayed from its checkpoint while walking back from the end
+ * </p>
+ * <p>
+ * If the problem has a mask, each column only allows drills in the rows where the problem has a candidate,
+ * which only filters the cached successors, so the state space is shared by every column
+ * </p>
+ * <p>
+ * Metrics: nodes are the states expanded and candidates the successors they stepped to, counting both the
+ * forward pass and the replay, and the peaks "states" and "bytes" are those of {@link Result}. Progress counts the forward pass as the first half. The stop request is
+ * checked every column, and a stopped solve replays only the columns swept so far
+ * </p>
+ */
+public class StripSolver implements Solver {
+    /**
+     * Strips whose state (rows times the reach of a conflict along the strip) takes more bits than this
+     * have too many states to solve
+     */
+    public static final int MaxStateBits = 24;
+
+    /**
+     * The most successor entries cached over every state, about 4 bytes each
+     */
+    public static final int MaxSuccessors = 1 << 25;
+
+    /**
+     * The most distinct states numbered over the whole strip
+     */
+    public static final int MaxStates = 1 << 20;
+
+    @Override
+    public Layout solve(PlacementProblem problem) {
+        return solveStrip(problem).layout;
+    }
+
+    @Override
+    public Layout solve(PlacementProblem problem, SolveControl control) {
+        Layout layout = solveStrip(problem, control).layout;
+        control.offer(layout);
+        return layout;
+    }
+
+    /**
+     * Checks the strip is narrow enough to solve, so callers can reject it before solving. A strip that
+     * passes can still have too many reachable states, see {@link #MaxSuccessors}
+     *
+     * @throws IllegalArgumentException If the strip's state takes more than {@link #MaxStateBits} bits
+     */
+    public static void checkSupported(PlacementProblem problem) {
+        int radius = problem.footprint.radius;
+        boolean transposed = problem.height > problem.width;
+        int rows = (transposed ? problem.width : problem.height) - radius * 2;
+        int length = (transposed ? problem.height : problem.width) - radius * 2;
+        if (rows <= 0 || length <= 0) {
+            return;
+        }
+        if (rows > MaxStateBits) {
+            throw new IllegalArgumentException("Strip is too wide (" + rows + " rows, at most " + MaxStateBits + " are supported)");
+        }
+
+        int reach = getReach(problem, transposed);
+        if (rows * reach > MaxStateBits) {
+            throw new IllegalArgumentException("Strip is too wide (" + rows + " rows with a reach of " + reach + " take "
+                                               + rows * reach + " bits of state, at most " + MaxStateBits + " are supported)");
+        }
+    }
+
+    /**
+     * Returns the furthest along the strip two drills can conflict, at least 1
+     */
+    private static int getReach(PlacementProblem problem, boolean transposed) {
+        int radius = problem.footprint.radius;
+        int reach = 1;
+        for (int along = 1; along <= radius; along++) {
+            for (int across = -radius; across <= radius; across++) {
+                if (transposed ? problem.conflicts(across, along) : problem.conflicts(along, across)) {
+                    reach = along;
+                }
+            }
+        }
+        return reach;
+    }
+
+    public Result solveStrip(PlacementProblem problem) {
+        return solveStrip(problem, new SolveControl());
+    }
+
+    /**
+     * Solves the strip, or if the control stops the sweep early, only the columns swept so far
+     */
+    public Result solveStrip(PlacementProblem problem, SolveControl control) {
+        SolverMetrics metrics = control.getMetrics();
+        int radius = problem.footprint.radius;
+        boolean transposed = problem.height > problem.width;
+        int rows = (transposed ? problem.width : problem.height) - radius * 2;
+        int length = (transposed ? problem.height : problem.width) - radius * 2;
+        if (rows <= 0 || length <= 0) {
+            return new Result(new Layout(problem.width, problem.height, new int[0], new int[0]), 0, 0);
+        }
+        checkSupported(problem);
+
+        Transitions transitions = new Transitions(problem, transposed, rows);
+
+        int segmentLength = Math.max(1, (int) Math.ceil(Math.sqrt(length)));
+        ArrayList<Column> checkpoints = new ArrayList<Column>((length + segmentLength - 1) / segmentLength);
+        Column column = transitions.initial();
+        Column spare = new Column(column.states.length, false);
+        long peakBytes = 0;
+        long checkpointBytes = 0;
+        int peakStates = 0;
+        long nodes = 0;
+        long candidates = 0;
+        SolverMetrics.Phase phase = metrics.beginPhase("forward");
+        try {
+            for (int x = 0; x < length; x++) {
+                if (x > 0 && control.isStopped()) {
+                    // Keep the columns swept so far, any prefix of a valid layout is valid too
+                    length = x;
+                    break;
+                }
+                control.setProgress(x * 0.5D / length);
+                if (x % segmentLength == 0) {
+                    Column checkpoint = column.copy();
+                    checkpoints.add(checkpoint);
+                    checkpointBytes += checkpoint.getMemoryBytes();
+                }
+
+                nodes += column.size;
+                candidates += transitions.advance(column, spare, transitions.getBlockedRows(x));
+                peakStates = Math.max(peakStates, spare.size);
+                peakBytes = Math.max(peakBytes, column.getMemoryBytes() + spare.getMemoryBytes());
+
+                // The replay needs a column with parents for every column of a segment, at the peak state count
+                long neededBytes = peakBytes + checkpointBytes + (long) segmentLength * peakStates * 12 + transitions.getEstimatedBytes();
+                if (neededBytes > Runtime.getRuntime().maxMemory() / 2) {
+                    throw new IllegalArgumentException("Strip needs too much memory to solve (about " + (neededBytes >> 20) + " MB for "
+                                                       + peakStates + " states per column, at most half the heap is used)");
+                }
+                Column previous = column;
+                column = spare;
+                spare = previous;
+            }
+        }
+        finally {
+            metrics.addNodes(nodes);
+            metrics.addCandidates(candidates);
+            phase.close();
+        }
+        for (Column checkpoint : checkpoints) {
+            peakBytes += checkpoint.getMemoryBytes();
+        }
+
+        // Walk back from the best final state, replaying each segment to find the column masks on its path
+        nodes = 0;
+        candidates = 0;
+        int segmentCount = (length + segmentLength - 1) / segmentLength;
+        int[] masks = new int[length];
+        int target = column.getBestIndex();
+        Column[] replay = new Column[segmentLength];
+        phase = metrics.beginPhase("replay");
+        try {
+            for (int i = 0; i < segmentLength; i++) {
+                replay[i] = new Column(peakStates, true);
+            }
+
+            for (int segment = segmentCount - 1; segment >= 0; segment--) {
+                int start = segment * segmentLength;
+                int end = Math.min(length, start + segmentLength);
+                Column previous = checkpoints.get(segment);
+                control.setProgress(1.0D - start * 0.5D / length);
+                for (int x = start; x < end; x++) {
+                    nodes += previous.size;
+                    candidates += transitions.advance(previous, replay[x - start], transitions.getBlockedRows(x));
+                    previous = replay[x - start];
+                }
+
+                for (int x = end - 1; x >= start; x--) {
+                    Column current = replay[x - start];
+                    masks[x] = (int) (transitions.getStateKey(current.states[target]) & transitions.columnMask);
+                    target = current.parents[target];
+                }
+            }
+        }
+        finally {
+            metrics.addNodes(nodes);
+            metrics.addCandidates(candidates);
+            phase.close();
+        }
+
+        long replayBytes = 0;
+        for (Column buffer : replay) {
+            replayBytes += buffer.getMemoryBytes();
+        }
+
+        int count = 0;
+        for (int mask : masks) {
+            count += Integer.bitCount(mask);
+        }
+
+        int[] xs = new int[count];
+        int[] ys = new int[count];
+        int index = 0;
+        for (int x = 0; x < length; x++) {
+            for (int bits = masks[x]; bits != 0; bits &= bits - 1) {
+                int row = Integer.numberOfTrailingZeros(bits);
+                xs[index] = (transposed ? row : x) + radius;
+                ys[index] = (transposed ? x : row) + radius;
+                index++;
+            }
+        }
+
+        long memoryBytes = peakBytes + replayBytes + transitions.getMemoryBytes();
+        metrics.recordPeak("states", peakStates);
+        metrics.recordPeak("bytes", memoryBytes);
+        return new Result(new Layout(problem.width, problem.height, xs, ys), peakStates, memoryBytes);
+    }
+
+    public static class Result {
+        public final Layout layout;
+        /**
+         * The most reachable states seen in any single column
+         */
+        public final int peakStates;
+        /**
+         * An estimate of the most memory held by state tables and the transition cache at once, in bytes
+         */
+        public final long peakMemoryBytes;
+
+        private Result(Layout layout, int peakStates, long peakMemoryBytes) {
+            this.layout = layout;
+            this.peakStates = peakStates;
+            this.peakMemoryBytes = peakMemoryBytes;
+        }
+    }
+
+    /**
+     * The reachable states after some number of columns (as ids from {@link Transitions}), with the best
+     * count for each and optionally the index of the state in the previous column it came from. Columns
+     * are reused as buffers, so the arrays grow as needed and only the first size entries are valid
+     */
+    private static class Column {
+        private int[] states;
+        private int[] values;
+        private int[] parents;
+        private int size;
+
+        private Column(int capacity, boolean keepParents) {
+            capacity = Math.max(16, capacity);
+            this.states = new int[capacity];
+            this.values = new int[capacity];
+            this.parents = keepParents ? new int[capacity] : null;
+        }
+
+        private void add(int state, int value, int parent) {
+            if (this.size == this.states.length) {
+                this.states = Arrays.copyOf(this.states, this.size * 2);
+                this.values = Arrays.copyOf(this.values, this.size * 2);
+                if (this.parents != null) {
+                    this.parents = Arrays.copyOf(this.parents, this.size * 2);
+                }
+            }
+
+            this.states[this.size] = state;
+            this.values[this.size] = value;
+            if (this.parents != null) {
+                this.parents[this.size] = parent;
+            }
+            this.size++;
+        }
+
+        private Column copy() {
+            Column copy = new Column(this.size, false);
+            System.arraycopy(this.states, 0, copy.states, 0, this.size);
+            System.arraycopy(this.values, 0, copy.values, 0, this.size);
+            copy.size = this.size;
+            return copy;
+        }
+
+        private int getBestIndex() {
+            int best = 0;
+            for (int i = 1; i < this.size; i++) {
+                if (this.values[i] > this.values[best]) {
+                    best = i;
+                }
+            }
+            return best;
+        }
+
+        private long getMemoryBytes() {
+            return (long) this.states.length * 4 + (long) this.values.length * 4
+                   + (this.parents != null ? (long) this.parents.length * 4 : 0);
+        }
+    }
+
+    /**
+     * Numbers every reachable state and caches the states each one can step to, since the same few
+     * states come up again in every column
+     */
+    private static class Transitions {
+        private static final int[] NoSuccessors = new int[0];
+
+        private final PlacementProblem problem;
+        private final boolean transposed;
+        private final int rows;
+        private final int reach;
+        private final long columnMask;
+        private final long stateMask;
+        private final int[] columns;
+        private final int[][] shifts;
+        private final LongIntHashMap stateIds = new LongIntHashMap(64);
+        private long[] stateKeys = new long[64];
+        private int[][] successors = new int[64][];
+        private int stateCount;
+        private long successorCount;
+        private int[] slots = new int[64];
+
+        private Transitions(PlacementProblem problem, boolean transposed, int rows) {
+            this.problem = problem;
+            this.transposed = transposed;
+            this.rows = rows;
+            this.columnMask = (1L << rows) - 1;
+            int radius = problem.footprint.radius;
+
+            // For each distance along the strip, the row shifts at which two drills conflict
+            int[][] shifts = new int[radius + 1][];
+            for (int along = 0; along <= radius; along++) {
+                int[] list = new int[radius * 2 + 1];
+                int count = 0;
+                for (int across = -radius; across <= radius; across++) {
+                    if ((along != 0 || across != 0) && (transposed ? problem.conflicts(across, along) : problem.conflicts(along, across))) {
+                        list[count++] = across;
+                    }
+                }
+                shifts[along] = Arrays.copyOf(list, count);
+            }
+
+            this.reach = getReach(problem, transposed);
+            this.shifts = shifts;
+            this.stateMask = this.reach * rows >= 64 ? -1L : (1L << (this.reach * rows)) - 1;
+
+            int[] columns = new int[1 << rows];
+            int count = 0;
+            for (int mask = 0; mask < (1 << rows); mask++) {
+                if (isCompatible(mask, mask, shifts[0])) {
+                    columns[count++] = mask;
+                }
+            }
+            this.columns = Arrays.copyOf(columns, count);
+            Arrays.fill(this.slots, -1);
+        }
+
+        /**
+         * Returns the column before anything has been placed, holding only the empty state
+         */
+        private Column initial() {
+            Column column = new Column(16, false);
+            column.add(getStateId(0L), 0, -1);
+            return column;
+        }
+
+        private long getStateKey(int id) {
+            return this.stateKeys[id];
+        }
+
+        /**
+         * Returns the rows of the given column (counted from the first column a drill fits in) where the
+         * mask leaves no room for a drill
+         */
+        private long getBlockedRows(int column) {
+            if (this.problem.mask == null) {
+                return 0L;
+            }
+
+            int radius = this.problem.footprint.radius;
+            long blocked = 0L;
+            for (int row = 0; row < this.rows; row++) {
+                int x = (this.transposed ? row : column) + radius;
+                int y = (this.transposed ? column : row) + radius;
+                if (!this.problem.isCandidate(x, y)) {
+                    blocked |= 1L << row;
+                }
+            }
+            return blocked;
+        }
+
+        /**
+         * Fills the given column with every state reachable from the previous one that places no drill on
+         * the blocked rows, keeping parent indices if the column has room for them. Returns the number of
+         * successors stepped to
+         */
+        private long advance(Column previous, Column next, long blocked) {
+            next.size = 0;
+            long stepped = 0;
+            for (int i = 0; i < previous.size; i++) {
+                int value = previous.values[i];
+                for (int state : getSuccessors(previous.states[i])) {
+                    if (blocked != 0 && (getStateKey(state) & this.columnMask & blocked) != 0) {
+                        continue;
+                    }
+                    if (state >= this.slots.length) {
+                        int oldLength = this.slots.length;
+                        this.slots = Arrays.copyOf(this.slots, Math.max(state + 1, oldLength * 2));
+                        Arrays.fill(this.slots, oldLength, this.slots.length, -1);
+                    }
+
+                    stepped++;
+                    int nextValue = value + Long.bitCount(getStateKey(state) & this.columnMask);
+                    int slot = this.slots[state];
+                    if (slot == -1) {
+                        this.slots[state] = next.size;
+                        next.add(state, nextValue, i);
+                    }
+                    else if (nextValue > next.values[slot]) {
+                        next.values[slot] = nextValue;
+                        if (next.parents != null) {
+                            next.parents[slot] = i;
+                        }
+                    }
+                }
+            }
+
+            for (int i = 0; i < next.size; i++) {
+                this.slots[next.states[i]] = -1;
+            }
+            return stepped;
+        }
+
+        private int[] getSuccessors(int id) {
+            int[] list = this.successors[id];
+            if (list != null) {
+                return list;
+            }
+
+            long state = getStateKey(id);
+            int[] found = new int[this.columns.length];
+            int count = 0;
+            for (int mask : this.columns) {
+                if (fits(state, mask)) {
+                    found[count++] = getStateId(((state << this.rows) | mask) & this.stateMask);
+                }
+            }
+
+            this.successorCount += count;
+            if (this.successorCount > MaxSuccessors) {
+                throw new IllegalArgumentException("Strip has too many states to solve (over " + this.stateCount + " states with "
+                                                   + this.successorCount + " successors, at most " + MaxSuccessors + " are supported)");
+            }
+
+            list = count == 0 ? NoSuccessors : Arrays.copyOf(found, count);
+            this.successors[id] = list;
+            return list;
+        }
+
+        private int getStateId(long state) {
+            int id = this.stateIds.get(state, -1);
+            if (id != -1) {
+                return id;
+            }
+
+            if (this.stateCount == MaxStates) {
+                throw new IllegalArgumentException("Strip has too many states to solve (at most " + MaxStates + " are supported)");
+            }
+            id = this.stateCount++;
+            if (id == this.stateKeys.length) {
+                this.stateKeys = Arrays.copyOf(this.stateKeys, id * 2);
+                this.successors = Arrays.copyOf(this.successors, id * 2);
+            }
+            this.stateKeys[id] = state;
+            this.stateIds.put(state, id);
+            return id;
+        }
+
+        /**
+         * Returns a quick estimate of {@link #getMemoryBytes()}, without walking the successor lists
+         */
+        private long getEstimatedBytes() {
+            return (long) this.stateCount * 48 + this.successorCount * 4;
+        }
+
+        /**
+         * Returns the number of bytes held by the state numbering and the cached successor lists
+         */
+        private long getMemoryBytes() {
+            long bytes = this.stateIds.getMemoryBytes() + (long) this.stateKeys.length * 8 + (long) this.slots.length * 4;
+            for (int id = 0; id < this.stateCount; id++) {
+                if (this.successors[id] != null) {
+                    bytes += 16 + (long) this.successors[id].length * 4;
+                }
+            }
+            return bytes;
+        }
+
+        /**
+         * Returns true if a column with the given drill mask can follow the given state
+         */
+        private boolean fits(long state, int mask) {
+            for (int along = 1; along <= this.reach; along++) {
+                int previous = (int) ((state >>> ((along - 1) * this.rows)) & this.columnMask);
+                if (previous != 0 && !isCompatible(mask, previous, this.shifts[along])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean isCompatible(int mask, int previous, int[] shifts) {
+            for (int shift : shifts) {
+                long shifted = shift >= 0 ? ((long) previous << shift) : ((long) previous >>> -shift);
+                if ((mask & shifted & this.columnMask) != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
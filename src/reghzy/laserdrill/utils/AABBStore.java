@@ -0,0 +1,350 @@
+package reghzy.laserdrill.utils;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A list of axis aligned boxes kept as parallel int arrays instead of {@link AxisAlignedBB} objects, with
+ * overlap queries over the whole list at once
+ * <p>
+ * Boxes are inclusive on both ends, like AxisAlignedBB#intersectsAABB, and are referred to by the index
+ * they were added at. {@link #forEachOverlappingPair(PairVisitor)} finds every overlapping pair with a sweep
+ * and prune along X: the boxes are sorted by their minimum X once, then swept in that order while keeping
+ * the boxes whose X range is still open, so only those are tested on Y. A single sweep keeps a whole column
+ * of boxes open at once, so the rows are first split into bands about as high as a box and each band is
+ * swept on its own. That takes O(N log N + K) for N boxes and K pairs, when the boxes are about the same
+ * size like a layout's, instead of the O(N^2) of testing every pair
+ * </p>
+ * <p>
+ * Not thread safe. The bands and their sort order are cached until the next box is added or changed
+ * </p>
+ */
+public class AABBStore {
+    private static final int MaxBandsPerBox = 4;
+
+    private int[] minX;
+    private int[] minY;
+    private int[] maxX;
+    private int[] maxY;
+    private int size;
+    private Bands bands; // null if a box changed since the last sort
+
+    public AABBStore() {
+        this(16);
+    }
+
+    public AABBStore(int capacity) {
+        capacity = Math.max(1, capacity);
+        this.minX = new int[capacity];
+        this.minY = new int[capacity];
+        this.maxX = new int[capacity];
+        this.maxY = new int[capacity];
+    }
+
+    public interface PairVisitor {
+        /**
+         * Called with the indices of two overlapping boxes
+         */
+        void visit(int a, int b);
+    }
+
+    /**
+     * Adds a box, returning its index
+     */
+    public int add(int minX, int minY, int maxX, int maxY) {
+        if (this.size == this.minX.length) {
+            int capacity = this.size * 2;
+            this.minX = Arrays.copyOf(this.minX, capacity);
+            this.minY = Arrays.copyOf(this.minY, capacity);
+            this.maxX = Arrays.copyOf(this.maxX, capacity);
+            this.maxY = Arrays.copyOf(this.maxY, capacity);
+        }
+
+        int index = this.size++;
+        set(index, minX, minY, maxX, maxY);
+        return index;
+    }
+
+    public int add(AxisAlignedBB box) {
+        return add(box.minX, box.minY, box.maxX, box.maxY);
+    }
+
+    /**
+     * Adds a square box reaching the given distance from its center in every direction
+     */
+    public int addAround(int x, int y, int radius) {
+        return add(x - radius, y - radius, x + radius, y + radius);
+    }
+
+    public void set(int index, int minX, int minY, int maxX, int maxY) {
+        checkIndex(index);
+        this.minX[index] = minX;
+        this.minY[index] = minY;
+        this.maxX[index] = maxX;
+        this.maxY[index] = maxY;
+        this.bands = null;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public int getMinX(int index) {
+        checkIndex(index);
+        return this.minX[index];
+    }
+
+    public int getMinY(int index) {
+        checkIndex(index);
+        return this.minY[index];
+    }
+
+    public int getMaxX(int index) {
+        checkIndex(index);
+        return this.maxX[index];
+    }
+
+    public int getMaxY(int index) {
+        checkIndex(index);
+        return this.maxY[index];
+    }
+
+    /**
+     * Returns a new AxisAlignedBB with the bounds of the given box
+     */
+    public AxisAlignedBB get(int index) {
+        checkIndex(index);
+        return new AxisAlignedBB(this.minX[index], this.minY[index], this.maxX[index], this.maxY[index]);
+    }
+
+    public void clear() {
+        this.size = 0;
+        this.bands = null;
+    }
+
+    /**
+     * Returns true if the two boxes overlap
+     */
+    public boolean intersects(int a, int b) {
+        checkIndex(a);
+        checkIndex(b);
+        return overlaps(this, a, this, b);
+    }
+
+    /**
+     * Calls the visitor once with every pair of overlapping boxes, the lower index first
+     */
+    public void forEachOverlappingPair(final PairVisitor visitor) {
+        if (this.size < 2) {
+            return;
+        }
+
+        PairVisitor ordered = (a, b) -> visitor.visit(Math.min(a, b), Math.max(a, b));
+        int[] shape = getBandShape(this, this);
+        Bands bands = getBands(shape[0], shape[1], shape[2]);
+        int[] active = new int[16];
+        for (int band = 0; band < bands.count; band++) {
+            int activeCount = 0;
+            for (int i = bands.starts[band], end = bands.starts[band + 1]; i < end; i++) {
+                int box = bands.boxes[i];
+                activeCount = sweep(this, active, activeCount, this, box, bands, band, ordered, false);
+                if (activeCount == active.length) {
+                    active = Arrays.copyOf(active, activeCount * 2);
+                }
+                active[activeCount++] = box;
+            }
+        }
+    }
+
+    /**
+     * Calls the visitor with every pair of a box in this store and a box in the other store that overlap,
+     * this store's index first. Both stores are swept together, so this is the bulk form of
+     * {@link #forEachIntersecting(int, int, int, int, IntConsumer)}, with one query per box of the other store
+     */
+    public void forEachIntersecting(AABBStore queries, PairVisitor visitor) {
+        if (this.size == 0 || queries.size == 0) {
+            return;
+        }
+
+        int[] shape = getBandShape(this, queries);
+        Bands bands = getBands(shape[0], shape[1], shape[2]);
+        Bands queryBands = queries.getBands(shape[0], shape[1], shape[2]);
+        int[] active = new int[16];
+        int[] activeQueries = new int[16];
+        for (int band = 0; band < bands.count; band++) {
+            int activeCount = 0;
+            int activeQueryCount = 0;
+            int i = bands.starts[band];
+            int j = queryBands.starts[band];
+            int end = bands.starts[band + 1];
+            int queryEnd = queryBands.starts[band + 1];
+            while (i < end || j < queryEnd) {
+                // Take whichever starts first, boxes before queries on ties so either order finds the pair
+                boolean takeBox = j == queryEnd || (i < end && this.minX[bands.boxes[i]] <= queries.minX[queryBands.boxes[j]]);
+                if (takeBox) {
+                    int box = bands.boxes[i++];
+                    activeQueryCount = sweep(queries, activeQueries, activeQueryCount, this, box, bands, band, visitor, false);
+                    if (activeCount == active.length) {
+                        active = Arrays.copyOf(active, activeCount * 2);
+                    }
+                    active[activeCount++] = box;
+                }
+                else {
+                    int query = queryBands.boxes[j++];
+                    activeCount = sweep(this, active, activeCount, queries, query, bands, band, visitor, true);
+                    if (activeQueryCount == activeQueries.length) {
+                        activeQueries = Arrays.copyOf(activeQueries, activeQueryCount * 2);
+                    }
+                    activeQueries[activeQueryCount++] = query;
+                }
+            }
+        }
+    }
+
+    /**
+     * Passes the index of every box that overlaps the given range (inclusive) to the consumer, in index order
+     */
+    public void forEachIntersecting(int minX, int minY, int maxX, int maxY, IntConsumer consumer) {
+        for (int i = 0; i < this.size; i++) {
+            if (this.minX[i] <= maxX && this.maxX[i] >= minX && this.minY[i] <= maxY && this.maxY[i] >= minY) {
+                consumer.accept(i);
+            }
+        }
+    }
+
+    /**
+     * Drops the boxes of the active list that end before the new box starts, and visits those that overlap it.
+     * A pair is only visited in the band holding the bottom of its overlap, as both boxes may share others.
+     * Returns the new size of the active list
+     */
+    private static int sweep(AABBStore store, int[] active, int activeCount, AABBStore newStore, int box, Bands bands, int band, PairVisitor visitor, boolean activeFirst) {
+        int boxMinX = newStore.minX[box];
+        int boxMinY = newStore.minY[box];
+        int boxMaxY = newStore.maxY[box];
+        int kept = 0;
+        for (int j = 0; j < activeCount; j++) {
+            int other = active[j];
+            if (store.maxX[other] >= boxMinX) {
+                active[kept++] = other;
+                if (store.minY[other] <= boxMaxY && store.maxY[other] >= boxMinY && bands.getBand(Math.max(store.minY[other], boxMinY)) == band) {
+                    if (activeFirst) {
+                        visitor.visit(other, box);
+                    }
+                    else {
+                        visitor.visit(box, other);
+                    }
+                }
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Returns the boxes split into bands of rows, each sorted by minimum X, reusing the last split if it had
+     * the same bands and no box changed since
+     */
+    private Bands getBands(int origin, int height, int count) {
+        Bands bands = this.bands;
+        if (bands == null || bands.origin != origin || bands.height != height || bands.count != count) {
+            this.bands = bands = new Bands(this, origin, height, count);
+        }
+        return bands;
+    }
+
+    /**
+     * Returns the origin, height and count of the bands to split both stores into. Bands are as high as the
+     * average box, so most boxes fall in one or two, but no more than {@link #MaxBandsPerBox} per box are made
+     */
+    private static int[] getBandShape(AABBStore first, AABBStore second) {
+        int origin = Math.min(getMin(first.minY, first.size), getMin(second.minY, second.size));
+        long span = (long) Math.max(getMax(first.maxY, first.size), getMax(second.maxY, second.size)) - origin + 1;
+        long total = 0;
+        for (int i = 0; i < first.size; i++) {
+            total += (long) first.maxY[i] - first.minY[i] + 1;
+        }
+        for (int i = 0; i < second.size; i++) {
+            total += (long) second.maxY[i] - second.minY[i] + 1;
+        }
+
+        int boxes = first.size + second.size;
+        long maxBands = (long) MaxBandsPerBox * boxes;
+        long height = Math.min(Integer.MAX_VALUE, Math.max(total / boxes, (span + maxBands - 1) / maxBands));
+        return new int[] {origin, (int) height, (int) ((span + height - 1) / height)};
+    }
+
+    private static int getMin(int[] values, int size) {
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            min = Math.min(min, values[i]);
+        }
+        return min;
+    }
+
+    private static int getMax(int[] values, int size) {
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            max = Math.max(max, values[i]);
+        }
+        return max;
+    }
+
+    private static boolean overlaps(AABBStore first, int a, AABBStore second, int b) {
+        return first.minX[a] <= second.maxX[b] && first.maxX[a] >= second.minX[b]
+               && first.minY[a] <= second.maxY[b] && first.maxY[a] >= second.minY[b];
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException("Box " + index + " does not exist (store has " + this.size + ")");
+        }
+    }
+
+    /**
+     * The boxes of a store split into horizontal bands, a box being in every band it covers a row of, and
+     * sorted by minimum X within each band
+     */
+    private static final class Bands {
+        final int origin;
+        final int height;
+        final int count;
+        final int[] starts; // where each band's boxes start, with the total at the end
+        final int[] boxes;
+
+        Bands(AABBStore store, int origin, int height, int count) {
+            this.origin = origin;
+            this.height = height;
+            this.count = count;
+            this.starts = new int[count + 1];
+            for (int i = 0; i < store.size; i++) {
+                for (int band = getBand(store.minY[i]), last = getBand(store.maxY[i]); band <= last; band++) {
+                    this.starts[band + 1]++;
+                }
+            }
+            for (int band = 0; band < count; band++) {
+                this.starts[band + 1] += this.starts[band];
+            }
+
+            // Sorting (minX, index) packed into longs is much faster than sorting indices with a comparator
+            long[] keys = new long[this.starts[count]];
+            int[] next = Arrays.copyOf(this.starts, count);
+            for (int i = 0; i < store.size; i++) {
+                long key = ((long) store.minX[i] << 32) | i;
+                for (int band = getBand(store.minY[i]), last = getBand(store.maxY[i]); band <= last; band++) {
+                    keys[next[band]++] = key;
+                }
+            }
+
+            this.boxes = new int[keys.length];
+            for (int band = 0; band < count; band++) {
+                Arrays.sort(keys, this.starts[band], this.starts[band + 1]);
+            }
+            for (int i = 0; i < keys.length; i++) {
+                this.boxes[i] = (int) keys[i];
+            }
+        }
+
+        int getBand(int y) {
+            return (int) (((long) y - this.origin) / this.height);
+        }
+    }
+}
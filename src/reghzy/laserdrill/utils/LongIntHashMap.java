@@ -0,0 +1,141 @@
+package reghzy.laserdrill.utils;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash map from long keys to int values, without boxing either
+ * <p>
+ * Keys are stored in a plain long array with linear probing. The key 0 marks an empty slot, so it is kept
+ * separately rather than in the table
+ * </p>
+ */
+public class LongIntHashMap {
+    private static final float LoadFactor = 0.5F;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    public LongIntHashMap() {
+        this(16);
+    }
+
+    public LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LoadFactor)) - 1) << 1;
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Returns the value of the given key, or the given default if the key is not in this map
+     */
+    public int get(long key, int missing) {
+        if (key == 0) {
+            return this.hasZeroKey ? this.zeroValue : missing;
+        }
+
+        int slot = getSlot(key);
+        while (true) {
+            long current = this.keys[slot];
+            if (current == key) {
+                return this.values[slot];
+            }
+            if (current == 0) {
+                return missing;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+    }
+
+    public boolean containsKey(long key) {
+        if (key == 0) {
+            return this.hasZeroKey;
+        }
+
+        int slot = getSlot(key);
+        while (true) {
+            long current = this.keys[slot];
+            if (current == key) {
+                return true;
+            }
+            if (current == 0) {
+                return false;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+    }
+
+    public void put(long key, int value) {
+        if (key == 0) {
+            if (!this.hasZeroKey) {
+                this.hasZeroKey = true;
+                this.size++;
+            }
+            this.zeroValue = value;
+            return;
+        }
+
+        int slot = getSlot(key);
+        while (true) {
+            long current = this.keys[slot];
+            if (current == key) {
+                this.values[slot] = value;
+                return;
+            }
+            if (current == 0) {
+                this.keys[slot] = key;
+                this.values[slot] = value;
+                if (++this.size > this.keys.length * LoadFactor) {
+                    resize(this.keys.length << 1);
+                }
+                return;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public void clear() {
+        Arrays.fill(this.keys, 0L);
+        this.size = 0;
+        this.hasZeroKey = false;
+    }
+
+    /**
+     * Returns the number of bytes used by this map's tables
+     */
+    public long getMemoryBytes() {
+        return (long) this.keys.length * 8 + (long) this.values.length * 4;
+    }
+
+    private int getSlot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & this.mask;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = this.keys;
+        int[] oldValues = this.values;
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != 0) {
+                int slot = getSlot(key);
+                while (this.keys[slot] != 0) {
+                    slot = (slot + 1) & this.mask;
+                }
+                this.keys[slot] = key;
+                this.values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package reghzy.laserdrill.utils;
+
+/**
+ * Packs a pair of int coordinates into a single long (Y in the upper half, X in the lower half), so they
+ * can be stored in primitive arrays and maps instead of as {@link Vector2} objects
+ * <p>
+ * Packed values of the same row sort by X, and rows sort by Y, as long as both coordinates are non negative
+ * </p>
+ */
+public final class PackedVector2 {
+    private PackedVector2() { }
+
+    public static long pack(int x, int y) {
+        return ((long) y << 32) | (x & 0xFFFFFFFFL);
+    }
+
+    public static int getX(long packed) {
+        return (int) packed;
+    }
+
+    public static int getY(long packed) {
+        return (int) (packed >>> 32);
+    }
+
+    public static long add(long packed, int x, int y) {
+        return pack(getX(packed) + x, getY(packed) + y);
+    }
+
+    public static Vector2 toVector(long packed) {
+        return new Vector2(getX(packed), getY(packed));
+    }
+}